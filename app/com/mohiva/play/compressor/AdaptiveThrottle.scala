@@ -0,0 +1,202 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.atomic.AtomicLong
+
+import play.api.Configuration
+
+import scala.concurrent.duration._
+
+/**
+ * Decides if the compression should back off, because the node is saturated.
+ *
+ * The node counts as saturated if more compressions are pending than allowed, if the recent compressions
+ * took longer than allowed on average, or if the process uses more CPU than allowed. Once saturated, the
+ * node stays saturated for the cooldown period, so that the compression doesn't flap on and off under a
+ * steady load. A limit of zero disables the check.
+ *
+ * The average latency is an exponentially weighted moving average. It only counts as recent if a
+ * compression was recorded within the cooldown period, otherwise the bypassed compressions couldn't
+ * ever lower it again.
+ *
+ * @param maxPending The maximum number of pending compressions.
+ * @param maxLatency The maximum average latency of the recent compressions in nanoseconds.
+ * @param maxCpuLoad The maximum CPU load of the process, between 0 and 1.
+ * @param cooldown The time in nanoseconds for which the compression backs off once the node is saturated.
+ * @param pending A function which gets the number of pending compressions.
+ * @param cpuLoad A function which gets the CPU load of the process, or a negative value if it's unknown.
+ * @param clock A function which gets the current time in nanoseconds.
+ */
+class AdaptiveThrottle(
+  maxPending: Int,
+  maxLatency: Long,
+  maxCpuLoad: Double,
+  cooldown: Long,
+  pending: () => Int,
+  cpuLoad: () => Double = AdaptiveThrottle.processCpuLoad,
+  clock: () => Long = () => System.nanoTime) {
+
+  /**
+   * The average latency of the recent compressions in nanoseconds.
+   */
+  private val averageLatency = new AtomicLong(0)
+
+  /**
+   * The time of the last recorded compression.
+   */
+  @volatile private var lastRecordedAt = Long.MinValue
+
+  /**
+   * The time until which the compression backs off.
+   */
+  @volatile private var backOffUntil = Long.MinValue
+
+  /**
+   * The last sampled CPU load and the time it was sampled at.
+   */
+  @volatile private var cpuSample = (Long.MinValue, 0D)
+
+  /**
+   * Records the latency of a compression.
+   *
+   * @param nanos The time in nanoseconds the compression took.
+   */
+  def record(nanos: Long): Unit = {
+    val now = clock()
+    var done = false
+    while (!done) {
+      val current = averageLatency.get
+      val next = if (!isRecent(now)) nanos else current + ((nanos - current).toDouble * AdaptiveThrottle.Weight).toLong
+      done = averageLatency.compareAndSet(current, next)
+    }
+    lastRecordedAt = now
+  }
+
+  /**
+   * Gets the average latency of the recent compressions.
+   *
+   * @return The average latency in nanoseconds, or 0 if no compression was recorded recently.
+   */
+  def latency: Long = if (isRecent(clock())) averageLatency.get else 0L
+
+  /**
+   * Checks if the compression should back off.
+   *
+   * @return True if the node is saturated, false otherwise.
+   */
+  def saturated: Boolean = {
+    val now = clock()
+    if (backOffUntil != Long.MinValue && now - backOffUntil < 0) {
+      true
+    } else if (exceeded(now)) {
+      backOffUntil = now + cooldown
+      true
+    } else {
+      false
+    }
+  }
+
+  /**
+   * Checks if any of the limits is exceeded.
+   *
+   * @param now The current time in nanoseconds.
+   * @return True if a limit is exceeded, false otherwise.
+   */
+  private def exceeded(now: Long): Boolean = {
+    (maxPending > 0 && pending() >= maxPending) ||
+      (maxLatency > 0 && isRecent(now) && averageLatency.get > maxLatency) ||
+      (maxCpuLoad > 0 && sampledCpuLoad(now) > maxCpuLoad)
+  }
+
+  /**
+   * Checks if a compression was recorded within the cooldown period.
+   *
+   * @param now The current time in nanoseconds.
+   * @return True if the average latency is recent, false otherwise.
+   */
+  private def isRecent(now: Long): Boolean = lastRecordedAt != Long.MinValue && now - lastRecordedAt <= cooldown
+
+  /**
+   * Gets the CPU load, which gets sampled at most once per sample interval, because it's expensive to get.
+   *
+   * @param now The current time in nanoseconds.
+   * @return The CPU load of the process.
+   */
+  private def sampledCpuLoad(now: Long): Double = {
+    val (sampledAt, load) = cpuSample
+    if (sampledAt == Long.MinValue || now - sampledAt >= AdaptiveThrottle.CpuSampleInterval) {
+      val sampled = cpuLoad()
+      cpuSample = (now, sampled)
+      sampled
+    } else {
+      load
+    }
+  }
+}
+
+/**
+ * The companion object.
+ */
+object AdaptiveThrottle {
+
+  /**
+   * The weight of a new latency in the moving average.
+   */
+  val Weight = 0.2
+
+  /**
+   * The interval in nanoseconds in which the CPU load gets sampled.
+   */
+  val CpuSampleInterval: Long = 100.millis.toNanos
+
+  /**
+   * Gets the CPU load of the process from the operating system bean of the JVM.
+   *
+   * @return The CPU load between 0 and 1, or a negative value if the JVM doesn't provide it.
+   */
+  val processCpuLoad: () => Double = () => ManagementFactory.getOperatingSystemMXBean match {
+    case os: com.sun.management.OperatingSystemMXBean => os.getProcessCpuLoad
+    case _ => -1D
+  }
+
+  /**
+   * Creates a throttle from the `play.filters.compressor.adaptive` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @param executor The executor whose pending compressions get watched.
+   * @return The throttle, or None if the adaptive mode isn't enabled.
+   */
+  def fromConfiguration(configuration: Configuration, executor: CompressionExecutor): Option[AdaptiveThrottle] = {
+    val enabled = configuration.getOptional[Boolean]("play.filters.compressor.adaptive.enabled").getOrElse(false)
+    if (enabled) {
+      val maxPending = configuration.getOptional[Int]("play.filters.compressor.adaptive.maxPending")
+        .getOrElse(64)
+      val maxLatency = configuration.getOptional[FiniteDuration]("play.filters.compressor.adaptive.maxLatency")
+        .getOrElse(100.millis)
+      val maxCpuLoad = configuration.getOptional[Double]("play.filters.compressor.adaptive.maxCpuLoad")
+        .getOrElse(0.9)
+      val cooldown = configuration.getOptional[FiniteDuration]("play.filters.compressor.adaptive.cooldown")
+        .getOrElse(1.second)
+      if (maxCpuLoad < 0 || maxCpuLoad > 1) {
+        throw configuration.reportError(
+          "play.filters.compressor.adaptive.maxCpuLoad",
+          s"Invalid CPU load `$maxCpuLoad`, expected a value between 0 and 1"
+        )
+      }
+
+      Some(new AdaptiveThrottle(maxPending, maxLatency.toNanos, maxCpuLoad, cooldown.toNanos, () => executor.pendingCompressions))
+    } else {
+      None
+    }
+  }
+}
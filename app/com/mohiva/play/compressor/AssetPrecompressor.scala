@@ -0,0 +1,214 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.{ Files, Path, StandardCopyOption }
+
+import akka.util.ByteString
+import com.googlecode.htmlcompressor.compressor.Compressor
+import com.mohiva.play.htmlcompressor.DefaultHTMLCompressorFilter
+import com.mohiva.play.xmlcompressor.DefaultXMLCompressorFilter
+import play.api.{ Configuration, Environment, Mode }
+
+import scala.collection.JavaConverters._
+import scala.io.Source
+
+/**
+ * Compresses the static HTML and XML assets of a directory at build time, so that the filter doesn't
+ * need to compress them on every request.
+ *
+ * The assets get written into a target directory, like the one of an sbt-web pipeline stage, together
+ * with a manifest of the paths of the compressed assets. If this manifest is packaged with the assets,
+ * the filter passes the assets through. The source directory is left untouched.
+ *
+ * @param html The compressor for the HTML assets.
+ * @param xml The compressor for the XML assets.
+ * @param charset The charset of the assets.
+ * @param gzip True if a gzipped sibling should be written for every compressed asset, false otherwise.
+ */
+class AssetPrecompressor(html: Compressor, xml: Compressor, charset: String, gzip: Boolean) {
+  import AssetPrecompressor._
+
+  /**
+   * The codec which decodes and encodes the assets.
+   */
+  private val codec = CharsetCodec(charset)
+
+  /**
+   * Writes all assets of the source directory into the target directory, compresses the HTML and XML
+   * assets on the way and writes the manifest.
+   *
+   * @param source The directory with the assets.
+   * @param target The directory the assets and the manifest get written into.
+   * @return The paths of the compressed assets, relative to the directories.
+   */
+  def process(source: File, target: File): Seq[String] = {
+    val sourceRoot = source.toPath
+    val targetRoot = target.toPath
+    if (sourceRoot.toAbsolutePath.normalize == targetRoot.toAbsolutePath.normalize) {
+      throw new IllegalArgumentException(s"The target directory `$target` must differ from the source directory")
+    }
+
+    val walk = Files.walk(sourceRoot)
+    val files = try walk.iterator.asScala.filter(Files.isRegularFile(_)).toList finally walk.close()
+    val paths = files.flatMap { file =>
+      val path = sourceRoot.relativize(file).iterator.asScala.mkString("/")
+      val to = targetRoot.resolve(sourceRoot.relativize(file).toString)
+      Files.createDirectories(to.getParent)
+      compressorFor(file.getFileName.toString) match {
+        case Some(compressor) =>
+          compress(file, to, compressor)
+          Some(path)
+        case None =>
+          Files.copy(file, to, StandardCopyOption.REPLACE_EXISTING)
+          None
+      }
+    }.sorted
+
+    Files.createDirectories(targetRoot)
+    Files.write(targetRoot.resolve(ManifestName), paths.mkString("", "\n", "\n").getBytes(StandardCharsets.UTF_8))
+    paths
+  }
+
+  /**
+   * Gets the compressor for a file.
+   *
+   * @param name The name of the file.
+   * @return The compressor, or None if the file isn't an HTML or XML file.
+   */
+  private def compressorFor(name: String): Option[Compressor] = name.toLowerCase match {
+    case n if n.endsWith(".html") || n.endsWith(".htm") => Some(html)
+    case n if n.endsWith(".xml") => Some(xml)
+    case _ => None
+  }
+
+  /**
+   * Compresses a file and writes its gzipped sibling, if enabled.
+   *
+   * @param from The file to compress.
+   * @param to The file the compressed asset gets written into.
+   * @param compressor The compressor.
+   */
+  private def compress(from: Path, to: Path, compressor: Compressor): Unit = {
+    val compressed = codec.encode(compressor.compress(codec.decode(ByteString(Files.readAllBytes(from)))))
+    Files.write(to, compressed.toArray)
+    if (gzip) {
+      val gzipped = ContentEncoding.Gzip.encoder(9).encodeAll(compressed)
+      Files.write(to.resolveSibling(to.getFileName.toString + ".gz"), gzipped.toArray)
+    }
+  }
+}
+
+/**
+ * The companion object.
+ */
+object AssetPrecompressor {
+
+  /**
+   * The name of the manifest with the paths of the compressed assets.
+   */
+  val ManifestName = "compressor-manifest.txt"
+
+  /**
+   * Creates a precompressor with the compressors of the default filters.
+   *
+   * @param configuration The Play configuration.
+   * @param environment The Play environment.
+   * @param gzip True if a gzipped sibling should be written for every compressed asset, false otherwise.
+   * @return The precompressor.
+   */
+  def fromConfiguration(configuration: Configuration, environment: Environment, gzip: Boolean): AssetPrecompressor = {
+    new AssetPrecompressor(
+      DefaultHTMLCompressorFilter.compressor(configuration, environment),
+      DefaultXMLCompressorFilter.compressor(configuration, environment),
+      configuration.getOptional[String]("default.charset").getOrElse("utf-8"),
+      gzip
+    )
+  }
+
+  /**
+   * Compresses the assets of a source directory into a target directory, with the settings of the
+   * application configuration on the classpath. It gets run by the `compressAssets` stage of the sbt
+   * plugin, which reports the compressed assets from the manifest.
+   *
+   * Usage: `AssetPrecompressor [--gzip] <source> <target>`
+   *
+   * @param args The arguments.
+   */
+  def main(args: Array[String]): Unit = {
+    val (options, dirs) = args.toList.partition(_.startsWith("--"))
+    dirs match {
+      case List(source, target) =>
+        val environment = Environment.simple(mode = Mode.Prod)
+        val precompressor = fromConfiguration(Configuration.load(environment), environment, options.contains("--gzip"))
+        precompressor.process(new File(source), new File(target))
+      case _ =>
+        throw new IllegalArgumentException("Usage: AssetPrecompressor [--gzip] <source> <target>")
+    }
+  }
+}
+
+/**
+ * The paths of the assets which were compressed at build time.
+ *
+ * @param paths The paths of the assets, relative to the assets directory.
+ * @param prefix The path of the route under which the assets directory is served.
+ */
+class PrecompressedAssets(paths: Set[String], prefix: String) {
+
+  /**
+   * Checks if the given request path points to a precompressed asset.
+   *
+   * Only request paths under the assets route are looked up, because a dynamic route may share the
+   * end of its path with an asset.
+   *
+   * @param path The request path.
+   * @return True if the path points to a precompressed asset, false otherwise.
+   */
+  def contains(path: String): Boolean = {
+    paths.nonEmpty && path.startsWith(prefix) && paths.contains(path.substring(prefix.length))
+  }
+}
+
+/**
+ * The companion object.
+ */
+object PrecompressedAssets {
+
+  /**
+   * Loads the manifest which is configured by `play.filters.compressor.precompressed.manifest` from
+   * the classpath. Its paths are served under the route `play.filters.compressor.precompressed.prefix`.
+   *
+   * @param configuration The Play configuration.
+   * @return The precompressed assets, which are empty if no manifest exists.
+   */
+  def fromConfiguration(configuration: Configuration): PrecompressedAssets = {
+    val manifest = configuration.getOptional[String]("play.filters.compressor.precompressed.manifest")
+      .getOrElse("public/" + AssetPrecompressor.ManifestName)
+    val classLoader = Option(Thread.currentThread.getContextClassLoader).getOrElse(getClass.getClassLoader)
+    val paths = Option(classLoader.getResourceAsStream(manifest)).map { stream =>
+      val source = Source.fromInputStream(stream, "UTF-8")
+      try source.getLines.map(_.trim).filter(_.nonEmpty).toSet finally source.close()
+    }
+
+    val prefix = configuration.getOptional[String]("play.filters.compressor.precompressed.prefix").getOrElse("/assets/")
+    if (!prefix.startsWith("/") || !prefix.endsWith("/")) {
+      throw configuration.reportError(
+        "play.filters.compressor.precompressed.prefix",
+        s"Invalid prefix `$prefix`, expected a path which starts and ends with a slash"
+      )
+    }
+
+    new PrecompressedAssets(paths.getOrElse(Set.empty), prefix)
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import akka.util.ByteString
+import com.googlecode.htmlcompressor.compressor.Compressor
+
+/**
+ * A compressor which looks up its outputs in a cache before it runs the underlying compressor.
+ *
+ * The outputs are keyed by a hash of the input, so identical inputs get compressed only once, as long
+ * as their outputs aren't evicted. The cache can be shared by the compressors of all threads, while
+ * every compressor gets an instance of its own.
+ *
+ * @param delegate The compressor which compresses the inputs which aren't cached.
+ * @param cache The cache for the outputs.
+ * @param settings The fingerprint of the underlying compressor, which separates its outputs from the
+ *                 outputs of other compressors in the same cache.
+ * @param metrics The metrics which record the cache lookups and evictions.
+ */
+class CachingCompressor(val delegate: Compressor, cache: CompressionCache, settings: String, metrics: CompressorMetrics)
+  extends Compressor {
+
+  override def compress(source: String): String = {
+    val key = CacheKey(settings, ByteString(source, "UTF-8"))
+    cache.get(key) match {
+      case Some(output) =>
+        metrics.inlineBlockLookup(hit = true)
+        output.utf8String
+      case None =>
+        metrics.inlineBlockLookup(hit = false)
+        val output = delegate.compress(source)
+        val evicted = cache.put(key, ByteString(output, "UTF-8"))
+        if (evicted > 0) metrics.inlineBlocksEvicted(evicted)
+        output
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.nio.charset.{ Charset, CharsetDecoder, CharsetEncoder, CodingErrorAction }
+import java.nio.{ ByteBuffer, CharBuffer }
+
+import akka.util.ByteString
+
+/**
+ * Decodes and encodes the bodies which get compressed, with as few allocations as possible.
+ *
+ * `ByteString.decodeString` followed by `String.trim` and `String.getBytes` allocates an oversized
+ * char array, a trimmed copy of it, an oversized byte array and an exact copy of it, and `ByteString`
+ * copies the bytes once more. This codec instead decodes into a pooled char buffer and encodes into a
+ * pooled byte buffer, so that only the string the compressor needs and the final bytes get allocated.
+ *
+ * The buffers are pooled per thread. Buffers which would be larger than [[CharsetCodec.MaxPooledSize]]
+ * get allocated for a single call only, so that huge bodies don't pin memory.
+ *
+ * @param charset The charset of the bodies.
+ */
+class CharsetCodec(val charset: Charset) {
+  import CharsetCodec._
+
+  /**
+   * The per-thread decoders, encoders and buffers.
+   */
+  private val local = new ThreadLocal[State] {
+    override def initialValue(): State = new State(
+      charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE),
+      charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+    )
+  }
+
+  /**
+   * Decodes the given bytes into a string without leading and trailing whitespace.
+   *
+   * @param bytes The bytes to decode.
+   * @return The decoded and trimmed string.
+   */
+  def decode(bytes: ByteString): String = {
+    val state = local.get
+    val decoder = state.decoder.reset()
+    val input = bytes.compact.asByteBuffer
+    val output = state.chars((input.remaining * decoder.maxCharsPerByte).toInt + 1)
+    decoder.decode(input, output, true)
+    decoder.flush(output)
+
+    val chars = output.array
+    var start = 0
+    var end = output.position
+    while (start < end && chars(start) <= ' ') start += 1
+    while (end > start && chars(end - 1) <= ' ') end -= 1
+    new String(chars, start, end - start)
+  }
+
+  /**
+   * Encodes the given string.
+   *
+   * @param string The string to encode.
+   * @return The encoded bytes.
+   */
+  def encode(string: String): ByteString = {
+    val state = local.get
+    val encoder = state.encoder.reset()
+    val output = state.bytes((string.length * encoder.maxBytesPerChar).toInt + 1)
+    encoder.encode(CharBuffer.wrap(string), output, true)
+    encoder.flush(output)
+    ByteString.fromArray(output.array, 0, output.position)
+  }
+}
+
+/**
+ * The companion object.
+ */
+object CharsetCodec {
+
+  /**
+   * The maximum size of the buffers which get pooled.
+   */
+  val MaxPooledSize: Int = 4 * 1024 * 1024
+
+  /**
+   * Creates a codec for the given charset.
+   *
+   * @param charset The name of the charset.
+   * @return The codec.
+   */
+  def apply(charset: String): CharsetCodec = new CharsetCodec(Charset.forName(charset))
+
+  /**
+   * The decoder, the encoder and the pooled buffers of a thread.
+   *
+   * @param decoder The decoder.
+   * @param encoder The encoder.
+   */
+  private class State(val decoder: CharsetDecoder, val encoder: CharsetEncoder) {
+
+    /**
+     * The pooled char buffer.
+     */
+    private var charBuffer = CharBuffer.allocate(0)
+
+    /**
+     * The pooled byte buffer.
+     */
+    private var byteBuffer = ByteBuffer.allocate(0)
+
+    /**
+     * Gets a cleared char buffer with at least the given capacity.
+     *
+     * @param capacity The needed capacity.
+     * @return The buffer.
+     */
+    def chars(capacity: Int): CharBuffer = {
+      if (capacity > MaxPooledSize) {
+        CharBuffer.allocate(capacity)
+      } else {
+        if (charBuffer.capacity < capacity) charBuffer = CharBuffer.allocate(capacity)
+        charBuffer.clear()
+        charBuffer
+      }
+    }
+
+    /**
+     * Gets a cleared byte buffer with at least the given capacity.
+     *
+     * @param capacity The needed capacity.
+     * @return The buffer.
+     */
+    def bytes(capacity: Int): ByteBuffer = {
+      if (capacity > MaxPooledSize) {
+        ByteBuffer.allocate(capacity)
+      } else {
+        if (byteBuffer.capacity < capacity) byteBuffer = ByteBuffer.allocate(capacity)
+        byteBuffer.clear()
+        byteBuffer
+      }
+    }
+  }
+}
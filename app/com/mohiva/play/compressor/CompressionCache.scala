@@ -0,0 +1,220 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+import java.util.{ LinkedHashMap => JLinkedHashMap }
+
+import akka.util.ByteString
+import com.typesafe.config.ConfigMemorySize
+import play.api.Configuration
+
+/**
+ * The key of a compressed output in the cache.
+ *
+ * The input is identified by its SHA-256 digest, so that no content can be crafted whose key collides
+ * with the key of another page, which would make the cache serve the output of the other page.
+ *
+ * @param settings The fingerprint of the compressor settings.
+ * @param length The length of the input.
+ * @param digest The SHA-256 digest of the input.
+ */
+case class CacheKey(settings: String, length: Int, digest: ByteString) {
+
+  /**
+   * Creates a strong entity tag for the compressed representation of the input.
+   *
+   * The tag is the SHA-256 digest of the settings and the digest of the input, so that two distinct
+   * representations can't get the same tag.
+   *
+   * @param encoding The content encoding of the representation, or None if it isn't encoded.
+   * @return The quoted entity tag.
+   */
+  def entityTag(encoding: Option[String]): String = {
+    val md = MessageDigest.getInstance("SHA-256")
+    md.update(settings.getBytes("UTF-8"))
+    md.update(0.toByte)
+    md.update(digest.toArray)
+    "\"" + CacheKey.hex(ByteString(md.digest())) + encoding.map("-" + _).getOrElse("") + "\""
+  }
+}
+
+/**
+ * The companion object.
+ */
+object CacheKey {
+
+  /**
+   * Creates the key for the given input.
+   *
+   * @param settings The fingerprint of the compressor settings.
+   * @param input The input to compress.
+   * @return The key.
+   */
+  def apply(settings: String, input: ByteString): CacheKey = CacheKey(settings, input.length, digest(input))
+
+  /**
+   * The length of a digest in bytes.
+   */
+  val DigestLength = 32
+
+  /**
+   * Calculates the SHA-256 digest of the given bytes.
+   *
+   * @param bytes The bytes to digest.
+   * @return The digest.
+   */
+  def digest(bytes: ByteString): ByteString = {
+    val md = MessageDigest.getInstance("SHA-256")
+    bytes.asByteBuffers.foreach(buffer => md.update(buffer.duplicate()))
+    ByteString(md.digest())
+  }
+
+  /**
+   * Formats the given bytes as lower case hex digits.
+   *
+   * @param bytes The bytes to format.
+   * @return The hex digits.
+   */
+  def hex(bytes: ByteString): String = bytes.map(b => f"${b & 0xff}%02x").mkString
+}
+
+/**
+ * An in-memory LRU cache for compressed outputs, bounded by the number of bytes it holds.
+ *
+ * @param maxBytes The maximum number of bytes the cached outputs may occupy.
+ */
+class CompressionCache(val maxBytes: Long) {
+
+  /**
+   * The cached outputs in access order.
+   */
+  private val entries = new JLinkedHashMap[CacheKey, ByteString](16, 0.75f, true)
+
+  /**
+   * The number of bytes the cached outputs occupy.
+   */
+  private var currentBytes = 0L
+
+  /**
+   * The number of cache hits.
+   */
+  private val hitCounter = new AtomicLong(0)
+
+  /**
+   * The number of cache misses.
+   */
+  private val missCounter = new AtomicLong(0)
+
+  /**
+   * The number of evicted outputs.
+   */
+  private val evictionCounter = new AtomicLong(0)
+
+  /**
+   * Gets a compressed output from the cache.
+   *
+   * @param key The key of the output.
+   * @return The output, or None if it isn't cached.
+   */
+  def get(key: CacheKey): Option[ByteString] = {
+    val output = entries.synchronized(Option(entries.get(key)))
+    if (output.isDefined) hitCounter.incrementAndGet() else missCounter.incrementAndGet()
+    output
+  }
+
+  /**
+   * Puts a compressed output into the cache and evicts the least recently used outputs if the cache
+   * gets too large. Outputs which are larger than the cache itself don't get cached.
+   *
+   * @param key The key of the output.
+   * @param output The output to cache.
+   * @return The number of evicted outputs.
+   */
+  def put(key: CacheKey, output: ByteString): Int = {
+    if (output.length > maxBytes) 0 else entries.synchronized {
+      Option(entries.put(key, output)).foreach(previous => currentBytes -= previous.length)
+      currentBytes += output.length
+      var evicted = 0
+      val it = entries.values.iterator
+      while (currentBytes > maxBytes && it.hasNext) {
+        currentBytes -= it.next().length
+        it.remove()
+        evicted += 1
+      }
+      evictionCounter.addAndGet(evicted.toLong)
+      evicted
+    }
+  }
+
+  /**
+   * Gets the number of cached outputs.
+   *
+   * @return The number of cached outputs.
+   */
+  def size: Int = entries.synchronized(entries.size)
+
+  /**
+   * Gets the number of bytes the cached outputs occupy.
+   *
+   * @return The number of bytes the cached outputs occupy.
+   */
+  def bytes: Long = entries.synchronized(currentBytes)
+
+  /**
+   * Gets the number of cache hits.
+   *
+   * @return The number of cache hits.
+   */
+  def hits: Long = hitCounter.get
+
+  /**
+   * Gets the number of cache misses.
+   *
+   * @return The number of cache misses.
+   */
+  def misses: Long = missCounter.get
+
+  /**
+   * Gets the number of outputs which were evicted to keep the cache within its bounds.
+   *
+   * @return The number of evicted outputs.
+   */
+  def evictions: Long = evictionCounter.get
+}
+
+/**
+ * The companion object.
+ */
+object CompressionCache {
+
+  /**
+   * Creates a cache from the `play.filters.compressor.cache` configuration, or from the configuration
+   * at the given path.
+   *
+   * @param configuration The Play configuration.
+   * @param path The path of the cache configuration.
+   * @return The cache, or None if the cache isn't enabled.
+   */
+  def fromConfiguration(configuration: Configuration, path: String = "play.filters.compressor.cache"): Option[CompressionCache] = {
+    val enabled = configuration.getOptional[Boolean](s"$path.enabled").getOrElse(false)
+    if (enabled) {
+      val maxBytes = configuration.getOptional[ConfigMemorySize](s"$path.maxBytes")
+        .map(_.toBytes)
+        .getOrElse(10L * 1024 * 1024)
+
+      Some(new CompressionCache(maxBytes))
+    } else {
+      None
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+import akka.NotUsed
+import akka.stream.scaladsl.Flow
+import akka.stream.{ ActorAttributes, ActorMaterializer, Materializer }
+import play.api.Configuration
+
+import scala.annotation.tailrec
+import scala.concurrent.{ ExecutionContext, Future, Promise }
+
+/**
+ * The policy which gets applied if more compressions are pending than allowed.
+ */
+sealed trait OverloadPolicy
+
+/**
+ * The companion object.
+ */
+object OverloadPolicy {
+
+  /**
+   * Passes the result through without compressing it.
+   */
+  case object Skip extends OverloadPolicy
+
+  /**
+   * Lets the result wait asynchronously until a pending compression has finished, and compresses it
+   * on the dispatcher then. If too many results are waiting already, it gets passed through uncompressed.
+   */
+  case object Backpressure extends OverloadPolicy
+
+  /**
+   * Gets a policy by its name.
+   *
+   * @param name The name of the policy.
+   * @return The policy, or None if no policy with this name exists.
+   */
+  def forName(name: String): Option[OverloadPolicy] = name.toLowerCase match {
+    case "skip" => Some(Skip)
+    case "backpressure" => Some(Backpressure)
+    case _ => None
+  }
+}
+
+/**
+ * Runs compressions on a dedicated dispatcher, so that they don't steal threads from Play's default
+ * dispatcher, and bounds the number of compressions which are queued or running on it.
+ *
+ * @param dispatcher The name of the Akka dispatcher to run the compressions on.
+ * @param maxPending The maximum number of compressions which may be queued or running at once.
+ * @param overloadPolicy The policy which gets applied if the maximum number of compressions is reached.
+ * @param maxWaiting The maximum number of compressions which may wait for a pending compression to
+ *                   finish, if the overload policy is backpressure.
+ * @param mat The materializer whose actor system provides the dispatcher.
+ */
+class CompressionExecutor(dispatcher: String, maxPending: Int, overloadPolicy: OverloadPolicy, maxWaiting: Int)(implicit mat: Materializer) {
+
+  /**
+   * The execution context which runs the compressions.
+   */
+  val executionContext: ExecutionContext = mat match {
+    case m: ActorMaterializer => m.system.dispatchers.lookup(dispatcher)
+    case m => m.executionContext
+  }
+
+  /**
+   * The number of compressions which are queued or running.
+   */
+  private val pending = new AtomicInteger(0)
+
+  /**
+   * The compressions which wait for a pending compression to finish, as functions which start them.
+   */
+  private val waiting = new ConcurrentLinkedQueue[() => Unit]
+
+  /**
+   * The number of compressions which wait for a pending compression to finish.
+   */
+  private val waits = new AtomicInteger(0)
+
+  /**
+   * Gets the number of compressions which are queued or running.
+   *
+   * @return The number of pending compressions.
+   */
+  def pendingCompressions: Int = pending.get
+
+  /**
+   * Gets the number of compressions which wait for a pending compression to finish.
+   *
+   * @return The number of waiting compressions.
+   */
+  def waitingCompressions: Int = waits.get
+
+  /**
+   * Runs a compression on the dispatcher.
+   *
+   * @param compressed A function which compresses the result.
+   * @param uncompressed A function which returns the uncompressed result, if the compression gets skipped.
+   * @tparam T The type of the result.
+   * @return The compressed or uncompressed result.
+   */
+  def execute[T](compressed: => T, uncompressed: => T): Future[T] = {
+    admit(uncompressed) { () =>
+      Future {
+        try compressed finally release()
+      }(executionContext)
+    }
+  }
+
+  /**
+   * Starts a compression on the dispatcher, which completes asynchronously.
+   *
+   * The compression counts as pending until the returned future completes.
+   *
+   * @param compressed A function which starts the compression of the result.
+   * @param uncompressed A function which returns the uncompressed result, if the compression gets skipped.
+   * @tparam T The type of the result.
+   * @return The compressed or uncompressed result.
+   */
+  def executeAsync[T](compressed: => Future[T], uncompressed: => T): Future[T] = {
+    admit(uncompressed) { () =>
+      Future(compressed)(executionContext).flatMap(identity)(executionContext).andThen {
+        case _ => release()
+      }(executionContext)
+    }
+  }
+
+  /**
+   * Starts a compression if less than the maximum number of compressions are pending, otherwise
+   * applies the overload policy.
+   *
+   * @param uncompressed A function which returns the uncompressed result, if the compression gets skipped.
+   * @param start A function which starts the compression, once it counts as pending.
+   * @tparam T The type of the result.
+   * @return The compressed or uncompressed result.
+   */
+  private def admit[T](uncompressed: => T)(start: () => Future[T]): Future[T] = {
+    if (pending.incrementAndGet() <= maxPending) {
+      start()
+    } else {
+      pending.decrementAndGet()
+      overloadPolicy match {
+        case OverloadPolicy.Backpressure if waits.incrementAndGet() <= maxWaiting =>
+          val promise = Promise[T]()
+          waiting.add(() => promise.completeWith(start()))
+          // A pending compression may have finished before the compression was added to the waiting ones.
+          startWaiting()
+          promise.future
+        case OverloadPolicy.Backpressure =>
+          waits.decrementAndGet()
+          Future.successful(uncompressed)
+        case OverloadPolicy.Skip =>
+          Future.successful(uncompressed)
+      }
+    }
+  }
+
+  /**
+   * Releases the slot of a finished compression, and starts a waiting compression in it.
+   */
+  private def release(): Unit = {
+    pending.decrementAndGet()
+    startWaiting()
+  }
+
+  /**
+   * Starts waiting compressions as long as less than the maximum number of compressions are pending.
+   */
+  @tailrec
+  private def startWaiting(): Unit = {
+    if (!waiting.isEmpty) {
+      if (pending.incrementAndGet() <= maxPending) {
+        Option(waiting.poll()) match {
+          case Some(start) =>
+            waits.decrementAndGet()
+            start()
+          case None =>
+            pending.decrementAndGet()
+        }
+        startWaiting()
+      } else {
+        pending.decrementAndGet()
+      }
+    }
+  }
+
+  /**
+   * Runs a compressing flow on the dispatcher.
+   *
+   * Streams are backpressured by themselves, so they don't count against the maximum number of
+   * pending compressions.
+   *
+   * @param flow The flow to run on the dispatcher.
+   * @tparam A The type of the elements which flow into the flow.
+   * @tparam B The type of the elements which flow out of the flow.
+   * @return The flow which runs on the dispatcher.
+   */
+  def flow[A, B](flow: Flow[A, B, NotUsed]): Flow[A, B, NotUsed] = mat match {
+    case _: ActorMaterializer => flow.addAttributes(ActorAttributes.dispatcher(dispatcher)).async
+    case _ => flow
+  }
+}
+
+/**
+ * The companion object.
+ */
+object CompressionExecutor {
+
+  /**
+   * Creates an executor from the `play.filters.compressor` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @param mat The materializer whose actor system provides the dispatcher.
+   * @return The executor.
+   */
+  def fromConfiguration(configuration: Configuration)(implicit mat: Materializer): CompressionExecutor = {
+    val dispatcher = configuration.getOptional[String]("play.filters.compressor.dispatcher")
+      .getOrElse("play.filters.compressor.default-dispatcher")
+    val maxPending = configuration.getOptional[Int]("play.filters.compressor.maxPending")
+      .getOrElse(256)
+    val overloadPolicy = configuration.getOptional[String]("play.filters.compressor.overloadPolicy")
+      .map(name => OverloadPolicy.forName(name).getOrElse {
+        throw configuration.reportError(
+          "play.filters.compressor.overloadPolicy",
+          s"Unknown overload policy `$name`, expected `skip` or `backpressure`"
+        )
+      })
+      .getOrElse(OverloadPolicy.Skip)
+    val maxWaiting = configuration.getOptional[Int]("play.filters.compressor.maxWaiting")
+      .getOrElse(maxPending)
+    if (overloadPolicy == OverloadPolicy.Backpressure && maxPending <= 0) {
+      throw configuration.reportError(
+        "play.filters.compressor.maxPending",
+        "The maximum number of pending compressions must be positive if the overload policy is `backpressure`"
+      )
+    }
+
+    new CompressionExecutor(dispatcher, maxPending, overloadPolicy, maxWaiting)
+  }
+}
@@ -0,0 +1,272 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.regex.Pattern
+
+import play.api.Configuration
+import play.api.mvc.{ RequestHeader, Result }
+import play.api.routing.Router
+
+import scala.collection.mutable
+
+/**
+ * The action of a compression rule.
+ */
+sealed trait RuleAction
+
+/**
+ * The companion object.
+ */
+object RuleAction {
+
+  /**
+   * Compresses the matching results, if they are otherwise eligible.
+   */
+  case object Include extends RuleAction
+
+  /**
+   * Passes the matching results through uncompressed.
+   */
+  case object Exclude extends RuleAction
+
+  /**
+   * Gets an action by its name.
+   *
+   * @param name The name of the action.
+   * @return The action, or None if no action with this name exists.
+   */
+  def forName(name: String): Option[RuleAction] = name.toLowerCase match {
+    case "include" => Some(Include)
+    case "exclude" => Some(Exclude)
+    case _ => None
+  }
+}
+
+/**
+ * A rule which decides if the results of some requests get compressed.
+ *
+ * A rule matches a result if it matches all of its conditions. An empty condition matches every result.
+ *
+ * @param action The action to apply to the matching results.
+ * @param paths The path patterns of the matching requests. A `*` matches any sequence of chars.
+ * @param methods The HTTP methods of the matching requests.
+ * @param contentTypes The content types of the matching results, like `application/json`. A subtype of `*`
+ *                     matches every subtype of the type.
+ * @param tags The route modifiers of the matching requests, of which at least one must be present.
+ */
+case class CompressionRule(
+  action: RuleAction,
+  paths: Seq[String] = Nil,
+  methods: Seq[String] = Nil,
+  contentTypes: Seq[String] = Nil,
+  tags: Seq[String] = Nil)
+
+/**
+ * Decides with a list of rules if the results of some requests get compressed.
+ *
+ * The first rule which matches a result decides. The rules are compiled once: the paths without a `*`
+ * or with a single trailing `*` go into a trie, which finds all rules matching a path in a single walk
+ * over it, and the other paths get compiled to regexes.
+ *
+ * @param rules The rules, in the order in which they are checked.
+ */
+class CompressionRules(val rules: Seq[CompressionRule]) {
+
+  /**
+   * The rules with their conditions prepared for the lookup.
+   */
+  private val compiled = rules.toArray.map { rule =>
+    (rule.action,
+      rule.methods.map(_.toUpperCase).toSet,
+      rule.contentTypes.map(_.toLowerCase),
+      rule.tags.toSet)
+  }
+
+  /**
+   * The rules which don't have a path condition.
+   */
+  private val anyPath = {
+    val set = new java.util.BitSet(rules.size)
+    rules.zipWithIndex.foreach { case (rule, i) => if (rule.paths.isEmpty) set.set(i) }
+    set
+  }
+
+  /**
+   * The trie of the literal and prefix path patterns.
+   */
+  private val trie = new CompressionRules.PathTrie
+
+  /**
+   * The compiled regexes of the other path patterns, with the index of their rule.
+   */
+  private val regexes = mutable.ArrayBuffer.empty[(Pattern, Int)]
+
+  rules.zipWithIndex.foreach {
+    case (rule, i) =>
+      rule.paths.foreach { path =>
+        val wildcard = path.indexOf('*')
+        if (wildcard < 0) trie.add(path, i, prefix = false)
+        else if (wildcard == path.length - 1) trie.add(path.dropRight(1), i, prefix = true)
+        else regexes += CompressionRules.globToRegex(path) -> i
+      }
+  }
+
+  /**
+   * Gets the action of the first rule which matches a result.
+   *
+   * @param rh The request header.
+   * @param result The result.
+   * @return The action, or None if no rule matches the result.
+   */
+  def action(rh: RequestHeader, result: Result): Option[RuleAction] = {
+    if (compiled.isEmpty) {
+      None
+    } else {
+      val paths = trie.lookup(rh.path)
+      paths.or(anyPath)
+      regexes.foreach { case (regex, i) => if (!paths.get(i) && regex.matcher(rh.path).matches) paths.set(i) }
+
+      lazy val method = rh.method.toUpperCase
+      lazy val contentType = result.body.contentType.map(_.takeWhile(_ != ';').trim.toLowerCase)
+      lazy val modifiers = rh.attrs.get(Router.Attrs.HandlerDef).map(_.modifiers).getOrElse(Nil)
+      var i = paths.nextSetBit(0)
+      var matched: Option[RuleAction] = None
+      while (i >= 0 && matched.isEmpty) {
+        val (action, methods, contentTypes, tags) = compiled(i)
+        if ((methods.isEmpty || methods.contains(method)) &&
+          (contentTypes.isEmpty || contentType.exists(t => contentTypes.exists(CompressionRules.matchesContentType(t, _)))) &&
+          (tags.isEmpty || modifiers.exists(tags.contains))) {
+          matched = Some(action)
+        }
+        i = paths.nextSetBit(i + 1)
+      }
+      matched
+    }
+  }
+
+  /**
+   * Checks if a result is excluded from the compression.
+   *
+   * @param rh The request header.
+   * @param result The result.
+   * @return True if the first rule which matches the result excludes it, false otherwise.
+   */
+  def excludes(rh: RequestHeader, result: Result): Boolean = action(rh, result).contains(RuleAction.Exclude)
+}
+
+/**
+ * The companion object.
+ */
+object CompressionRules {
+
+  /**
+   * The rules which don't exclude any result.
+   */
+  val empty = new CompressionRules(Nil)
+
+  /**
+   * A node of the trie of the path patterns.
+   */
+  private class PathTrie {
+
+    /**
+     * The child nodes by the next char of the path.
+     */
+    val children = mutable.HashMap.empty[Char, PathTrie]
+
+    /**
+     * The rules whose path equals the path of this node.
+     */
+    val exact = new java.util.BitSet
+
+    /**
+     * The rules whose path starts with the path of this node.
+     */
+    val prefix = new java.util.BitSet
+
+    /**
+     * Adds a path pattern.
+     *
+     * @param path The literal path or prefix.
+     * @param rule The index of the rule.
+     * @param prefix True if the pattern matches all paths which start with it, false otherwise.
+     */
+    def add(path: String, rule: Int, prefix: Boolean): Unit = {
+      val node = path.foldLeft(this)((node, c) => node.children.getOrElseUpdate(c, new PathTrie))
+      if (prefix) node.prefix.set(rule) else node.exact.set(rule)
+    }
+
+    /**
+     * Finds the rules whose path pattern matches a path.
+     *
+     * @param path The path.
+     * @return The indexes of the matching rules.
+     */
+    def lookup(path: String): java.util.BitSet = {
+      val matches = new java.util.BitSet
+      var node = this
+      var i = 0
+      while (node != null && i < path.length) {
+        matches.or(node.prefix)
+        node = node.children.getOrElse(path.charAt(i), null)
+        i += 1
+      }
+      if (node != null) {
+        matches.or(node.prefix)
+        matches.or(node.exact)
+      }
+      matches
+    }
+  }
+
+  /**
+   * Compiles a path pattern to a regex, in which a `*` matches any sequence of chars.
+   *
+   * @param glob The path pattern.
+   * @return The regex.
+   */
+  def globToRegex(glob: String): Pattern = {
+    Pattern.compile(glob.split("\\*", -1).map(Pattern.quote).mkString(".*"), Pattern.DOTALL)
+  }
+
+  /**
+   * Checks if a content type matches a content type pattern.
+   *
+   * @param contentType The lower case media type of the result, without parameters.
+   * @param pattern The lower case pattern, like `application/json`, in which a subtype of `*` matches every subtype.
+   * @return True if the content type matches the pattern, false otherwise.
+   */
+  def matchesContentType(contentType: String, pattern: String): Boolean = {
+    pattern == "*/*" || pattern == contentType || (pattern.endsWith("/*") && contentType.startsWith(pattern.dropRight(1)))
+  }
+
+  /**
+   * Creates the rules from the `play.filters.compressor.rules` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @return The rules.
+   */
+  def fromConfiguration(configuration: Configuration): CompressionRules = {
+    val rules = configuration.getOptional[Seq[Configuration]]("play.filters.compressor.rules").getOrElse(Nil).map { rule =>
+      def strings(path: String) = rule.getOptional[Seq[String]](path).getOrElse(Nil)
+      val action = rule.getOptional[String]("action")
+        .map(name => RuleAction.forName(name).getOrElse {
+          throw rule.reportError("action", s"Unknown rule action `$name`, expected `include` or `exclude`")
+        })
+        .getOrElse(RuleAction.Exclude)
+
+      CompressionRule(action, strings("paths"), strings("methods"), strings("contentTypes"), strings("tags"))
+    }
+
+    if (rules.isEmpty) empty else new CompressionRules(rules)
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import com.googlecode.htmlcompressor.compressor.Compressor
+import play.api.{ Configuration, Environment }
+
+import scala.reflect.{ ClassTag, classTag }
+import scala.util.Try
+
+/**
+ * Creates the compressors of a filter from their settings.
+ *
+ * A filter selects its engine with the `engine` setting, either by the name of a built-in engine or by
+ * the fully qualified name of a class, which implements this trait and has a public no-arg constructor.
+ * The default filters accept engines of any `Compressor`, so other minifiers can be plugged in without a
+ * user-defined filter and without extending the compressors of the HTML Compressor library.
+ *
+ * @tparam C The type of the compressor.
+ */
+trait CompressorEngine[C <: Compressor] {
+
+  /**
+   * Creates a compressor.
+   *
+   * @param settings The settings of the compressor, like the `play.filters.compressor.html` configuration.
+   * @param environment The Play environment.
+   * @return The compressor.
+   */
+  def create(settings: Configuration, environment: Environment): C
+}
+
+/**
+ * The companion object.
+ */
+object CompressorEngine {
+
+  /**
+   * Gets the engine which the `engine` setting selects.
+   *
+   * @param settings The settings of the compressor, which contain the `engine` setting.
+   * @param environment The Play environment, whose class loader loads the engine classes.
+   * @param engines The built-in engines by their names.
+   * @param default The name of the engine which gets used if no engine is set.
+   * @tparam C The type of the compressor.
+   * @return The engine.
+   */
+  def fromConfiguration[C <: Compressor: ClassTag](
+    settings: Configuration,
+    environment: Environment,
+    engines: Map[String, CompressorEngine[C]],
+    default: String): CompressorEngine[C] = {
+    val name = settings.getOptional[String]("engine").getOrElse(default)
+    engines.getOrElse(name, {
+      val engine = Try(environment.classLoader.loadClass(name).getConstructor().newInstance()).toOption.collect {
+        case e: CompressorEngine[_] => e.asInstanceOf[CompressorEngine[Compressor]]
+      }.getOrElse {
+        throw settings.reportError(
+          "engine",
+          s"Unknown engine `$name`, expected ${engines.keys.toSeq.sorted.map(n => s"`$n`").mkString(", ")} " +
+            "or the class name of a CompressorEngine"
+        )
+      }
+
+      new CompressorEngine[C] {
+        override def create(settings: Configuration, environment: Environment): C = {
+          engine.create(settings, environment) match {
+            case c: C => c
+            case c => throw settings.reportError(
+              "engine",
+              s"The engine `$name` creates a `${c.getClass.getName}`, expected a `${classTag[C].runtimeClass.getName}`"
+            )
+          }
+        }
+      }
+    })
+  }
+}
@@ -10,17 +10,26 @@
  */
 package com.mohiva.play.compressor
 
+import java.util.concurrent.atomic.AtomicLong
+
+import akka.NotUsed
 import akka.stream.Materializer
 import akka.stream.scaladsl._
 import akka.util.ByteString
 import com.googlecode.htmlcompressor.compressor.Compressor
+import com.typesafe.config.ConfigMemorySize
 import play.api.Configuration
 import play.api.http.HeaderNames._
-import play.api.http.{ HttpEntity, HttpProtocol }
+import play.api.http.{ HttpChunk, HttpEntity, HttpProtocol }
+import play.api.inject.ApplicationLifecycle
+import play.api.libs.typedmap.TypedMap
 import play.api.mvc._
+import play.api.mvc.request.{ RemoteConnection, RequestFactory, RequestTarget }
 
-import scala.concurrent.ExecutionContext.Implicits.global
-import scala.concurrent.Future
+import scala.concurrent.duration._
+import scala.concurrent.{ Await, Future }
+import scala.util.control.NonFatal
+import scala.util.{ Failure, Success, Try }
 
 /**
  * Base implementation of a filter which makes it possible to compress either HTML or XML with the
@@ -33,9 +42,18 @@ abstract class CompressorFilter[C <: Compressor] extends Filter {
 
   /**
    * The compressor instance.
+   *
+   * It gets accessed only once. If the [[compressorSettings]] are known, the [[compressors]] provider
+   * hands out compressors which get created from them, otherwise it shares the compressor instance.
    */
   val compressor: C
 
+  /**
+   * The immutable settings from which the compressor instance was created, or None if they aren't known
+   * because a subclass creates the compressor instance itself.
+   */
+  def compressorSettings: Option[CompressorSettings[C]] = None
+
   /**
    * The Play configuration instance.
    */
@@ -46,11 +64,185 @@ abstract class CompressorFilter[C <: Compressor] extends Filter {
    */
   lazy val charset = configuration.getOptional[String]("default.charset").getOrElse("utf-8")
 
+  /**
+   * The codec which decodes and encodes the bodies.
+   */
+  lazy val codec = CharsetCodec(charset)
+
+  /**
+   * The encoded marker at the end of the bodies which were already compressed.
+   */
+  private lazy val precompressedMarker = codec.encode(CompressorFilter.PrecompressedMarker)
+
+  /**
+   * Indicates if streamed bodies should be compressed while they stream through the filter, instead
+   * of buffering them completely before compressing them.
+   */
+  lazy val streaming = configuration.getOptional[Boolean]("play.filters.compressor.streaming").getOrElse(false)
+
+  /**
+   * Indicates if chunked bodies should be compressed chunk by chunk while they pass through the filter.
+   */
+  lazy val chunked = configuration.getOptional[Boolean]("play.filters.compressor.chunked").getOrElse(true)
+
+  /**
+   * The minimum size in bytes a body must have to get compressed.
+   */
+  lazy val minSize = configuration.getOptional[ConfigMemorySize]("play.filters.compressor.minSize")
+    .map(_.toBytes)
+    .getOrElse(0L)
+
+  /**
+   * The maximum size in bytes a body may have to get compressed as a whole. Bodies of unknown length
+   * which exceed it get passed through uncompressed as soon as they exceed it.
+   */
+  lazy val maxSize = configuration.getOptional[ConfigMemorySize]("play.filters.compressor.maxSize")
+    .map(_.toBytes)
+    .getOrElse(10L * 1024 * 1024)
+
+  /**
+   * Indicates if the compressed bodies should also be encoded with an encoding the client accepts,
+   * like gzip, so that no separate filter must encode them once more.
+   */
+  lazy val encoding = configuration.getOptional[Boolean]("play.filters.compressor.encoding.enabled").getOrElse(false)
+
+  /**
+   * The compression level between 0 and 9 of the encodings.
+   */
+  lazy val encodingLevel = configuration.getOptional[Int]("play.filters.compressor.encoding.level").getOrElse(6)
+
+  /**
+   * The encodings which are offered to the clients, in the order of preference.
+   */
+  lazy val encodings = configuration.getOptional[Seq[String]]("play.filters.compressor.encoding.encodings")
+    .map(_.map(name => ContentEncoding.forName(name).getOrElse {
+      throw configuration.reportError(
+        "play.filters.compressor.encoding.encodings",
+        s"Unknown encoding `$name`, expected `gzip` or `deflate`"
+      )
+    }))
+    .getOrElse(ContentEncoding.values)
+
+  /**
+   * Indicates if the compressed results should be tagged with an `ETag`, so that conditional requests
+   * can be answered without compressing the results.
+   */
+  lazy val etag = configuration.getOptional[Boolean]("play.filters.compressor.etag").getOrElse(false)
+
   /**
    * Materializer for the Filter.
    */
   override implicit val mat: Materializer
 
+  /**
+   * The executor which runs the compressions on a dedicated dispatcher.
+   */
+  lazy val executor = CompressionExecutor.fromConfiguration(configuration)
+
+  /**
+   * The throttle which backs off from compressing while the node is saturated, if enabled.
+   */
+  lazy val throttle = AdaptiveThrottle.fromConfiguration(configuration, executor)
+
+  /**
+   * The budget for the bytes of the bodies which get buffered or compressed as a whole, if enabled.
+   */
+  lazy val budget = MemoryBudget.fromConfiguration(configuration)
+
+  /**
+   * The settings which decide for which requests the compression phases get recorded and sent.
+   */
+  lazy val serverTiming = ServerTiming.fromConfiguration(configuration)
+
+  /**
+   * The cache for compressed outputs, if enabled.
+   */
+  lazy val cache = CompressionCache.fromConfiguration(configuration)
+
+  /**
+   * The cache for compressed outputs on the disk, which gets consulted after the in-memory cache, if enabled.
+   *
+   * The filter opens it when it handles the first result, unless it gets opened by [[start]].
+   */
+  lazy val diskCache = DiskCompressionCache.fromConfiguration(configuration)
+
+  /**
+   * The compressor which compresses large bodies in parallel, if enabled.
+   */
+  lazy val parallel = ParallelCompressor.fromConfiguration(configuration, markup => compressors.compress(markup))
+
+  /**
+   * The provider which hands out the compressors, which have the same settings as the compressor
+   * instance, to the threads which compress the results.
+   */
+  lazy val compressors: CompressorProvider[C] = provider(compressor, compressorSettings)
+
+  /**
+   * The compressors of the named profiles, which requests can select instead of the compressor instance.
+   *
+   * Like the compressor instance, every compressor serves as the template for the compressors of its
+   * profile, so it gets accessed only once.
+   */
+  def profileCompressors: Map[String, C] = Map.empty
+
+  /**
+   * The immutable settings from which the compressors of the named profiles were created, if known.
+   */
+  def profileSettings: Map[String, CompressorSettings[C]] = Map.empty
+
+  /**
+   * The profile of the compressor instance, which gets used if a request doesn't select a profile.
+   */
+  lazy val defaultProfile = new CompressorProfile(CompressorProfile.Default, compressor, compressors, settings, parallel)
+
+  /**
+   * The named profiles, whose compressors get built once, when the filter handles the first result.
+   */
+  lazy val profiles: Map[String, CompressorProfile[C]] = profileCompressors.map {
+    case (name, template) =>
+      val provider = this.provider(template, profileSettings.get(name))
+      val parallel = ParallelCompressor.fromConfiguration(configuration, markup => provider.compress(markup))
+      name -> new CompressorProfile(name, template, provider, CompressorSettings.fingerprint(template), parallel)
+  }
+
+  /**
+   * The assets which were compressed at build time.
+   */
+  lazy val precompressed = PrecompressedAssets.fromConfiguration(configuration)
+
+  /**
+   * The rules which include or exclude results by their path, method, content type or route modifiers.
+   */
+  lazy val rules = CompressionRules.fromConfiguration(configuration)
+
+  /**
+   * The fingerprint of the compressor settings.
+   */
+  lazy val settings = CompressorSettings.fingerprint(compressor)
+
+  /**
+   * The metrics which are used if the filter doesn't provide its own.
+   */
+  private lazy val defaultMetrics = new InMemoryCompressorMetrics
+
+  /**
+   * The metrics which record the compressions and the skipped results.
+   */
+  def metrics: CompressorMetrics = defaultMetrics
+
+  /**
+   * Indicates if the warm-up is running.
+   */
+  @volatile private var warmingUp = false
+
+  /**
+   * The metrics which record the compressions and the skipped results, or no metrics while the warm-up
+   * is running.
+   *
+   * @return The metrics.
+   */
+  private def recorder: CompressorMetrics = if (warmingUp) CompressorMetrics.Noop else metrics
+
   /**
    * Apply the filter.
    *
@@ -58,9 +250,19 @@ abstract class CompressorFilter[C <: Compressor] extends Filter {
    * @return The filtered action.
    */
   def apply(next: (RequestHeader) => Future[Result])(rh: RequestHeader) = {
-    next(rh).flatMap(result =>
-      compressResult(result)
-    )
+    next(rh).flatMap { result =>
+      if (result.header.headers.contains(CompressorFilter.PrecompressedHeader)) {
+        recorder.skipped(SkipReason.Precompressed)
+        Future.successful(result.copy(header = result.header.copy(headers = result.header.headers - CompressorFilter.PrecompressedHeader)))
+      } else {
+        result.body match {
+          case body: HttpEntity.Strict if body.data.endsWith(precompressedMarker) =>
+            recorder.skipped(SkipReason.Precompressed)
+            Future.successful(result.copy(body = body.copy(data = body.data.dropRight(precompressedMarker.length))))
+          case _ => compressResult(rh, result)
+        }
+      }
+    }(mat.executionContext)
   }
 
   /**
@@ -69,46 +271,603 @@ abstract class CompressorFilter[C <: Compressor] extends Filter {
    * @param result The result to check.
    * @return True if the result is a compressible result, false otherwise.
    */
-  protected def isCompressible(result: Result): Boolean = {
+  protected def isCompressible(result: Result): Boolean = skipReason(result).isEmpty
+
+  /**
+   * Gets the reason why the given result shouldn't be compressed.
+   *
+   * @param result The result to check.
+   * @return The reason why the result shouldn't be compressed, or None if it should be compressed.
+   */
+  protected def skipReason(result: Result): Option[SkipReason] = {
     val isChunked = result.header.headers.get(TRANSFER_ENCODING).contains(HttpProtocol.CHUNKED)
     val isGzipped = result.header.headers.get(CONTENT_ENCODING).contains("gzip")
-    val ret = !isChunked && !isGzipped
-    ret
+    val length = result.body.contentLength.orElse {
+      result.header.headers.get(CONTENT_LENGTH).flatMap(l => Try(l.toLong).toOption)
+    }
+    if (!chunked && isChunked) Some(SkipReason.Chunked)
+    else if (isGzipped) Some(SkipReason.Encoded)
+    else if (length.exists(_ < minSize)) Some(SkipReason.TooSmall)
+    else if (length.exists(_ > maxSize)) Some(SkipReason.TooLarge)
+    else None
+  }
+
+  /**
+   * Creates the compressor which compresses a single streamed or chunked body while it passes through
+   * the filter.
+   *
+   * By default the body gets cut into segments at safe positions, and the segments get compressed with
+   * the given function. Override this to compress the bodies with a streaming engine instead. The
+   * compressor should pass the rest of the body through uncompressed once it holds back more than
+   * `maxSize` chars, because the body doesn't count in the memory budget.
+   *
+   * @param compressor The compressor whose settings should be used.
+   * @param compress The function which compresses a piece of markup.
+   * @return The compressor for the body.
+   */
+  protected def incremental(compressor: C, compress: String => String): IncrementalCompressor = new Segmenter(compress, maxSize)
+
+  /**
+   * Creates the provider which hands out the compressors, which have the same settings as the given
+   * template, to the threads which compress the results.
+   *
+   * @param template The compressor which gets shared if the settings aren't known.
+   * @param settings The settings from which the template was created, if known.
+   * @return The provider.
+   */
+  protected def provider(template: C, settings: Option[CompressorSettings[C]]): CompressorProvider[C] = {
+    CompressorProvider.fromConfiguration(configuration, template, settings.map(s => () => s.create()))
+  }
+
+  /**
+   * Selects the profile which compresses the result of a request.
+   *
+   * A request selects a profile with the [[CompressorProfile.Attr]] attribute or with a route modifier
+   * like `compressor:marketing`. Requests which select no or an unknown profile get the default profile.
+   *
+   * @param rh The request header.
+   * @return The profile.
+   */
+  protected def selectProfile(rh: RequestHeader): CompressorProfile[C] = {
+    if (profiles.isEmpty) defaultProfile
+    else CompressorProfile.selected(rh).flatMap(profiles.get).getOrElse(defaultProfile)
+  }
+
+  /**
+   * Opens the disk cache, if enabled, so that a misconfigured cache fails the start of the application
+   * instead of the first request, and releases it when the application stops.
+   *
+   * The default filters call it while they get constructed.
+   *
+   * @param lifecycle The lifecycle of the application.
+   */
+  protected def start(lifecycle: ApplicationLifecycle): Unit = diskCache.foreach { cache =>
+    lifecycle.addStopHook(() => Future.successful(DiskCompressionCache.release(cache)))
+  }
+
+  /**
+   * Runs the warm-up, which passes its documents through the same code path as the results, with the
+   * compressors of all profiles, as strict, streamed and, if enabled, chunked bodies.
+   *
+   * The default filters call it while they get constructed, so that the application serves its first
+   * request only after the warm-up. The compressions of the warm-up aren't recorded in the metrics and
+   * their outputs don't get cached. The rules and the manifest of the precompressed assets don't apply.
+   *
+   * @param warmup The warm-up to run, if enabled.
+   * @param contentType The content type of the documents.
+   */
+  protected def warmUp(warmup: Option[CompressorWarmup], contentType: String): Unit = warmup.foreach { w =>
+    val requests = CompressorFilter.warmupRequest +: profiles.keys.toSeq.map { name =>
+      CompressorFilter.warmupRequest.addAttr(CompressorProfile.Attr, name)
+    }
+    warmingUp = true
+    try {
+      w.run { document =>
+        val data = codec.encode(document)
+        val (head, tail) = data.splitAt(data.length / 2)
+        val bodies = Seq(
+          HttpEntity.Strict(data, Some(contentType)),
+          HttpEntity.Streamed(Source(List(head, tail)), None, Some(contentType))
+        ) ++ (if (chunked) Seq(HttpEntity.Chunked(Source(List(HttpChunk.Chunk(head), HttpChunk.Chunk(tail))), Some(contentType))) else Nil)
+        for (rh <- requests; body <- bodies) {
+          val compressed = compressResult(rh, Result(ResponseHeader(200), body)).flatMap(_.body.consumeData)(mat.executionContext)
+          Await.result(compressed, CompressorFilter.WarmupTimeout)
+        }
+      }
+    } finally {
+      warmingUp = false
+    }
   }
 
   /**
    * Compress the result.
    *
+   * @param rh The request header.
    * @param result The result to compress.
    * @return The compressed result.
    */
-  private def compressResult(result: Result): Future[Result] = {
-    def compress(data: ByteString) = compressor.compress(data.decodeString(charset).trim).getBytes(charset)
+  private def compressResult(rh: RequestHeader, result: Result): Future[Result] = {
+    val isPrecompressed = !warmingUp && precompressed.contains(rh.path)
+    val isExcluded = !isPrecompressed && !warmingUp && rules.excludes(rh, result)
+    val compressible = !isPrecompressed && !isExcluded && isCompressible(result)
+    // The same URL may get an encoded result for other requests, so the uncompressed one varies too.
+    def plain(r: Result) = if (r.header.headers.contains(CONTENT_ENCODING)) r else withEncodingHeaders(r, None)
+    if (compressible && throttle.exists(_.saturated)) {
+      recorder.skipped(SkipReason.Saturated)
+      Future.successful(plain(result))
+    } else if (compressible) {
+      val profile = selectProfile(rh)
+      val timing = serverTiming.start(rh, recorder.tracing)
+      val contentEncoding = negotiateEncoding(rh, result)
+      def encoded(r: Result) = withEncodingHeaders(r, contentEncoding)
+      def encode(bytes: ByteString) = contentEncoding.map { e =>
+        span(timing, CompressionTiming.ContentEncoding)(e.encoder(encodingLevel).encodeAll(bytes))
+      }.getOrElse(bytes)
 
-    if (isCompressible(result)) {
-      result.body match {
+      withServerTiming(rh, timing)(result.body match {
         case body: HttpEntity.Strict =>
+          lazy val key = CacheKey(profile.settings, body.data)
+          withEntityTag(rh, result, key, contentEncoding) { tagged =>
+            withinBudget(body.data.length.toLong)(
+              compressData(profile, body.data, key, timing)(
+                compressed => encoded(tagged.copy(body = body.copy(encode(compressed)))),
+                plain(result)
+              ),
+              plain(result)
+            )
+          }
+        case body: HttpEntity.Streamed if streaming =>
+          val encoder = contentEncoding.map(ContentEncoderFlow(_, encodingLevel)).getOrElse(Flow[ByteString])
           Future.successful(
-            result.copy(body = body.copy(ByteString(compress(body.data))))
-          )
-        case body: HttpEntity.Streamed =>
-          for {
-            bytes <- body.data.toMat(Sink.fold(ByteString())(_ ++ _))(Keep.right).run()
-          } yield {
-            val compressed = compress(bytes)
-            val length = compressed.length
-            result.copy(
+            encoded(result.copy(
               body = body.copy(
-                data = Source.single(ByteString(compressed)),
-                contentLength = Some(length.toLong)
+                data = measured(profile, body.data, timing)(_.length)(compressor => CompressorFlow.incremental(compressor, charset), encoder),
+                contentLength = None
               )
-            )
-          }
+            ))
+          )
+        case body: HttpEntity.Chunked if chunked =>
+          val encoder = contentEncoding.map(ContentEncoderFlow.chunked(_, encodingLevel)).getOrElse(Flow[HttpChunk])
+          Future.successful(
+            encoded(result.copy(body = body.copy(chunks = measured(profile, body.chunks, timing) {
+              case HttpChunk.Chunk(data) => data.length
+              case _ => 0
+            }(compressor => CompressorFlow.chunkedIncremental(compressor, charset), encoder))))
+          )
+        case body: HttpEntity.Streamed =>
+          val start = System.nanoTime
+          buffer(body.data).andThen {
+            case _ => timing.foreach(_.record(CompressionTiming.Buffer, System.nanoTime - start))
+          }(mat.executionContext).flatMap {
+            case Left((reason, data)) =>
+              recorder.skipped(reason)
+              Future.successful(plain(result.copy(body = body.copy(data = data))))
+            case Right(bytes) if bytes.length < minSize =>
+              released(bytes.length.toLong) {
+                recorder.skipped(SkipReason.TooSmall)
+                Future.successful(plain(result.copy(body = body.copy(data = Source.single(bytes)))))
+              }
+            case Right(bytes) =>
+              lazy val key = CacheKey(profile.settings, bytes)
+              released(bytes.length.toLong)(withEntityTag(rh, result, key, contentEncoding) { tagged =>
+                compressData(profile, bytes, key, timing)(
+                  compressed => {
+                    val output = encode(compressed)
+                    encoded(tagged.copy(
+                      body = body.copy(
+                        data = Source.single(output),
+                        contentLength = Some(output.length.toLong)
+                      )
+                    ))
+                  },
+                  plain(result.copy(body = body.copy(data = Source.single(bytes))))
+                )
+              })
+          }(mat.executionContext)
         case _ =>
+          recorder.skipped(SkipReason.Chunked)
           Future.successful(result)
-      }
+      })
     } else {
+      recorder.skipped(
+        if (isPrecompressed) SkipReason.Precompressed
+        else if (isExcluded) SkipReason.Excluded
+        else skipReason(result).getOrElse(SkipReason.Other)
+      )
       Future.successful(result)
     }
   }
+
+  /**
+   * Tags the result with a strong entity tag of its compressed representation, and answers a matching
+   * `If-None-Match` header with `304 Not Modified` instead of compressing the result.
+   *
+   * The compressor produces the same output for the same input and settings, so the tag gets derived
+   * from the SHA-256 digest of the input and the settings, without compressing the input.
+   *
+   * @param rh The request header.
+   * @param result The result to compress.
+   * @param key The key of the input.
+   * @param contentEncoding The encoding of the compressed result, or None if it doesn't get encoded.
+   * @param compress A function which compresses the tagged result.
+   * @return The compressed result, or the not modified result.
+   */
+  private def withEntityTag(rh: RequestHeader, result: Result, key: => CacheKey, contentEncoding: Option[ContentEncoding])(
+    compress: Result => Future[Result]): Future[Result] = {
+    val isConditional = rh.method == "GET" || rh.method == "HEAD"
+    if (etag && isConditional && result.header.status == 200) {
+      val tag = key.entityTag(contentEncoding.map(_.name))
+      val tagged = result.withHeaders(ETAG -> tag)
+      val matches = rh.headers.getAll(IF_NONE_MATCH).flatMap(_.split(',')).map(_.trim.stripPrefix("W/")).exists { t =>
+        t == "*" || t == tag
+      }
+      if (matches) {
+        recorder.skipped(SkipReason.NotModified)
+        Future.successful(withEncodingHeaders(Result(tagged.header.copy(status = 304), HttpEntity.NoEntity), None))
+      } else {
+        compress(tagged)
+      }
+    } else {
+      compress(result)
+    }
+  }
+
+  /**
+   * Passes the recorded compression phases to the metrics, and adds them to the result as a
+   * `Server-Timing` header if the request should get it.
+   *
+   * The phases of bodies which get compressed while they stream through the filter aren't known yet
+   * when the header gets sent, they get passed to the metrics once the body has completed.
+   *
+   * @param rh The request header.
+   * @param timing The recorded phases, or None if they don't get recorded.
+   * @param result The compressed result.
+   * @return The result with the header, if the request should get it.
+   */
+  private def withServerTiming(rh: RequestHeader, timing: Option[CompressionTiming])(result: Future[Result]): Future[Result] = timing match {
+    case Some(t) =>
+      result.map { r =>
+        val spans = t.spans
+        if (spans.isEmpty) {
+          r
+        } else {
+          recorder.timed(t)
+          if (serverTiming.sendsHeader(rh)) {
+            val value = r.header.headers.get(ServerTiming.Header).map(_ + ", " + t.headerValue).getOrElse(t.headerValue)
+            r.withHeaders(ServerTiming.Header -> value)
+          } else {
+            r
+          }
+        }
+      }(mat.executionContext)
+    case None => result
+  }
+
+  /**
+   * Runs a phase of a compression and records the time it took, if the phases get recorded.
+   *
+   * @param timing The recorder of the phases, or None if they don't get recorded.
+   * @param name The name of the phase.
+   * @param phase The phase to run.
+   * @tparam T The type of the result of the phase.
+   * @return The result of the phase.
+   */
+  private def span[T](timing: Option[CompressionTiming], name: String)(phase: => T): T = timing match {
+    case Some(t) => t.time(name)(phase)
+    case None => phase
+  }
+
+  /**
+   * Selects the encoding for the compressed result.
+   *
+   * @param rh The request header.
+   * @param result The result to encode.
+   * @return The encoding, or None if the result shouldn't be encoded.
+   */
+  private def negotiateEncoding(rh: RequestHeader, result: Result): Option[ContentEncoding] = {
+    val hasBody = rh.method != "HEAD" && result.header.status != 204 && result.header.status != 304
+    if (encoding && hasBody && !result.header.headers.contains(CONTENT_ENCODING)) {
+      ContentEncoding.negotiate(rh.headers.getAll(ACCEPT_ENCODING), encodings)
+    } else {
+      None
+    }
+  }
+
+  /**
+   * Adds the `Content-Encoding` and `Vary` headers to an encoded result.
+   *
+   * The `Vary` header gets added even if the result isn't encoded, because another client may get an
+   * encoded representation of it.
+   *
+   * @param result The result.
+   * @param contentEncoding The encoding of the result, or None if it isn't encoded.
+   * @return The result with the headers.
+   */
+  private def withEncodingHeaders(result: Result, contentEncoding: Option[ContentEncoding]): Result = {
+    if (encoding) {
+      val vary = result.header.headers.get(VARY) match {
+        case Some(v) if v.split(',').exists(_.trim.equalsIgnoreCase(ACCEPT_ENCODING)) => v
+        case Some(v) => s"$v, $ACCEPT_ENCODING"
+        case None => ACCEPT_ENCODING
+      }
+      val headers = Seq(VARY -> vary) ++ contentEncoding.map(e => CONTENT_ENCODING -> e.name)
+      result.withHeaders(headers: _*)
+    } else {
+      result
+    }
+  }
+
+  /**
+   * Runs a compression if the bytes of its body fit into the memory budget, and releases them once the
+   * compression completes.
+   *
+   * @param bytes The number of bytes of the body.
+   * @param compressed A function which compresses the result.
+   * @param uncompressed A function which returns the uncompressed result, if the body doesn't fit into the budget.
+   * @tparam T The type of the result.
+   * @return The compressed or uncompressed result.
+   */
+  private def withinBudget[T](bytes: Long)(compressed: => Future[T], uncompressed: => T): Future[T] = budget match {
+    case Some(b) =>
+      b.acquire(bytes, b.deadline).flatMap {
+        case true =>
+          released(bytes) {
+            recorder.inFlightBytes(b.used)
+            compressed
+          }
+        case false =>
+          recorder.skipped(SkipReason.OverBudget)
+          Future.successful(uncompressed)
+      }(mat.executionContext)
+    case None => compressed
+  }
+
+  /**
+   * Releases the bytes of a body from the memory budget once its compression completes.
+   *
+   * @param bytes The number of bytes of the body.
+   * @param compressed A function which compresses the result.
+   * @tparam T The type of the result.
+   * @return The compressed result.
+   */
+  private def released[T](bytes: Long)(compressed: => Future[T]): Future[T] = {
+    if (budget.isEmpty) {
+      compressed
+    } else {
+      Try(compressed).fold(Future.failed, identity).andThen {
+        case _ => release(bytes)
+      }(mat.executionContext)
+    }
+  }
+
+  /**
+   * Releases bytes from the memory budget, if enabled.
+   *
+   * @param bytes The number of bytes to release.
+   */
+  private def release(bytes: Long): Unit = budget.foreach { b =>
+    b.release(bytes)
+    recorder.inFlightBytes(b.used)
+  }
+
+  /**
+   * Buffers the given data, but stops buffering as soon as it exceeds the maximum size or doesn't fit
+   * into the memory budget anymore.
+   *
+   * The bytes of the buffered data stay reserved in the budget, they must be released once the data
+   * was compressed. If the data fails, the bytes which were reserved for it get released.
+   *
+   * @param data The data to buffer.
+   * @return Either the buffered data, or the reason why buffering stopped together with the complete data
+   *         as a source.
+   */
+  private def buffer(data: Source[ByteString, _]): Future[Either[(SkipReason, Source[ByteString, NotUsed]), ByteString]] = {
+    implicit val ec = mat.executionContext
+    val queue = data.runWith(Sink.queue[ByteString]())
+    val deadline = budget.map(_.deadline).getOrElse(0L)
+    val reserved = new AtomicLong(0)
+    def rest = Source.unfoldAsync(queue)(q => q.pull().map(_.map(bytes => (q, bytes)))).watchTermination() { (_, done) =>
+      done.onComplete(_ => queue.cancel())
+      NotUsed
+    }
+    def stop(reason: SkipReason, next: ByteString) = {
+      release(reserved.getAndSet(0))
+      Future.successful(Left((reason, Source.single(next).concat(rest))))
+    }
+    def reserve(bytes: ByteString) = budget.map { b =>
+      b.acquire(bytes.length.toLong, deadline).map { acquired =>
+        if (acquired) {
+          reserved.addAndGet(bytes.length.toLong)
+          recorder.inFlightBytes(b.used)
+        }
+        acquired
+      }
+    }.getOrElse(Future.successful(true))
+    def pull(buffered: ByteString): Future[Either[(SkipReason, Source[ByteString, NotUsed]), ByteString]] = queue.pull().flatMap {
+      case None => Future.successful(Right(buffered))
+      case Some(bytes) =>
+        val next = buffered ++ bytes
+        if (next.length > maxSize) stop(SkipReason.TooLarge, next)
+        else reserve(bytes).flatMap {
+          case true => pull(next)
+          case false => stop(SkipReason.OverBudget, next)
+        }
+    }
+
+    pull(ByteString.empty).recoverWith {
+      case e =>
+        release(reserved.getAndSet(0))
+        Future.failed(e)
+    }
+  }
+
+  /**
+   * Compresses the given source on the executor and records the compression in the metrics, once the
+   * source has completed.
+   *
+   * @param profile The profile which compresses the source.
+   * @param source The source to compress.
+   * @param timing The recorder of the compression phases, or None if they don't get recorded.
+   * @param size A function which gets the number of bytes of an element.
+   * @param flow A function which creates the compressing flow from the factory of the incremental compressors.
+   * @param encoder The flow which encodes the compressed source.
+   * @tparam A The type of the elements.
+   * @tparam M The materialized value of the source.
+   * @return The compressed source.
+   */
+  private def measured[A, M](profile: CompressorProfile[C], source: Source[A, M], timing: Option[CompressionTiming])(size: A => Int)(
+    flow: (() => IncrementalCompressor) => Flow[A, A, NotUsed], encoder: Flow[A, A, NotUsed]): Source[A, M] = {
+    // The body completes after the warm-up has awaited it, so the metrics get chosen up front
+    val measuredMetrics = recorder
+    val recorded = !warmingUp
+    val nanos = new AtomicLong(0)
+    val inputBytes = new AtomicLong(0)
+    val outputBytes = new AtomicLong(0)
+    def timed(f: => String) = {
+      val start = System.nanoTime
+      try f finally nanos.addAndGet(System.nanoTime - start)
+    }
+    val compressor = () => {
+      val c = incremental(profile.template, markup => profile.compressors.compress(markup))
+      new IncrementalCompressor {
+        override def feed(markup: String): String = timed(c.feed(markup))
+        override def finish(): String = timed(c.finish())
+      }
+    }
+
+    source
+      .map { e => inputBytes.addAndGet(size(e).toLong); e }
+      .via(executor.flow(flow(compressor).map { e => outputBytes.addAndGet(size(e).toLong); e }.via(encoder)))
+      .watchTermination() { (m, done) =>
+        done.onComplete {
+          case Success(_) =>
+            if (recorded) recordCompression(nanos.get, inputBytes.get, outputBytes.get)
+            timing.foreach { t =>
+              t.record(CompressionTiming.Compress, nanos.get)
+              measuredMetrics.timed(t)
+            }
+          case Failure(e) => measuredMetrics.failed(e)
+        }(mat.executionContext)
+        m
+      }
+  }
+
+  /**
+   * Records a compression in the metrics and in the throttle.
+   *
+   * @param nanos The time in nanoseconds the compression took.
+   * @param inputBytes The number of bytes of the input.
+   * @param outputBytes The number of bytes of the output.
+   */
+  private def recordCompression(nanos: Long, inputBytes: Long, outputBytes: Long): Unit = {
+    if (!warmingUp) {
+      metrics.compressed(nanos, inputBytes, outputBytes)
+      throttle.foreach(_.record(nanos))
+    }
+  }
+
+  /**
+   * Compresses the given data, either by getting the compressed output from the in-memory or the disk
+   * cache or by running the compressor on the executor. Data which is large enough gets compressed in
+   * parallel, if enabled.
+   *
+   * @param profile The profile which compresses the data.
+   * @param data The data to compress.
+   * @param key The key of the data in the cache.
+   * @param timing The recorder of the compression phases, or None if they don't get recorded.
+   * @param compressed A function which builds the compressed result from the compressed output.
+   * @param uncompressed A function which returns the uncompressed result, if the compression gets skipped.
+   * @tparam T The type of the result.
+   * @return The compressed or uncompressed result.
+   */
+  private def compressData[T](profile: CompressorProfile[C], data: ByteString, key: => CacheKey, timing: Option[CompressionTiming])(compressed: ByteString => T, uncompressed: => T): Future[T] = {
+    def compress() = {
+      val start = System.nanoTime
+      try {
+        val markup = span(timing, CompressionTiming.Decode)(codec.decode(data))
+        val minified = span(timing, CompressionTiming.Compress)(profile.compressors.compress(markup))
+        val output = span(timing, CompressionTiming.Encode)(codec.encode(minified))
+        recordCompression(System.nanoTime - start, data.length.toLong, output.length.toLong)
+        output
+      } catch {
+        case NonFatal(e) =>
+          recorder.failed(e)
+          throw e
+      }
+    }
+    def compressInParallel(p: ParallelCompressor) = {
+      val start = System.nanoTime
+      val markup = span(timing, CompressionTiming.Decode)(codec.decode(data))
+      val compressStart = System.nanoTime
+      p(markup).map { minified =>
+        timing.foreach(_.record(CompressionTiming.Compress, System.nanoTime - compressStart))
+        span(timing, CompressionTiming.Encode)(codec.encode(minified))
+      }(executor.executionContext).andThen {
+        case Success(output) => recordCompression(System.nanoTime - start, data.length.toLong, output.length.toLong)
+        case Failure(e) => recorder.failed(e)
+      }(executor.executionContext)
+    }
+    def skipped = {
+      recorder.skipped(SkipReason.Overloaded)
+      uncompressed
+    }
+    def store(output: ByteString) = {
+      if (!warmingUp) {
+        cache.foreach(_.put(key, output))
+        diskCache.foreach(_.put(key, output))
+      }
+      compressed(output)
+    }
+    def load() = diskCache.flatMap(_.get(key)).map { output =>
+      cache.foreach(_.put(key, output))
+      output
+    }
+
+    def lookup() = cache.flatMap(_.get(key)).orElse(load())
+
+    (if (warmingUp || (cache.isEmpty && diskCache.isEmpty)) None else span(timing, CompressionTiming.Cache)(lookup())) match {
+      case Some(output) => Future.successful(compressed(output))
+      case None =>
+        profile.parallel.filter(data.length >= _.minSize) match {
+          case Some(p) => executor.executeAsync(compressInParallel(p).map(store)(executor.executionContext), skipped)
+          case None => executor.execute(store(compress()), skipped)
+        }
+    }
+  }
+}
+
+/**
+ * The companion object.
+ */
+object CompressorFilter {
+
+  /**
+   * The header which marks a result as already compressed. The filter passes such results through and
+   * removes the header.
+   */
+  val PrecompressedHeader = "X-Precompressed"
+
+  /**
+   * The whitespace at the end of a body which marks it as already compressed, because the
+   * [[com.mohiva.play.htmlcompressor.MinifiedHtmlFormat]] cannot set a header. The filter passes such
+   * bodies through and removes the marker.
+   */
+  val PrecompressedMarker = "\t \t\n"
+
+  /**
+   * How long the warm-up waits for the compression of a document.
+   */
+  val WarmupTimeout: FiniteDuration = 1.minute
+
+  /**
+   * The request whose result the warm-up compresses, which accepts every content encoding.
+   */
+  private val warmupRequest = RequestFactory.plain.createRequestHeader(
+    RemoteConnection("127.0.0.1", secure = false, None),
+    "GET",
+    RequestTarget("/", "/", Map.empty),
+    "HTTP/1.1",
+    Headers(ACCEPT_ENCODING -> "gzip, deflate"),
+    TypedMap.empty
+  )
 }
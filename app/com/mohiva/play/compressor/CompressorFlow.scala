@@ -0,0 +1,228 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.nio.CharBuffer
+import java.nio.charset.{ Charset, CodingErrorAction }
+
+import akka.NotUsed
+import akka.stream._
+import akka.stream.scaladsl.Flow
+import akka.stream.stage.{ GraphStage, GraphStageLogic, InHandler, OutHandler }
+import akka.util.ByteString
+import play.api.http.HttpChunk
+
+/**
+ * Provides flows which compress markup while it streams through them.
+ */
+object CompressorFlow {
+
+  /**
+   * Creates a flow which compresses a stream of encoded markup.
+   *
+   * The flow doesn't buffer the whole document. Instead it compresses and emits the markup up to the
+   * last safe cut position every time a new element arrives. So only the markup after this position
+   * must be kept until the next element arrives.
+   *
+   * @param compress The function which compresses a piece of markup.
+   * @param charset The charset of the markup.
+   * @return The flow.
+   */
+  def apply(compress: String => String, charset: String): Flow[ByteString, ByteString, NotUsed] = {
+    incremental(() => new Segmenter(compress), charset)
+  }
+
+  /**
+   * Creates a flow which compresses a stream of encoded markup with an incremental compressor.
+   *
+   * @param compressor A function which creates the compressor for the stream.
+   * @param charset The charset of the markup.
+   * @return The flow.
+   */
+  def incremental(compressor: () => IncrementalCompressor, charset: String): Flow[ByteString, ByteString, NotUsed] = {
+    Flow.fromGraph(new CompressorStage(compressor, charset))
+  }
+
+  /**
+   * Creates a flow which compresses the chunks of a chunked body.
+   *
+   * Every chunk gets compressed while it passes through the flow. Only the markup after the last safe
+   * cut position of a chunk is held back until the next chunk arrives. The trailers of the last chunk
+   * are passed through unchanged.
+   *
+   * @param compress The function which compresses a piece of markup.
+   * @param charset The charset of the markup.
+   * @return The flow.
+   */
+  def chunked(compress: String => String, charset: String): Flow[HttpChunk, HttpChunk, NotUsed] = {
+    chunkedIncremental(() => new Segmenter(compress), charset)
+  }
+
+  /**
+   * Creates a flow which compresses the chunks of a chunked body with an incremental compressor.
+   *
+   * @param compressor A function which creates the compressor for the stream.
+   * @param charset The charset of the markup.
+   * @return The flow.
+   */
+  def chunkedIncremental(compressor: () => IncrementalCompressor, charset: String): Flow[HttpChunk, HttpChunk, NotUsed] = {
+    Flow.fromGraph(new ChunkedCompressorStage(compressor, charset))
+  }
+}
+
+/**
+ * A stage which compresses a stream of encoded markup segment by segment.
+ *
+ * @param compressor A function which creates the compressor for the stream.
+ * @param charset The charset of the markup.
+ */
+private[compressor] class CompressorStage(compressor: () => IncrementalCompressor, charset: String)
+  extends GraphStage[FlowShape[ByteString, ByteString]] {
+
+  val in = Inlet[ByteString]("CompressorStage.in")
+  val out = Outlet[ByteString]("CompressorStage.out")
+  override val shape = FlowShape(in, out)
+
+  override def createLogic(attributes: Attributes): GraphStageLogic = new GraphStageLogic(shape) with InHandler with OutHandler {
+    private val decoder = new StreamDecoder(charset)
+    private val codec = CharsetCodec(charset)
+    private val segmenter = compressor()
+
+    override def onPush(): Unit = {
+      val compressed = segmenter.feed(decoder.decode(grab(in)))
+      if (compressed.isEmpty) pull(in) else push(out, codec.encode(compressed))
+    }
+
+    override def onPull(): Unit = pull(in)
+
+    override def onUpstreamFinish(): Unit = {
+      segmenter.feed(decoder.finish())
+      val compressed = segmenter.finish()
+      if (compressed.nonEmpty) emit(out, codec.encode(compressed))
+      completeStage()
+    }
+
+    setHandlers(in, out, this)
+  }
+}
+
+/**
+ * A stage which compresses the chunks of a chunked body segment by segment.
+ *
+ * @param compressor A function which creates the compressor for the stream.
+ * @param charset The charset of the markup.
+ */
+private[compressor] class ChunkedCompressorStage(compressor: () => IncrementalCompressor, charset: String)
+  extends GraphStage[FlowShape[HttpChunk, HttpChunk]] {
+
+  val in = Inlet[HttpChunk]("ChunkedCompressorStage.in")
+  val out = Outlet[HttpChunk]("ChunkedCompressorStage.out")
+  override val shape = FlowShape(in, out)
+
+  override def createLogic(attributes: Attributes): GraphStageLogic = new GraphStageLogic(shape) with InHandler with OutHandler {
+    private val decoder = new StreamDecoder(charset)
+    private val codec = CharsetCodec(charset)
+    private val segmenter = compressor()
+    private var finished = false
+
+    override def onPush(): Unit = grab(in) match {
+      case HttpChunk.Chunk(data) =>
+        val compressed = segmenter.feed(decoder.decode(data))
+        if (compressed.isEmpty) pull(in) else push(out, chunk(compressed))
+      case last: HttpChunk.LastChunk =>
+        emitMultiple(out, rest.toList :+ last)
+    }
+
+    override def onPull(): Unit = pull(in)
+
+    override def onUpstreamFinish(): Unit = {
+      rest.foreach(c => emit(out, c))
+      completeStage()
+    }
+
+    /**
+     * Compresses the markup which is still buffered.
+     *
+     * @return A chunk with the compressed markup, or None if nothing was buffered.
+     */
+    private def rest: Option[HttpChunk] = {
+      if (finished) {
+        None
+      } else {
+        finished = true
+        segmenter.feed(decoder.finish())
+        Some(segmenter.finish()).filter(_.nonEmpty).map(chunk)
+      }
+    }
+
+    /**
+     * Creates a chunk from compressed markup.
+     *
+     * @param compressed The compressed markup.
+     * @return The chunk.
+     */
+    private def chunk(compressed: String): HttpChunk = HttpChunk.Chunk(codec.encode(compressed))
+
+    setHandlers(in, out, this)
+  }
+}
+
+/**
+ * Decodes a stream of bytes, whose multi-byte chars may be split across the elements of the stream.
+ *
+ * @param charset The charset of the bytes.
+ */
+private[compressor] class StreamDecoder(charset: String) {
+
+  /**
+   * The decoder, which replaces malformed input like `ByteString.decodeString` does.
+   */
+  private val decoder = Charset.forName(charset).newDecoder()
+    .onMalformedInput(CodingErrorAction.REPLACE)
+    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+
+  /**
+   * The bytes of an incomplete char at the end of the last element.
+   */
+  private var remainder = ByteString.empty
+
+  /**
+   * Decodes the next element of the stream.
+   *
+   * @param bytes The bytes to decode.
+   * @return The decoded chars.
+   */
+  def decode(bytes: ByteString): String = decode(bytes, endOfInput = false)
+
+  /**
+   * Decodes the bytes which are left at the end of the stream.
+   *
+   * @return The decoded chars.
+   */
+  def finish(): String = decode(ByteString.empty, endOfInput = true)
+
+  /**
+   * Decodes the given bytes together with the remainder of the last element.
+   *
+   * @param bytes The bytes to decode.
+   * @param endOfInput True if no more bytes will follow, false otherwise.
+   * @return The decoded chars.
+   */
+  private def decode(bytes: ByteString, endOfInput: Boolean): String = {
+    val input = (remainder ++ bytes).asByteBuffer
+    val output = CharBuffer.allocate((input.remaining * decoder.maxCharsPerByte).toInt + 1)
+    decoder.decode(input, output, endOfInput)
+    if (endOfInput) decoder.flush(output)
+    remainder = ByteString(input)
+    output.flip()
+    output.toString
+  }
+}
@@ -0,0 +1,474 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.{ AtomicLong, AtomicLongArray, LongAdder }
+import javax.inject.Singleton
+
+import play.api.inject.Module
+import play.api.{ Configuration, Environment }
+
+/**
+ * The reason why a result wasn't compressed.
+ *
+ * @param name The name of the reason.
+ */
+sealed abstract class SkipReason(val name: String)
+
+/**
+ * The companion object.
+ */
+object SkipReason {
+
+  /**
+   * The result is chunked and the compression of chunked results is disabled.
+   */
+  case object Chunked extends SkipReason("chunked")
+
+  /**
+   * The result is already encoded, for example with gzip.
+   */
+  case object Encoded extends SkipReason("encoded")
+
+  /**
+   * The content type of the result isn't handled by the filter.
+   */
+  case object ContentType extends SkipReason("contentType")
+
+  /**
+   * The body is smaller than the minimum size.
+   */
+  case object TooSmall extends SkipReason("tooSmall")
+
+  /**
+   * The body is larger than the maximum size.
+   */
+  case object TooLarge extends SkipReason("tooLarge")
+
+  /**
+   * The result was compressed before it reached the filter, like an asset which was compressed at build
+   * time or a template which was rendered with the minifying Twirl format.
+   */
+  case object Precompressed extends SkipReason("precompressed")
+
+  /**
+   * The client already has the compressed representation of the result.
+   */
+  case object NotModified extends SkipReason("notModified")
+
+  /**
+   * A compression rule excluded the result.
+   */
+  case object Excluded extends SkipReason("excluded")
+
+  /**
+   * Too many compressions were pending.
+   */
+  case object Overloaded extends SkipReason("overloaded")
+
+  /**
+   * The node was saturated, so the adaptive mode backed off from compressing.
+   */
+  case object Saturated extends SkipReason("saturated")
+
+  /**
+   * The body didn't fit into the memory budget for the bodies which are buffered or compressed.
+   */
+  case object OverBudget extends SkipReason("overBudget")
+
+  /**
+   * A subclass of the filter decided to not compress the result.
+   */
+  case object Other extends SkipReason("other")
+
+  /**
+   * All reasons.
+   */
+  val values: Seq[SkipReason] = Seq(
+    Chunked, Encoded, ContentType, TooSmall, TooLarge, Precompressed, NotModified, Excluded, Overloaded, Saturated,
+    OverBudget, Other
+  )
+}
+
+/**
+ * Records what the compressor filter does.
+ *
+ * Implement this trait and bind it in place of the [[InMemoryCompressorMetrics]] to forward the
+ * metrics to a metrics library like Micrometer or Dropwizard.
+ */
+trait CompressorMetrics {
+
+  /**
+   * Records a compression.
+   *
+   * @param nanos The time the compression took in nanoseconds.
+   * @param inputBytes The size of the uncompressed body in bytes.
+   * @param outputBytes The size of the compressed body in bytes.
+   */
+  def compressed(nanos: Long, inputBytes: Long, outputBytes: Long): Unit
+
+  /**
+   * Records a result which wasn't compressed.
+   *
+   * @param reason The reason why the result wasn't compressed.
+   */
+  def skipped(reason: SkipReason): Unit
+
+  /**
+   * Records a failed compression.
+   *
+   * @param cause The cause of the failure.
+   */
+  def failed(cause: Throwable): Unit
+
+  /**
+   * Records a lookup of a compressed inline script or style block in the cache.
+   *
+   * @param hit True if the compressed block was cached, false if it had to be compressed.
+   */
+  def inlineBlockLookup(hit: Boolean): Unit = ()
+
+  /**
+   * Records compressed inline script or style blocks which were evicted from the cache.
+   *
+   * @param count The number of evicted blocks.
+   */
+  def inlineBlocksEvicted(count: Int): Unit = ()
+
+  /**
+   * Records the number of bytes of the bodies which are buffered or compressed as a whole, whenever a
+   * body reserves or releases its bytes in the memory budget.
+   *
+   * @param bytes The number of bytes in flight.
+   */
+  def inFlightBytes(bytes: Long): Unit = ()
+
+  /**
+   * Indicates if the phases of all compressions should be recorded and passed to [[timed]], regardless
+   * of the `play.filters.compressor.timing` configuration and without a `Server-Timing` header.
+   *
+   * Override this together with [[timed]] to forward the spans to a tracing system.
+   *
+   * @return True if the phases of all compressions should be recorded, false otherwise.
+   */
+  def tracing: Boolean = false
+
+  /**
+   * Records the phases of the compression of a result, if they get recorded for its request.
+   *
+   * The phases of bodies which get compressed while they stream through the filter get recorded once
+   * the body has completed. Override this to forward the spans to a tracing system.
+   *
+   * @param timing The recorded phases and the request.
+   */
+  def timed(timing: CompressionTiming): Unit = ()
+}
+
+/**
+ * The companion object.
+ */
+object CompressorMetrics {
+
+  /**
+   * Metrics which record nothing.
+   */
+  object Noop extends CompressorMetrics {
+    override def compressed(nanos: Long, inputBytes: Long, outputBytes: Long): Unit = ()
+    override def skipped(reason: SkipReason): Unit = ()
+    override def failed(cause: Throwable): Unit = ()
+  }
+}
+
+/**
+ * A histogram with exponentially growing buckets.
+ *
+ * Bucket `i` counts the values in the range `[2^(i-1), 2^i)`, so the percentiles are accurate to
+ * a factor of two, while recording a value costs only a few atomic operations.
+ */
+class Histogram {
+
+  /**
+   * The number of values in each bucket.
+   */
+  private val buckets = new AtomicLongArray(64)
+
+  /**
+   * The number of recorded values.
+   */
+  private val counter = new LongAdder
+
+  /**
+   * The sum of the recorded values.
+   */
+  private val total = new LongAdder
+
+  /**
+   * The largest recorded value.
+   */
+  private val maximum = new AtomicLong(0)
+
+  /**
+   * Records a value.
+   *
+   * @param value The value to record, negative values are recorded as 0.
+   */
+  def record(value: Long): Unit = {
+    val v = math.max(value, 0L)
+    buckets.incrementAndGet(64 - java.lang.Long.numberOfLeadingZeros(v) min 63)
+    counter.increment()
+    total.add(v)
+    var max = maximum.get
+    while (v > max && !maximum.compareAndSet(max, v)) max = maximum.get
+  }
+
+  /**
+   * Gets the number of recorded values.
+   *
+   * @return The number of recorded values.
+   */
+  def count: Long = counter.sum
+
+  /**
+   * Gets the sum of the recorded values.
+   *
+   * @return The sum of the recorded values.
+   */
+  def sum: Long = total.sum
+
+  /**
+   * Gets the largest recorded value.
+   *
+   * @return The largest recorded value.
+   */
+  def max: Long = maximum.get
+
+  /**
+   * Gets the mean of the recorded values.
+   *
+   * @return The mean of the recorded values, 0 if no values were recorded.
+   */
+  def mean: Double = if (count == 0) 0 else sum.toDouble / count
+
+  /**
+   * Gets the upper bound of the given percentile.
+   *
+   * @param percentile The percentile between 0 and 1.
+   * @return The upper bound of the bucket which contains the percentile, limited by the largest value.
+   */
+  def percentile(percentile: Double): Long = {
+    val counts = (0 until 64).map(buckets.get)
+    val rank = math.ceil(counts.sum * percentile).toLong
+    var seen = 0L
+    val bucket = counts.indexWhere { c => seen += c; seen >= rank && c > 0 }
+    if (bucket <= 0) 0 else math.min(1L << bucket, max)
+  }
+}
+
+/**
+ * Keeps the metrics of the compressor filter in memory.
+ */
+@Singleton
+class InMemoryCompressorMetrics extends CompressorMetrics {
+
+  /**
+   * The time the compressions took in nanoseconds.
+   */
+  val latency = new Histogram
+
+  /**
+   * The sizes of the uncompressed bodies in bytes.
+   */
+  val inputSize = new Histogram
+
+  /**
+   * The sizes of the compressed bodies in bytes.
+   */
+  val outputSize = new Histogram
+
+  /**
+   * The number of skipped results per reason.
+   */
+  private val skipCounters = new ConcurrentHashMap[SkipReason, LongAdder]
+
+  /**
+   * The number of failed compressions.
+   */
+  private val failureCounter = new LongAdder
+
+  /**
+   * The number of inline blocks which were found in the cache.
+   */
+  private val inlineHitCounter = new LongAdder
+
+  /**
+   * The number of inline blocks which weren't found in the cache.
+   */
+  private val inlineMissCounter = new LongAdder
+
+  /**
+   * The number of inline blocks which were evicted from the cache.
+   */
+  private val inlineEvictionCounter = new LongAdder
+
+  /**
+   * The last recorded number of bytes in flight.
+   */
+  @volatile private var inFlight = 0L
+
+  /**
+   * The largest recorded number of bytes in flight.
+   */
+  private val peakInFlight = new AtomicLong(0)
+
+  /**
+   * The time the recorded compression phases took in nanoseconds, per phase.
+   */
+  private val phaseLatencies = new ConcurrentHashMap[String, Histogram]
+
+  override def compressed(nanos: Long, inputBytes: Long, outputBytes: Long): Unit = {
+    latency.record(nanos)
+    inputSize.record(inputBytes)
+    outputSize.record(outputBytes)
+  }
+
+  override def skipped(reason: SkipReason): Unit = {
+    val counter = skipCounters.get(reason) match {
+      case null =>
+        val c = new LongAdder
+        Option(skipCounters.putIfAbsent(reason, c)).getOrElse(c)
+      case c => c
+    }
+    counter.increment()
+  }
+
+  override def failed(cause: Throwable): Unit = failureCounter.increment()
+
+  override def inlineBlockLookup(hit: Boolean): Unit = {
+    if (hit) inlineHitCounter.increment() else inlineMissCounter.increment()
+  }
+
+  override def inlineBlocksEvicted(count: Int): Unit = inlineEvictionCounter.add(count.toLong)
+
+  override def inFlightBytes(bytes: Long): Unit = {
+    inFlight = bytes
+    var peak = peakInFlight.get
+    while (bytes > peak && !peakInFlight.compareAndSet(peak, bytes)) peak = peakInFlight.get
+  }
+
+  override def timed(timing: CompressionTiming): Unit = timing.spans.foreach { span =>
+    val histogram = phaseLatencies.get(span.name) match {
+      case null =>
+        val h = new Histogram
+        Option(phaseLatencies.putIfAbsent(span.name, h)).getOrElse(h)
+      case h => h
+    }
+    histogram.record(span.nanos)
+  }
+
+  /**
+   * Gets the time the recorded compression phases with the given name took in nanoseconds.
+   *
+   * @param name The name of the phase, like [[CompressionTiming.Compress]].
+   * @return The histogram of the phase.
+   */
+  def phaseLatency(name: String): Histogram = Option(phaseLatencies.get(name)).getOrElse(new Histogram)
+
+  /**
+   * Gets the number of results which were skipped for the given reason.
+   *
+   * @param reason The reason.
+   * @return The number of results which were skipped for the given reason.
+   */
+  def skips(reason: SkipReason): Long = Option(skipCounters.get(reason)).map(_.sum).getOrElse(0L)
+
+  /**
+   * Gets the number of failed compressions.
+   *
+   * @return The number of failed compressions.
+   */
+  def failures: Long = failureCounter.sum
+
+  /**
+   * Gets the number of bytes the compressions saved.
+   *
+   * @return The number of bytes the compressions saved.
+   */
+  def bytesSaved: Long = inputSize.sum - outputSize.sum
+
+  /**
+   * Gets the number of inline blocks which were found in the cache.
+   *
+   * @return The number of inline blocks which were found in the cache.
+   */
+  def inlineHits: Long = inlineHitCounter.sum
+
+  /**
+   * Gets the number of inline blocks which weren't found in the cache.
+   *
+   * @return The number of inline blocks which weren't found in the cache.
+   */
+  def inlineMisses: Long = inlineMissCounter.sum
+
+  /**
+   * Gets the number of inline blocks which were evicted from the cache.
+   *
+   * @return The number of inline blocks which were evicted from the cache.
+   */
+  def inlineEvictions: Long = inlineEvictionCounter.sum
+
+  /**
+   * Gets the last recorded number of bytes of the bodies which are buffered or compressed as a whole.
+   *
+   * @return The number of bytes in flight.
+   */
+  def bytesInFlight: Long = inFlight
+
+  /**
+   * Gets the largest recorded number of bytes of the bodies which are buffered or compressed as a whole.
+   *
+   * @return The peak number of bytes in flight.
+   */
+  def peakBytesInFlight: Long = peakInFlight.get
+
+  /**
+   * Gets the share of the inline block lookups which were found in the cache.
+   *
+   * @return The hit rate between 0 and 1, 0 if no blocks were looked up.
+   */
+  def inlineHitRate: Double = {
+    val hits = inlineHits
+    val lookups = hits + inlineMisses
+    if (lookups == 0) 0 else hits.toDouble / lookups
+  }
+}
+
+/**
+ * Play module for providing the compressor metrics.
+ *
+ * Disable this module and bind the [[CompressorMetrics]] to your own implementation to forward the
+ * metrics to a metrics library.
+ */
+class CompressorMetricsModule extends Module {
+  def bindings(environment: Environment, configuration: Configuration) = {
+    Seq(
+      bind[CompressorMetrics].to[InMemoryCompressorMetrics]
+    )
+  }
+}
+
+/**
+ * Injection helper for the compressor metrics.
+ */
+trait CompressorMetricsComponents {
+
+  lazy val compressorMetrics: CompressorMetrics = new InMemoryCompressorMetrics
+}
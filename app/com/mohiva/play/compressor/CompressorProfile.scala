@@ -0,0 +1,69 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import com.googlecode.htmlcompressor.compressor.Compressor
+import play.api.libs.typedmap.TypedKey
+import play.api.mvc.RequestHeader
+import play.api.routing.Router
+
+/**
+ * A named set of compressor settings, with the compressors which are built from it once at startup.
+ *
+ * @param name The name of the profile.
+ * @param template The compressor whose settings the provided compressors have.
+ * @param compressors The provider which hands out the compressors of the profile.
+ * @param settings The fingerprint of the compressor settings.
+ * @param parallel The compressor which compresses large bodies in parallel, if enabled.
+ * @tparam C The type of the compressor.
+ */
+class CompressorProfile[C <: Compressor](
+  val name: String,
+  val template: C,
+  val compressors: CompressorProvider[C],
+  val settings: String,
+  val parallel: Option[ParallelCompressor])
+
+/**
+ * The companion object.
+ */
+object CompressorProfile {
+
+  /**
+   * The name of the profile which gets used if a request doesn't select a profile.
+   */
+  val Default = "default"
+
+  /**
+   * The request attribute which selects the profile of a request. It must be set before the request
+   * reaches the filter, for example by a preceding filter or the request handler.
+   */
+  val Attr: TypedKey[String] = TypedKey("compressorProfile")
+
+  /**
+   * The prefix of the route modifiers which select the profile of a route, like `compressor:marketing`.
+   */
+  val ModifierPrefix = "compressor:"
+
+  /**
+   * Gets the name of the profile which a request selects.
+   *
+   * The request attribute takes precedence over the route modifier.
+   *
+   * @param rh The request header.
+   * @return The name of the profile, or None if the request doesn't select a profile.
+   */
+  def selected(rh: RequestHeader): Option[String] = rh.attrs.get(Attr).orElse {
+    rh.attrs.get(Router.Attrs.HandlerDef).flatMap(_.modifiers.collectFirst {
+      case modifier if modifier.startsWith(ModifierPrefix) => modifier.substring(ModifierPrefix.length)
+    })
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ ArrayBlockingQueue, TimeUnit }
+
+import com.googlecode.htmlcompressor.compressor.Compressor
+import play.api.Configuration
+
+import scala.annotation.tailrec
+import scala.concurrent.duration._
+import scala.util.control.NonFatal
+
+/**
+ * Provides the compressor instances which compress the results.
+ *
+ * The compressors of the HTML Compressor library aren't documented as thread-safe. An `HtmlCompressor`
+ * for example keeps the statistics of the last compression in a field. So a provider hands out an
+ * instance to a single thread at a time. The instances get created from the immutable
+ * [[CompressorSettings]] of the filter, never copied from another compressor.
+ *
+ * @tparam C The type of the compressor.
+ */
+trait CompressorProvider[C <: Compressor] {
+
+  /**
+   * Borrows a compressor, applies the given function to it and returns the compressor.
+   *
+   * @param f The function to apply to the compressor.
+   * @tparam T The type of the result.
+   * @return The result of the function.
+   */
+  def withCompressor[T](f: C => T): T
+
+  /**
+   * Compresses the given markup.
+   *
+   * @param markup The markup to compress.
+   * @return The compressed markup.
+   */
+  def compress(markup: String): String = withCompressor(_.compress(markup))
+}
+
+/**
+ * Provides an own compressor for every thread.
+ *
+ * @param factory The factory which creates the compressors.
+ * @tparam C The type of the compressor.
+ */
+class ThreadLocalCompressorProvider[C <: Compressor](factory: () => C) extends CompressorProvider[C] {
+
+  /**
+   * The compressors of the threads.
+   */
+  private val local = new ThreadLocal[C] {
+    override def initialValue(): C = factory()
+  }
+
+  override def withCompressor[T](f: C => T): T = f(local.get)
+}
+
+/**
+ * Provides the compressors from a bounded pool.
+ *
+ * At most `size` compressors get created. If all of them are in use, a thread waits up to `timeout` for
+ * one to be returned, and compresses with the fallback provider otherwise. So the number of compressors
+ * doesn't grow with the load.
+ *
+ * @param factory The factory which creates the compressors.
+ * @param size The maximum number of compressors in the pool.
+ * @param timeout How long to wait for a compressor if all compressors are in use.
+ * @param fallback The provider which gets used if no compressor was returned in time.
+ * @tparam C The type of the compressor.
+ */
+class PooledCompressorProvider[C <: Compressor](
+  factory: () => C,
+  size: Int,
+  timeout: FiniteDuration,
+  fallback: CompressorProvider[C]) extends CompressorProvider[C] {
+
+  /**
+   * The idle compressors.
+   */
+  private val pool = new ArrayBlockingQueue[C](size)
+
+  /**
+   * The number of compressors which were created.
+   */
+  private val created = new AtomicInteger(0)
+
+  override def withCompressor[T](f: C => T): T = {
+    Option(pool.poll()).orElse(create()).orElse(Option(pool.poll(timeout.toNanos, TimeUnit.NANOSECONDS))) match {
+      case Some(compressor) => try f(compressor) finally pool.offer(compressor)
+      case None => fallback.withCompressor(f)
+    }
+  }
+
+  /**
+   * The number of compressors which were created.
+   *
+   * @return The number of compressors.
+   */
+  def compressorCount: Int = created.get
+
+  /**
+   * Creates a compressor, if the maximum number of compressors isn't reached yet.
+   *
+   * @return The compressor, or None if the maximum number of compressors is reached.
+   */
+  private def create(): Option[C] = {
+    @tailrec
+    def reserve(): Boolean = {
+      val count = created.get
+      if (count >= size) false
+      else if (created.compareAndSet(count, count + 1)) true
+      else reserve()
+    }
+
+    if (!reserve()) {
+      None
+    } else {
+      try Some(factory()) catch {
+        case NonFatal(e) =>
+          created.decrementAndGet()
+          throw e
+      }
+    }
+  }
+}
+
+/**
+ * Shares a single compressor between all threads and serializes its use.
+ *
+ * @param compressor The compressor.
+ * @tparam C The type of the compressor.
+ */
+class SharedCompressorProvider[C <: Compressor](compressor: C) extends CompressorProvider[C] {
+  override def withCompressor[T](f: C => T): T = compressor.synchronized(f(compressor))
+}
+
+/**
+ * The companion object.
+ */
+object CompressorProvider {
+
+  /**
+   * Creates a provider from the `play.filters.compressor.provider` configuration, whose compressors get
+   * created by the given factory.
+   *
+   * Without a factory, the template gets shared, because a compressor can't be copied completely.
+   *
+   * @param configuration The Play configuration.
+   * @param template The compressor which gets shared if no compressors can be created, or if the pool
+   *                 is exhausted.
+   * @param factory The factory which creates compressors with the same settings as the template, if known.
+   * @tparam C The type of the compressor.
+   * @return The provider.
+   */
+  def fromConfiguration[C <: Compressor](configuration: Configuration, template: C, factory: Option[() => C]): CompressorProvider[C] = {
+    val provider = configuration.getOptional[String]("play.filters.compressor.provider.type").getOrElse("thread-local")
+    val poolSize = configuration.getOptional[Int]("play.filters.compressor.provider.poolSize").getOrElse(32)
+    val poolTimeout = configuration.getOptional[FiniteDuration]("play.filters.compressor.provider.poolTimeout")
+      .getOrElse(10.millis)
+    if (!Seq("thread-local", "pool", "shared").contains(provider)) {
+      throw configuration.reportError(
+        "play.filters.compressor.provider.type",
+        s"Unknown compressor provider `$provider`, expected `thread-local`, `pool` or `shared`"
+      )
+    }
+    if (provider == "pool" && poolSize <= 0) {
+      throw configuration.reportError(
+        "play.filters.compressor.provider.poolSize",
+        s"Invalid pool size `$poolSize`, expected a positive number"
+      )
+    }
+
+    factory match {
+      case Some(f) if provider == "thread-local" => new ThreadLocalCompressorProvider(f)
+      case Some(f) if provider == "pool" =>
+        new PooledCompressorProvider(f, poolSize, poolTimeout, new SharedCompressorProvider(template))
+      case _ => new SharedCompressorProvider(template)
+    }
+  }
+}
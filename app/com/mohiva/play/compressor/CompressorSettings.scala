@@ -0,0 +1,121 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.lang.reflect.Method
+import java.util.regex.Pattern
+
+import com.googlecode.htmlcompressor.compressor.Compressor
+import play.api.{ Configuration, Environment }
+
+import scala.collection.JavaConverters._
+
+/**
+ * The immutable settings from which the compressors of a filter get created.
+ *
+ * Every compressor gets created by the engine from the same settings, so the providers hand out
+ * complete compressors which behave like the compressor instance of the filter, without copying it.
+ *
+ * @param engine The engine which creates the compressors.
+ * @param config The settings, like the `play.filters.compressor.html` configuration.
+ * @param environment The Play environment.
+ * @tparam C The type of the compressor.
+ */
+final class CompressorSettings[C <: Compressor](val engine: CompressorEngine[C], val config: Configuration, val environment: Environment) {
+
+  /**
+   * Creates a compressor with the settings.
+   *
+   * @return The compressor.
+   */
+  def create(): C = engine.create(config, environment)
+}
+
+/**
+ * The companion object.
+ */
+object CompressorSettings {
+
+  /**
+   * Creates a fingerprint of the settings of a compressor.
+   *
+   * The fingerprint consists of the class name of the compressor and the values of all its bean
+   * properties with a primitive or string type, and of all other bean properties which can be set,
+   * so statistics and alike don't count. Nested compressors, like the script and style compressors of the
+   * HTML compressor, are fingerprinted recursively, patterns by their expression and flags and
+   * collections by their elements. Other objects are identified by their class and instance, because
+   * their settings can't be known. Two compressors with the same fingerprint produce the same output
+   * for the same input.
+   *
+   * @param compressor The compressor to create the fingerprint for.
+   * @return The fingerprint.
+   */
+  def fingerprint(compressor: Compressor): String = compressor match {
+    case c: CachingCompressor => fingerprint(c.delegate)
+    case _ =>
+      val setters = compressor.getClass.getMethods.toSeq.filter(_.getName.startsWith("set")).map(_.getName.drop(3)).toSet
+      val properties = compressor.getClass.getMethods.toSeq
+        .filter(method => isSetting(method) && (isPlain(method.getReturnType) || setters.contains(property(method))))
+        .sortBy(_.getName)
+        .map(method => method.getName + "=" + value(method.invoke(compressor)))
+
+      (compressor.getClass.getName +: properties).mkString(";")
+  }
+
+  /**
+   * Creates the fingerprint of the value of a setting.
+   *
+   * @param value The value of the setting.
+   * @return The fingerprint of the value.
+   */
+  private def value(value: Any): String = value match {
+    case null => "null"
+    case v: String => v
+    case v: Compressor => "{" + fingerprint(v) + "}"
+    case v: Pattern => "/" + v.pattern + "/" + v.flags
+    case v: java.lang.Enum[_] => v.getDeclaringClass.getName + "." + v.name
+    case v: java.util.Collection[_] => v.asScala.map(this.value).mkString("[", ",", "]")
+    case v @ (_: java.lang.Number | _: java.lang.Boolean | _: java.lang.Character) => v.toString
+    case v => v.getClass.getName + "@" + Integer.toHexString(System.identityHashCode(v))
+  }
+
+  /**
+   * Checks if a type is a primitive or string type.
+   *
+   * @param c The type to check.
+   * @return True if the type is a primitive or string type, false otherwise.
+   */
+  private def isPlain(c: Class[_]): Boolean = c.isPrimitive || c == classOf[String]
+
+  /**
+   * Gets the name of the property which a getter reads.
+   *
+   * @param method The getter.
+   * @return The name of the property.
+   */
+  private def property(method: Method): String = {
+    val name = method.getName
+    if (name.startsWith("is")) name.drop(2) else name.drop(3)
+  }
+
+  /**
+   * Checks if a method is a getter for a setting.
+   *
+   * @param method The method to check.
+   * @return True if the method is a getter for a setting, false otherwise.
+   */
+  private def isSetting(method: Method): Boolean = {
+    val name = method.getName
+    (name.startsWith("is") || name.startsWith("get")) &&
+      method.getParameterTypes.isEmpty &&
+      method.getReturnType != Void.TYPE
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.{ Files, Paths }
+
+import play.api.Configuration
+
+import scala.io.Source
+
+/**
+ * Compresses representative documents a number of times before the application serves requests.
+ *
+ * The first requests after the start would otherwise pay for the class loading, the compilation of the
+ * regular expressions of the compressors and the JIT compilation of the compression code.
+ *
+ * @param iterations The number of times every document gets compressed.
+ * @param documents The documents to compress.
+ */
+class CompressorWarmup(val iterations: Int, val documents: Seq[String]) {
+
+  /**
+   * Compresses every document the given number of times.
+   *
+   * @param compress A function which compresses a document.
+   */
+  def run(compress: String => Unit): Unit = {
+    (0 until iterations).foreach { _ =>
+      documents.foreach(compress)
+    }
+  }
+}
+
+/**
+ * The companion object.
+ */
+object CompressorWarmup {
+
+  /**
+   * Creates a warm-up from the `play.filters.compressor.warmup` configuration.
+   *
+   * The documents get listed by the type of the filter, like `warmup.html`. Every entry is either the
+   * path of a file, absolute or relative to the working directory, or the name of a classpath resource.
+   * If no documents are listed, the built-in sample of the filter gets compressed.
+   *
+   * @param configuration The Play configuration.
+   * @param documents The name of the list of documents, like `html` or `xml`.
+   * @param sample The built-in sample document of the filter.
+   * @param classLoader The class loader which loads the classpath resources.
+   * @return The warm-up, or None if the warm-up isn't enabled.
+   */
+  def fromConfiguration(
+    configuration: Configuration,
+    documents: String,
+    sample: => String,
+    classLoader: ClassLoader): Option[CompressorWarmup] = {
+    val enabled = configuration.getOptional[Boolean]("play.filters.compressor.warmup.enabled").getOrElse(false)
+    if (enabled) {
+      val iterations = configuration.getOptional[Int]("play.filters.compressor.warmup.iterations").getOrElse(50)
+      if (iterations <= 0) {
+        throw configuration.reportError(
+          "play.filters.compressor.warmup.iterations",
+          s"Invalid iterations `$iterations`, expected a positive number"
+        )
+      }
+      val path = s"play.filters.compressor.warmup.$documents"
+      val loaded = configuration.getOptional[Seq[String]](path).getOrElse(Seq.empty).map { name =>
+        load(name, classLoader).getOrElse {
+          throw configuration.reportError(path, s"Unknown warm-up document `$name`, expected a file or a classpath resource")
+        }
+      }
+
+      Some(new CompressorWarmup(iterations, if (loaded.isEmpty) Seq(sample) else loaded))
+    } else {
+      None
+    }
+  }
+
+  /**
+   * Loads a document from a file or from a classpath resource.
+   *
+   * @param name The path of the file or the name of the resource.
+   * @param classLoader The class loader which loads the classpath resources.
+   * @return The document, or None if neither a file nor a resource with the name exists.
+   */
+  private def load(name: String, classLoader: ClassLoader): Option[String] = {
+    val file = Paths.get(name)
+    if (Files.isRegularFile(file)) {
+      Some(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+    } else {
+      Option(classLoader.getResourceAsStream(name.stripPrefix("/"))).map { stream =>
+        try Source.fromInputStream(stream, "UTF-8").mkString finally stream.close()
+      }
+    }
+  }
+}
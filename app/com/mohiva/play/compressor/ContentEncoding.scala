@@ -0,0 +1,393 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.zip.{ CRC32, Deflater }
+
+import akka.NotUsed
+import akka.stream._
+import akka.stream.scaladsl.Flow
+import akka.stream.stage.{ GraphStage, GraphStageLogic, InHandler, OutHandler }
+import akka.util.{ ByteString, ByteStringBuilder }
+import play.api.http.HttpChunk
+
+import scala.util.Try
+
+/**
+ * A transport encoding which gets applied to the compressed markup.
+ *
+ * @param name The name of the encoding as used in the `Accept-Encoding` and `Content-Encoding` headers.
+ */
+sealed abstract class ContentEncoding(val name: String) {
+
+  /**
+   * Creates a new encoder for this encoding.
+   *
+   * @param level The compression level between 0 and 9.
+   * @return The encoder.
+   */
+  def encoder(level: Int): ContentEncoder
+}
+
+/**
+ * The companion object.
+ */
+object ContentEncoding {
+
+  /**
+   * The gzip encoding.
+   */
+  case object Gzip extends ContentEncoding("gzip") {
+    override def encoder(level: Int): ContentEncoder = new GzipEncoder(level)
+  }
+
+  /**
+   * The deflate encoding, which is the zlib format.
+   */
+  case object Deflate extends ContentEncoding("deflate") {
+    override def encoder(level: Int): ContentEncoder = new DeflateEncoder(level)
+  }
+
+  /**
+   * All encodings in the order of preference.
+   */
+  val values: Seq[ContentEncoding] = Seq(Gzip, Deflate)
+
+  /**
+   * Gets an encoding by its name.
+   *
+   * @param name The name of the encoding.
+   * @return The encoding, or None if no encoding with this name exists.
+   */
+  def forName(name: String): Option[ContentEncoding] = values.find(_.name.equalsIgnoreCase(name.trim))
+
+  /**
+   * Selects the encoding which the client accepts with the highest quality.
+   *
+   * If the client accepts several encodings with the same quality, the one which comes first in the
+   * given encodings is selected.
+   *
+   * @param acceptEncoding The values of the `Accept-Encoding` headers.
+   * @param encodings The encodings to select from, in the order of preference.
+   * @return The selected encoding, or None if the client doesn't accept any of the encodings.
+   */
+  def negotiate(acceptEncoding: Seq[String], encodings: Seq[ContentEncoding]): Option[ContentEncoding] = {
+    val qualities = acceptEncoding.flatMap(_.split(',')).map(_.trim).filter(_.nonEmpty).map { value =>
+      val parts = value.split(';').map(_.trim)
+      val quality = parts.tail.collectFirst {
+        case p if p.startsWith("q=") => Try(p.drop(2).toDouble).getOrElse(0d)
+      }.getOrElse(1d)
+      parts.head.toLowerCase -> quality
+    }.toMap
+
+    val candidates = encodings.map { e =>
+      e -> qualities.get(e.name).orElse(qualities.get("*")).getOrElse(0d)
+    }.filter(_._2 > 0)
+
+    if (candidates.isEmpty) None else Some(candidates.maxBy(_._2)._1)
+  }
+}
+
+/**
+ * Encodes a stream of bytes with the help of a `Deflater`.
+ *
+ * An encoder isn't thread-safe and can only encode a single body. It must be closed if the body
+ * doesn't get encoded completely.
+ *
+ * @param level The compression level between 0 and 9.
+ * @param nowrap True if the raw deflate format should be written, false for the zlib format.
+ */
+abstract class ContentEncoder(level: Int, nowrap: Boolean) {
+
+  /**
+   * The deflater.
+   */
+  private val deflater = new Deflater(level, nowrap)
+
+  /**
+   * The buffer into which the deflater writes.
+   */
+  private val buffer = new Array[Byte](8192)
+
+  /**
+   * Indicates if the header was already written.
+   */
+  private var started = false
+
+  /**
+   * Encodes the next bytes of the body.
+   *
+   * @param bytes The bytes to encode.
+   * @param flush True if all encoded bytes should be emitted, so that the client can process them
+   *              before the next bytes arrive, false otherwise.
+   * @return The encoded bytes.
+   */
+  def encode(bytes: ByteString, flush: Boolean): ByteString = {
+    val builder = start()
+    if (bytes.nonEmpty) {
+      val array = bytes.toArray
+      update(array)
+      deflater.setInput(array)
+      drain(builder, if (flush) Deflater.SYNC_FLUSH else Deflater.NO_FLUSH)
+    }
+    builder.result()
+  }
+
+  /**
+   * Finishes the body and releases the deflater.
+   *
+   * @return The encoded bytes which were still pending.
+   */
+  def finish(): ByteString = {
+    val builder = start()
+    deflater.finish()
+    while (!deflater.finished) {
+      builder.putBytes(buffer, 0, deflater.deflate(buffer))
+    }
+    builder ++= trailer
+    close()
+    builder.result()
+  }
+
+  /**
+   * Releases the deflater.
+   */
+  def close(): Unit = deflater.end()
+
+  /**
+   * Encodes a complete body.
+   *
+   * @param bytes The body to encode.
+   * @return The encoded body.
+   */
+  def encodeAll(bytes: ByteString): ByteString = encode(bytes, flush = false) ++ finish()
+
+  /**
+   * Gets the bytes which precede the encoded body.
+   *
+   * @return The header.
+   */
+  protected def header: ByteString
+
+  /**
+   * Gets the bytes which follow the encoded body.
+   *
+   * @return The trailer.
+   */
+  protected def trailer: ByteString
+
+  /**
+   * Gets notified about the bytes which get encoded.
+   *
+   * @param bytes The bytes which get encoded.
+   */
+  protected def update(bytes: Array[Byte]): Unit
+
+  /**
+   * Creates a builder for the encoded bytes, which starts with the header if it wasn't written yet.
+   *
+   * @return The builder.
+   */
+  private def start(): ByteStringBuilder = {
+    val builder = ByteString.newBuilder
+    if (!started) {
+      started = true
+      builder ++= header
+    }
+    builder
+  }
+
+  /**
+   * Writes the output of the deflater into the builder, until the deflater needs more input.
+   *
+   * @param builder The builder.
+   * @param flush The flush mode.
+   */
+  private def drain(builder: ByteStringBuilder, flush: Int): Unit = {
+    var length = buffer.length
+    while (length == buffer.length) {
+      length = deflater.deflate(buffer, 0, buffer.length, flush)
+      builder.putBytes(buffer, 0, length)
+    }
+  }
+}
+
+/**
+ * Encodes a body in the gzip format.
+ *
+ * @param level The compression level between 0 and 9.
+ */
+class GzipEncoder(level: Int) extends ContentEncoder(level, nowrap = true) {
+
+  /**
+   * The checksum of the uncompressed bytes.
+   */
+  private val crc = new CRC32
+
+  /**
+   * The number of uncompressed bytes.
+   */
+  private var size = 0L
+
+  override protected def header: ByteString = GzipEncoder.Header
+
+  override protected def trailer: ByteString = {
+    implicit val order = java.nio.ByteOrder.LITTLE_ENDIAN
+    ByteString.newBuilder.putInt(crc.getValue.toInt).putInt(size.toInt).result()
+  }
+
+  override protected def update(bytes: Array[Byte]): Unit = {
+    crc.update(bytes)
+    size += bytes.length.toLong
+  }
+}
+
+/**
+ * The companion object.
+ */
+object GzipEncoder {
+
+  /**
+   * The gzip header without a file name, modification time or extra fields.
+   */
+  val Header = ByteString(Array[Byte](0x1f, 0x8b.toByte, Deflater.DEFLATED.toByte, 0, 0, 0, 0, 0, 0, 0xff.toByte))
+}
+
+/**
+ * Encodes a body in the zlib format, which is what HTTP calls deflate.
+ *
+ * @param level The compression level between 0 and 9.
+ */
+class DeflateEncoder(level: Int) extends ContentEncoder(level, nowrap = false) {
+  override protected def header: ByteString = ByteString.empty
+  override protected def trailer: ByteString = ByteString.empty
+  override protected def update(bytes: Array[Byte]): Unit = ()
+}
+
+/**
+ * Provides flows which encode a body while it streams through them.
+ */
+object ContentEncoderFlow {
+
+  /**
+   * Creates a flow which encodes a stream of bytes.
+   *
+   * Every element gets flushed, so that the client can process it before the next element arrives.
+   *
+   * @param encoding The encoding.
+   * @param level The compression level between 0 and 9.
+   * @return The flow.
+   */
+  def apply(encoding: ContentEncoding, level: Int): Flow[ByteString, ByteString, NotUsed] = {
+    Flow.fromGraph(new EncoderStage(encoding, level))
+  }
+
+  /**
+   * Creates a flow which encodes the chunks of a chunked body.
+   *
+   * The trailers of the last chunk are passed through unchanged.
+   *
+   * @param encoding The encoding.
+   * @param level The compression level between 0 and 9.
+   * @return The flow.
+   */
+  def chunked(encoding: ContentEncoding, level: Int): Flow[HttpChunk, HttpChunk, NotUsed] = {
+    Flow.fromGraph(new ChunkedEncoderStage(encoding, level))
+  }
+}
+
+/**
+ * A stage which encodes a stream of bytes.
+ *
+ * @param encoding The encoding.
+ * @param level The compression level between 0 and 9.
+ */
+private[compressor] class EncoderStage(encoding: ContentEncoding, level: Int)
+  extends GraphStage[FlowShape[ByteString, ByteString]] {
+
+  val in = Inlet[ByteString]("EncoderStage.in")
+  val out = Outlet[ByteString]("EncoderStage.out")
+  override val shape = FlowShape(in, out)
+
+  override def createLogic(attributes: Attributes): GraphStageLogic = new GraphStageLogic(shape) with InHandler with OutHandler {
+    private val encoder = encoding.encoder(level)
+    private var finished = false
+
+    override def onPush(): Unit = {
+      val encoded = encoder.encode(grab(in), flush = true)
+      if (encoded.isEmpty) pull(in) else push(out, encoded)
+    }
+
+    override def onPull(): Unit = pull(in)
+
+    override def onUpstreamFinish(): Unit = {
+      finished = true
+      emit(out, encoder.finish())
+      completeStage()
+    }
+
+    override def postStop(): Unit = if (!finished) encoder.close()
+
+    setHandlers(in, out, this)
+  }
+}
+
+/**
+ * A stage which encodes the chunks of a chunked body.
+ *
+ * @param encoding The encoding.
+ * @param level The compression level between 0 and 9.
+ */
+private[compressor] class ChunkedEncoderStage(encoding: ContentEncoding, level: Int)
+  extends GraphStage[FlowShape[HttpChunk, HttpChunk]] {
+
+  val in = Inlet[HttpChunk]("ChunkedEncoderStage.in")
+  val out = Outlet[HttpChunk]("ChunkedEncoderStage.out")
+  override val shape = FlowShape(in, out)
+
+  override def createLogic(attributes: Attributes): GraphStageLogic = new GraphStageLogic(shape) with InHandler with OutHandler {
+    private val encoder = encoding.encoder(level)
+    private var finished = false
+
+    override def onPush(): Unit = grab(in) match {
+      case HttpChunk.Chunk(data) =>
+        val encoded = encoder.encode(data, flush = true)
+        if (encoded.isEmpty) pull(in) else push(out, HttpChunk.Chunk(encoded))
+      case last: HttpChunk.LastChunk =>
+        emitMultiple(out, rest.toList :+ last)
+    }
+
+    override def onPull(): Unit = pull(in)
+
+    override def onUpstreamFinish(): Unit = {
+      rest.foreach(c => emit(out, c))
+      completeStage()
+    }
+
+    override def postStop(): Unit = if (!finished) encoder.close()
+
+    /**
+     * Finishes the encoder.
+     *
+     * @return A chunk with the pending encoded bytes, or None if the encoder was already finished.
+     */
+    private def rest: Option[HttpChunk] = {
+      if (finished) {
+        None
+      } else {
+        finished = true
+        Some(HttpChunk.Chunk(encoder.finish()))
+      }
+    }
+
+    setHandlers(in, out, this)
+  }
+}
@@ -0,0 +1,523 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.io.IOException
+import java.nio.channels.FileChannel.MapMode
+import java.nio.channels.{ FileChannel, FileLock }
+import java.nio.file.StandardOpenOption._
+import java.nio.file.attribute.PosixFilePermissions
+import java.nio.file.{ Files, Path, Paths }
+import java.nio.{ ByteBuffer, MappedByteBuffer }
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.CRC32
+import java.util.{ ArrayDeque => JArrayDeque, HashMap => JHashMap }
+
+import akka.util.ByteString
+import com.typesafe.config.ConfigMemorySize
+import play.api.Configuration
+
+import scala.util.control.NonFatal
+
+/**
+ * A cache for compressed outputs, which keeps them in a memory-mapped file outside of the Java heap,
+ * so that they survive a restart of the application.
+ *
+ * The file is a ring buffer of records, which get written one after another and wrap around at the end
+ * of the file, overwriting the oldest records. Only the index of the records is kept on the heap, it
+ * gets rebuilt from the file when the cache is opened. Every record carries a sequence number and a
+ * checksum, so that a record which was only partially written when the process crashed gets discarded
+ * instead of served.
+ *
+ * A new file gets created with read and write permissions for its owner only, if the file system
+ * supports POSIX permissions, because the outputs in it get served to the clients.
+ *
+ * @param file The file which keeps the outputs.
+ * @param maxBytes The size of the file, which bounds the number of bytes the cached outputs may occupy.
+ */
+class DiskCompressionCache(val file: Path, val maxBytes: Int) {
+  import DiskCompressionCache._
+
+  /**
+   * The channel of the file, which holds the lock on it as long as the cache is open.
+   */
+  private val channel = {
+    if (!Files.exists(file) && file.getFileSystem.supportedFileAttributeViews.contains("posix")) {
+      Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+    }
+    FileChannel.open(file, CREATE, READ, WRITE)
+  }
+
+  /**
+   * The lock which prevents that another cache uses the same file.
+   */
+  private val lock: FileLock = {
+    val l = try channel.tryLock() catch { case NonFatal(_) => null }
+    if (l == null) {
+      channel.close()
+      throw new IOException(s"The cache file `$file` is used by another cache")
+    }
+    l
+  }
+
+  /**
+   * The mapped file.
+   */
+  private val buffer: MappedByteBuffer = {
+    if (channel.size > maxBytes) channel.truncate(maxBytes.toLong)
+    channel.map(MapMode.READ_WRITE, 0, maxBytes.toLong)
+  }
+
+  /**
+   * The cached records by their keys.
+   */
+  private val index = new JHashMap[CacheKey, Record]
+
+  /**
+   * The cached records in the order in which they were written.
+   */
+  private val records = new JArrayDeque[Record]
+
+  /**
+   * The position at which the next record gets written.
+   */
+  private var tail = DataStart
+
+  /**
+   * The sequence number of the record which was written last.
+   */
+  private var sequence = 0L
+
+  /**
+   * The number of bytes the cached records occupy.
+   */
+  private var currentBytes = 0L
+
+  /**
+   * The number of cache hits.
+   */
+  private val hitCounter = new AtomicLong(0)
+
+  /**
+   * The number of cache misses.
+   */
+  private val missCounter = new AtomicLong(0)
+
+  /**
+   * The number of evicted outputs.
+   */
+  private val evictionCounter = new AtomicLong(0)
+
+  open()
+
+  /**
+   * Gets a compressed output from the cache.
+   *
+   * @param key The key of the output.
+   * @return The output, or None if it isn't cached.
+   */
+  def get(key: CacheKey): Option[ByteString] = {
+    val output = synchronized {
+      Option(index.get(key)).map(record => ByteString(slice(record.outputPosition, record.outputLength)))
+    }
+    if (output.isDefined) hitCounter.incrementAndGet() else missCounter.incrementAndGet()
+    output
+  }
+
+  /**
+   * Puts a compressed output into the cache and evicts the oldest outputs to make room for it. Outputs
+   * which are larger than the cache itself don't get cached.
+   *
+   * The position of the oldest record gets stored before the evicted records get overwritten, so that
+   * the records can be found again if the process crashes while the output gets written.
+   *
+   * @param key The key of the output.
+   * @param output The output to cache.
+   * @return The number of evicted outputs.
+   */
+  def put(key: CacheKey, output: ByteString): Int = {
+    val settings = key.settings.getBytes("UTF-8")
+    val size = RecordHeaderSize + settings.length + output.length
+    if (size > maxBytes - DataStart) 0 else synchronized {
+      if (index.containsKey(key)) 0 else {
+        val wraps = tail + size > maxBytes
+        val position = if (wraps) DataStart else tail
+        var evicted = 0
+        while (!records.isEmpty && {
+          val oldest = records.peekFirst
+          (wraps && oldest.position >= tail) ||
+            (oldest.position < position + size && oldest.position + oldest.size > position)
+        }) {
+          evict()
+          evicted += 1
+        }
+        writeHead(if (records.isEmpty) position else records.peekFirst.position)
+        if (wraps && tail + 4 <= maxBytes) buffer.putInt(tail, WrapMagic)
+
+        sequence += 1
+        val record = write(position, key, settings, output)
+        records.addLast(record)
+        index.put(key, record)
+        currentBytes += record.size
+        tail = position + size
+        evictionCounter.addAndGet(evicted.toLong)
+        evicted
+      }
+    }
+  }
+
+  /**
+   * Gets the number of cached outputs.
+   *
+   * @return The number of cached outputs.
+   */
+  def size: Int = synchronized(index.size)
+
+  /**
+   * Gets the number of bytes the cached records occupy in the file.
+   *
+   * @return The number of bytes the cached records occupy.
+   */
+  def bytes: Long = synchronized(currentBytes)
+
+  /**
+   * Gets the number of cache hits.
+   *
+   * @return The number of cache hits.
+   */
+  def hits: Long = hitCounter.get
+
+  /**
+   * Gets the number of cache misses.
+   *
+   * @return The number of cache misses.
+   */
+  def misses: Long = missCounter.get
+
+  /**
+   * Gets the number of outputs which were evicted to keep the cache within its bounds.
+   *
+   * @return The number of evicted outputs.
+   */
+  def evictions: Long = evictionCounter.get
+
+  /**
+   * Writes the cached outputs to the disk and releases the file, so that another cache can open it.
+   * The cache must not be used anymore afterwards.
+   */
+  def close(): Unit = synchronized {
+    buffer.force()
+    lock.release()
+    channel.close()
+  }
+
+  /**
+   * Opens the file, either by rebuilding the index from the records in it, or by initializing it if it
+   * wasn't written by a cache of the same version and size.
+   */
+  private def open(): Unit = {
+    if (buffer.getInt(0) == FileMagic && buffer.getInt(4) == Version && buffer.getLong(8) == maxBytes) {
+      scan(buffer.getLong(HeadPosition).toInt)
+    } else {
+      buffer.putInt(0, 0)
+      buffer.putInt(4, Version)
+      buffer.putLong(8, maxBytes.toLong)
+      writeHead(DataStart)
+      buffer.putInt(DataStart, 0)
+      buffer.putInt(0, FileMagic)
+    }
+  }
+
+  /**
+   * Rebuilds the index from the records in the file.
+   *
+   * The records get read from the oldest one on, until a record is missing or damaged, or has an older
+   * sequence number than its predecessor, because it's left over from before the ring wrapped around.
+   *
+   * @param head The position of the oldest record.
+   */
+  private def scan(head: Int): Unit = {
+    var position = if (head >= DataStart && head < maxBytes) head else DataStart
+    var wrapped = false
+    var done = false
+    tail = position
+    while (!done) {
+      if (position + RecordHeaderSize > maxBytes || buffer.getInt(position) == WrapMagic) {
+        done = wrapped
+        wrapped = true
+        position = DataStart
+      } else {
+        read(position) match {
+          case Some(record) if record.sequence > sequence =>
+            records.addLast(record)
+            index.put(record.key, record)
+            currentBytes += record.size
+            sequence = record.sequence
+            position += record.size
+            tail = position
+          case _ => done = true
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a record and verifies its checksum.
+   *
+   * @param position The position of the record.
+   * @return The record, or None if no intact record exists at the position.
+   */
+  private def read(position: Int): Option[Record] = {
+    if (buffer.getInt(position) != RecordMagic) {
+      None
+    } else {
+      val settingsLength = buffer.getInt(position + 52)
+      val outputLength = buffer.getInt(position + 56)
+      val size = RecordHeaderSize.toLong + settingsLength + outputLength
+      if (settingsLength < 0 || outputLength < 0 || position + size > maxBytes ||
+        checksum(position, size.toInt) != buffer.getInt(position + 4)) {
+        None
+      } else {
+        val settings = new Array[Byte](settingsLength)
+        slice(position + RecordHeaderSize, settingsLength).get(settings)
+        val digest = new Array[Byte](CacheKey.DigestLength)
+        slice(position + 20, CacheKey.DigestLength).get(digest)
+        val key = CacheKey(new String(settings, "UTF-8"), buffer.getInt(position + 16), ByteString(digest))
+        Some(Record(key, position, size.toInt, buffer.getLong(position + 8), outputLength))
+      }
+    }
+  }
+
+  /**
+   * Writes a record with the current sequence number.
+   *
+   * The magic number of the record gets written last, so that a record which was only partially written
+   * isn't recognized as a record, even if the checksum of the old record at its position would match.
+   *
+   * @param position The position of the record.
+   * @param key The key of the output.
+   * @param settings The encoded fingerprint of the compressor settings.
+   * @param output The output.
+   * @return The record.
+   */
+  private def write(position: Int, key: CacheKey, settings: Array[Byte], output: ByteString): Record = {
+    val size = RecordHeaderSize + settings.length + output.length
+    buffer.putInt(position, 0)
+    buffer.putLong(position + 8, sequence)
+    buffer.putInt(position + 16, key.length)
+    slice(position + 20, CacheKey.DigestLength).put(key.digest.toArray)
+    buffer.putInt(position + 52, settings.length)
+    buffer.putInt(position + 56, output.length)
+    val body = slice(position + RecordHeaderSize, settings.length + output.length)
+    body.put(settings)
+    output.asByteBuffers.foreach(body.put)
+    buffer.putInt(position + 4, checksum(position, size))
+    buffer.putInt(position, RecordMagic)
+    Record(key, position, size, sequence, output.length)
+  }
+
+  /**
+   * Evicts the oldest record.
+   */
+  private def evict(): Unit = {
+    val record = records.pollFirst()
+    index.remove(record.key)
+    currentBytes -= record.size
+  }
+
+  /**
+   * Stores the position of the oldest record.
+   *
+   * @param position The position of the oldest record.
+   */
+  private def writeHead(position: Int): Unit = buffer.putLong(HeadPosition, position.toLong)
+
+  /**
+   * Calculates the checksum of a record, which covers everything behind the checksum itself.
+   *
+   * @param position The position of the record.
+   * @param size The size of the record.
+   * @return The checksum.
+   */
+  private def checksum(position: Int, size: Int): Int = {
+    val crc = new CRC32
+    crc.update(slice(position + 8, size - 8))
+    crc.getValue.toInt
+  }
+
+  /**
+   * Gets a view of a part of the mapped file.
+   *
+   * @param position The position of the part.
+   * @param length The length of the part.
+   * @return The view.
+   */
+  private def slice(position: Int, length: Int): ByteBuffer = {
+    val view = buffer.duplicate()
+    view.position(position)
+    view.limit(position + length)
+    view
+  }
+}
+
+/**
+ * The companion object.
+ */
+object DiskCompressionCache {
+
+  /**
+   * The magic number which identifies a cache file.
+   */
+  val FileMagic = 0x50434346
+
+  /**
+   * The version of the file format.
+   */
+  val Version = 2
+
+  /**
+   * The position of the position of the oldest record in the file.
+   */
+  val HeadPosition = 16
+
+  /**
+   * The position of the first record in the file.
+   */
+  val DataStart = 64
+
+  /**
+   * The magic number which identifies a record.
+   */
+  val RecordMagic = 0x50434352
+
+  /**
+   * The magic number which marks that the records continue at the start of the file.
+   */
+  val WrapMagic = 0x50434357
+
+  /**
+   * The size of the fields of a record in front of the fingerprint of the settings and the output.
+   */
+  val RecordHeaderSize = 60
+
+  /**
+   * The minimum size of the file.
+   */
+  val MinSize = 4096
+
+  /**
+   * The caches which were opened with [[open]] by their files, together with the number of their users.
+   */
+  private val opened = new JHashMap[Path, (DiskCompressionCache, Int)]
+
+  /**
+   * Opens the cache for a file, or gets the cache which is already open for it.
+   *
+   * All filters of the JVM share one cache per file, because a file can be locked only once. The keys
+   * of the outputs contain the fingerprints of the compressor settings, so the filters can't get the
+   * outputs of each other. Every user must release the cache once it doesn't need it anymore.
+   *
+   * @param file The file which keeps the outputs.
+   * @param maxBytes The size of the file.
+   * @return The cache.
+   * @throws IOException If the file can't be opened, or is already open with another size.
+   */
+  def open(file: Path, maxBytes: Int): DiskCompressionCache = opened.synchronized {
+    val path = file.toAbsolutePath.normalize
+    Option(opened.get(path)) match {
+      case Some((cache, _)) if cache.maxBytes != maxBytes =>
+        throw new IOException(s"The cache file `$file` is already open with the size ${cache.maxBytes}")
+      case Some((cache, users)) =>
+        opened.put(path, (cache, users + 1))
+        cache
+      case None =>
+        val cache = new DiskCompressionCache(path, maxBytes)
+        opened.put(path, (cache, 1))
+        cache
+    }
+  }
+
+  /**
+   * Releases a cache which was opened with [[open]], and closes it once all its users released it.
+   *
+   * @param cache The cache to release.
+   */
+  def release(cache: DiskCompressionCache): Unit = opened.synchronized {
+    Option(opened.get(cache.file)).filter(_._1 eq cache).foreach {
+      case (_, 1) =>
+        opened.remove(cache.file)
+        cache.close()
+      case (_, users) => opened.put(cache.file, (cache, users - 1))
+    }
+  }
+
+  /**
+   * A record in the file.
+   *
+   * @param key The key of the output.
+   * @param position The position of the record.
+   * @param size The size of the record.
+   * @param sequence The sequence number of the record.
+   * @param outputLength The length of the output.
+   */
+  private case class Record(key: CacheKey, position: Int, size: Int, sequence: Long, outputLength: Int) {
+
+    /**
+     * The position of the output.
+     */
+    def outputPosition: Int = position + size - outputLength
+  }
+
+  /**
+   * Opens the cache from the `play.filters.compressor.diskCache` configuration.
+   *
+   * The path of the file must be configured, because the outputs in it get served to the clients, so
+   * it must not be in a shared directory like the temp directory.
+   *
+   * @param configuration The Play configuration.
+   * @return The cache, or None if the cache isn't enabled.
+   */
+  def fromConfiguration(configuration: Configuration): Option[DiskCompressionCache] = {
+    val enabled = configuration.getOptional[Boolean]("play.filters.compressor.diskCache.enabled").getOrElse(false)
+    if (enabled) {
+      val path = configuration.getOptional[String]("play.filters.compressor.diskCache.path").filter(_.nonEmpty)
+        .map(Paths.get(_))
+        .getOrElse {
+          throw configuration.reportError(
+            "play.filters.compressor.diskCache.path",
+            "The path of the cache file must be set if the disk cache is enabled"
+          )
+        }
+      val maxBytes = configuration.getOptional[ConfigMemorySize]("play.filters.compressor.diskCache.maxBytes")
+        .map(_.toBytes)
+        .getOrElse(64L * 1024 * 1024)
+      if (maxBytes < MinSize || maxBytes > Int.MaxValue) {
+        throw configuration.reportError(
+          "play.filters.compressor.diskCache.maxBytes",
+          s"Invalid size `$maxBytes`, expected at least $MinSize bytes and less than 2 GB"
+        )
+      }
+
+      try {
+        Option(path.toAbsolutePath.getParent).foreach(Files.createDirectories(_))
+        Some(open(path, maxBytes.toInt))
+      } catch {
+        case e: IOException => throw configuration.reportError(
+          "play.filters.compressor.diskCache.path",
+          s"Cannot open the cache file `$path`: ${e.getMessage}",
+          Some(e)
+        )
+      }
+    } else {
+      None
+    }
+  }
+}
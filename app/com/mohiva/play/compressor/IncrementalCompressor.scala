@@ -0,0 +1,34 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+/**
+ * Compresses a single document, while it arrives in arbitrary pieces.
+ *
+ * An instance keeps the state of one document, so it must not be shared between documents or threads.
+ */
+trait IncrementalCompressor {
+
+  /**
+   * Appends a piece of markup.
+   *
+   * @param markup The markup to append.
+   * @return The markup which could already be compressed, might be empty.
+   */
+  def feed(markup: String): String
+
+  /**
+   * Compresses all markup which is still held back, after the last piece was appended.
+   *
+   * @return The compressed markup.
+   */
+  def finish(): String
+}
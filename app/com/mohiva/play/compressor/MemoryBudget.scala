@@ -0,0 +1,138 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.concurrent.atomic.AtomicLong
+
+import akka.stream.Materializer
+import com.typesafe.config.ConfigMemorySize
+import play.api.Configuration
+
+import scala.concurrent.duration._
+import scala.concurrent.{ Future, Promise }
+
+/**
+ * Limits the number of bytes of the bodies which are buffered or compressed as a whole at once.
+ *
+ * Every body reserves its bytes before it gets buffered or compressed, and releases them once it was
+ * compressed. A body which doesn't fit into the budget can wait up to the maximum wait time for other
+ * bodies to release their bytes. The bytes in flight are counted with a lock-free counter, which is
+ * by default shared by all budgets of the JVM, so that the HTML and the XML filter share the budget.
+ *
+ * @param maxBytes The maximum number of bytes in flight.
+ * @param maxWait The time in nanoseconds a body may wait for the budget, 0 to not wait.
+ * @param inFlight The counter of the bytes in flight.
+ * @param clock A function which gets the current time in nanoseconds.
+ */
+class MemoryBudget(
+  val maxBytes: Long,
+  val maxWait: Long,
+  inFlight: AtomicLong = MemoryBudget.InFlight,
+  clock: () => Long = () => System.nanoTime) {
+
+  /**
+   * Gets the number of bytes in flight.
+   *
+   * @return The number of bytes in flight.
+   */
+  def used: Long = inFlight.get
+
+  /**
+   * Reserves bytes if they fit into the budget.
+   *
+   * @param bytes The number of bytes to reserve.
+   * @return True if the bytes were reserved, false otherwise.
+   */
+  def tryAcquire(bytes: Long): Boolean = {
+    var current = inFlight.get
+    while (current + bytes <= maxBytes && !inFlight.compareAndSet(current, current + bytes)) current = inFlight.get
+    current + bytes <= maxBytes
+  }
+
+  /**
+   * Reserves bytes, and waits for them to fit into the budget until the given deadline.
+   *
+   * @param bytes The number of bytes to reserve.
+   * @param deadline The time in nanoseconds until which the bytes may wait for the budget.
+   * @param mat The materializer which schedules the retries.
+   * @return True if the bytes were reserved, false if they didn't fit into the budget until the deadline.
+   */
+  def acquire(bytes: Long, deadline: Long)(implicit mat: Materializer): Future[Boolean] = {
+    if (tryAcquire(bytes)) {
+      Future.successful(true)
+    } else if (bytes > maxBytes || deadline - clock() <= 0) {
+      Future.successful(false)
+    } else {
+      val promise = Promise[Boolean]()
+      mat.scheduleOnce(MemoryBudget.RetryInterval, new Runnable {
+        override def run(): Unit = promise.completeWith(acquire(bytes, deadline))
+      })
+      promise.future
+    }
+  }
+
+  /**
+   * Gets the deadline until which a body which starts to reserve its bytes now may wait for the budget.
+   *
+   * @return The deadline in nanoseconds.
+   */
+  def deadline: Long = clock() + maxWait
+
+  /**
+   * Releases reserved bytes.
+   *
+   * @param bytes The number of bytes to release.
+   */
+  def release(bytes: Long): Unit = inFlight.addAndGet(-bytes)
+}
+
+/**
+ * The companion object.
+ */
+object MemoryBudget {
+
+  /**
+   * The counter of the bytes in flight, which is shared by all budgets of the JVM.
+   */
+  val InFlight = new AtomicLong(0)
+
+  /**
+   * The interval in which a waiting body retries to reserve its bytes.
+   */
+  val RetryInterval: FiniteDuration = 10.millis
+
+  /**
+   * Creates a budget from the `play.filters.compressor.budget` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @return The budget, or None if the budget isn't enabled.
+   */
+  def fromConfiguration(configuration: Configuration): Option[MemoryBudget] = {
+    val enabled = configuration.getOptional[Boolean]("play.filters.compressor.budget.enabled").getOrElse(false)
+    if (enabled) {
+      val maxBytes = configuration.getOptional[ConfigMemorySize]("play.filters.compressor.budget.maxBytes")
+        .map(_.toBytes)
+        .getOrElse(256L * 1024 * 1024)
+      val maxWait = configuration.getOptional[FiniteDuration]("play.filters.compressor.budget.maxWait")
+        .getOrElse(Duration.Zero)
+      if (maxBytes <= 0) {
+        throw configuration.reportError(
+          "play.filters.compressor.budget.maxBytes",
+          s"Invalid budget `$maxBytes`, expected a positive size"
+        )
+      }
+
+      Some(new MemoryBudget(maxBytes, maxWait.toNanos))
+    } else {
+      None
+    }
+  }
+}
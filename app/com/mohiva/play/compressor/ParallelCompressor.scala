@@ -0,0 +1,129 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import akka.stream.{ ActorMaterializer, Materializer }
+import com.typesafe.config.ConfigMemorySize
+import play.api.Configuration
+
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.{ ExecutionContext, Future }
+import scala.util.Try
+
+/**
+ * Compresses large documents in parallel.
+ *
+ * The document gets cut into segments at the same safe positions at which streamed bodies get cut,
+ * so never inside `pre`, `textarea`, `script` or `style` elements, comments or CDATA sections. Every
+ * segment gets compressed in the context of the tag before it, and the compressed segments get joined
+ * in order, so that the output is the same as if the document would be compressed as a whole. If the
+ * compressor rewrites a tag between two segments depending on what follows it, the document gets
+ * compressed as a whole instead.
+ *
+ * @param compress The function which compresses a piece of markup, it must be thread-safe.
+ * @param minSize The minimum size of a document in bytes, below which it isn't compressed in parallel.
+ * @param segmentSize The minimum size of a segment in chars.
+ * @param ec The execution context which compresses the segments.
+ */
+class ParallelCompressor(compress: String => String, val minSize: Long, segmentSize: Int)(implicit ec: ExecutionContext) {
+
+  /**
+   * Compresses a document.
+   *
+   * @param markup The document to compress.
+   * @return The compressed document.
+   */
+  def apply(markup: String): Future[String] = {
+    val segments = ParallelCompressor.split(markup, segmentSize)
+    if (segments.size <= 1) {
+      Future.fromTry(Try(compress(markup)))
+    } else {
+      Future.traverse(segments) {
+        case (context, segment) =>
+          Future {
+            val compressedContext = context.map(tag => tag -> compress(tag))
+            compressedContext -> Segmenter.compressSegment(compress, compressedContext, segment)
+          }
+      }.map { compressed =>
+        // The compressor must leave the tags between the segments as they are, whatever follows them
+        val consistent = compressed.forall(_._2.isDefined) && compressed.zip(compressed.drop(1)).forall {
+          case ((_, output), (context, _)) => context.forall(c => output.exists(_.endsWith(c._2)))
+        }
+        if (consistent) compressed.flatMap(_._2).mkString else compress(markup)
+      }
+    }
+  }
+}
+
+/**
+ * The companion object.
+ */
+object ParallelCompressor {
+
+  /**
+   * Cuts a document into segments.
+   *
+   * @param markup The document to cut.
+   * @param segmentSize The minimum size of a segment in chars.
+   * @return The segments, each with the tag before it, or None for the first segment.
+   */
+  def split(markup: String, segmentSize: Int): List[(Option[String], String)] = {
+    val segments = ListBuffer.empty[(Option[String], String)]
+    val scanner = new SegmentScanner
+    var start = 0
+    var context: Option[String] = None
+    scanner.scan(markup, cut => {
+      if (cut - start >= segmentSize && cut < markup.length) {
+        segments += context -> markup.substring(start, cut)
+        context = Some(markup.substring(scanner.cutTagStart, cut))
+        start = cut
+      }
+    })
+    segments += context -> markup.substring(start)
+    segments.toList
+  }
+
+  /**
+   * Creates a parallel compressor from the `play.filters.compressor.parallel` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @param compress The function which compresses a piece of markup, it must be thread-safe.
+   * @param mat The materializer whose actor system provides the dispatcher.
+   * @return The parallel compressor, or None if parallel compression isn't enabled.
+   */
+  def fromConfiguration(configuration: Configuration, compress: String => String)(implicit mat: Materializer): Option[ParallelCompressor] = {
+    val enabled = configuration.getOptional[Boolean]("play.filters.compressor.parallel.enabled").getOrElse(false)
+    if (enabled) {
+      val minSize = configuration.getOptional[ConfigMemorySize]("play.filters.compressor.parallel.minSize")
+        .map(_.toBytes)
+        .getOrElse(1024L * 1024)
+      val segmentSize = configuration.getOptional[ConfigMemorySize]("play.filters.compressor.parallel.segmentSize")
+        .map(_.toBytes)
+        .getOrElse(256L * 1024)
+      val dispatcher = configuration.getOptional[String]("play.filters.compressor.parallel.dispatcher")
+        .getOrElse("play.filters.compressor.parallel-dispatcher")
+      if (segmentSize <= 0 || segmentSize > Int.MaxValue) {
+        throw configuration.reportError(
+          "play.filters.compressor.parallel.segmentSize",
+          s"Invalid segment size `$segmentSize`, expected a positive size below 2g"
+        )
+      }
+
+      val ec = mat match {
+        case m: ActorMaterializer => m.system.dispatchers.lookup(dispatcher)
+        case m => m.executionContext
+      }
+      Some(new ParallelCompressor(compress, minSize, segmentSize.toInt)(ec))
+    } else {
+      None
+    }
+  }
+}
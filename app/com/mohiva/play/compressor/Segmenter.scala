@@ -0,0 +1,479 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.regex.Pattern
+
+/**
+ * Scans markup for positions at which it can be cut into segments which compress independently.
+ *
+ * A cut position is the end of an ordinary tag on the top level of the document. Positions inside
+ * comments, conditional comments, skip blocks, CDATA sections and `pre`, `textarea`, `script` or
+ * `style` elements are never cut positions, because the compressor treats these regions as a whole.
+ *
+ * The scanner works incrementally over a growing buffer, so that it can be fed with the chunks of
+ * a stream. The only state kept between two calls is the kind of the currently open region.
+ */
+private[compressor] class SegmentScanner {
+  import SegmentScanner._
+
+  /**
+   * The position of the next char to scan.
+   */
+  private var pos = 0
+
+  /**
+   * The current state of the scanner.
+   */
+  private var state = Text
+
+  /**
+   * The start position of the currently open tag.
+   */
+  private var tagStart = 0
+
+  /**
+   * The pattern which closes the element whose start tag is currently open.
+   */
+  private var tagCloses: Option[Pattern] = None
+
+  /**
+   * The pattern which closes the currently open block.
+   */
+  private var blockEnd: Pattern = CommentEnd
+
+  /**
+   * The start position of the content of the currently open block.
+   */
+  private var blockStart = 0
+
+  /**
+   * The position from which the end of the currently open block will be searched.
+   */
+  private var searchFrom = 0
+
+  /**
+   * The last cut position found, -1 if no cut position was found since the last shift.
+   */
+  var cut: Int = -1
+
+  /**
+   * The start position of the tag which ends at the last cut position.
+   */
+  var cutTagStart: Int = -1
+
+  /**
+   * Scans the not yet scanned part of the buffer.
+   *
+   * Scanning stops early if a token at the end of the buffer cannot be classified yet. It will be
+   * continued with the next call, after more data was appended to the buffer.
+   *
+   * @param buffer The buffer to scan.
+   * @param onCut A function which gets called for every cut position found.
+   */
+  def scan(buffer: CharSequence, onCut: Int => Unit = _ => ()): Unit = {
+    val length = buffer.length
+    var waiting = false
+    while (pos < length && !waiting) {
+      state match {
+        case Text =>
+          if (buffer.charAt(pos) != '<') {
+            pos += 1
+          } else if (length - pos < Lookahead) {
+            waiting = true
+          } else {
+            openToken(buffer)
+          }
+        case Tag =>
+          if (buffer.charAt(pos) == '>') {
+            pos += 1
+            tagCloses match {
+              case Some(end) => openBlock(end, Element, pos)
+              case None =>
+                state = Text
+                foundCut(pos, tagStart, onCut)
+            }
+          } else {
+            pos += 1
+          }
+        case _ =>
+          val matcher = blockEnd.matcher(buffer).region(searchFrom, length)
+          if (matcher.find()) {
+            pos = matcher.end
+            closeBlock(buffer, matcher.start, onCut)
+          } else {
+            searchFrom = math.max(searchFrom, length - MaxEndLength)
+            pos = length
+          }
+      }
+    }
+  }
+
+  /**
+   * Shifts all positions after the given number of chars was removed from the start of the buffer.
+   *
+   * @param n The number of removed chars.
+   */
+  def shift(n: Int): Unit = {
+    pos -= n
+    tagStart -= n
+    blockStart -= n
+    searchFrom -= n
+    cut = -1
+    cutTagStart = -1
+  }
+
+  /**
+   * Classifies the token which starts with a `<` at the current position.
+   *
+   * @param buffer The buffer to scan.
+   */
+  private def openToken(buffer: CharSequence): Unit = {
+    if (startsWith(buffer, pos, "<!--[")) {
+      openBlock(CondCommentEnd, Block, pos + 5)
+    } else if (startsWith(buffer, pos, "<!--")) {
+      openBlock(CommentEnd, Comment, pos + 4)
+    } else if (startsWith(buffer, pos, "<![CDATA[")) {
+      openBlock(CDataEnd, Block, pos + 9)
+    } else if (startsWith(buffer, pos, "<![")) {
+      openBlock(CondCommentEnd, Block, pos + 3)
+    } else {
+      val next = buffer.charAt(pos + 1)
+      if (Character.isLetter(next) || next == '/' || next == '!' || next == '?') {
+        state = Tag
+        tagStart = pos
+        tagCloses = Preserved.collectFirst {
+          case (start, end) if startsWith(buffer, pos, start) => end
+        }
+      }
+      pos += 1
+    }
+  }
+
+  /**
+   * Opens a block which can only be left if the given end pattern matches.
+   *
+   * @param end The pattern which closes the block.
+   * @param kind The kind of the block.
+   * @param contentStart The position where the content of the block starts.
+   */
+  private def openBlock(end: Pattern, kind: Int, contentStart: Int): Unit = {
+    state = kind
+    blockEnd = end
+    blockStart = contentStart
+    searchFrom = contentStart
+    pos = contentStart
+  }
+
+  /**
+   * Closes the currently open block.
+   *
+   * @param buffer The buffer to scan.
+   * @param endStart The start position of the match which closed the block.
+   * @param onCut A function which gets called for every cut position found.
+   */
+  private def closeBlock(buffer: CharSequence, endStart: Int, onCut: Int => Unit): Unit = {
+    val kind = state
+    state = Text
+    kind match {
+      case Element => foundCut(pos, endStart, onCut)
+      case Comment =>
+        // The compressor preserves skip blocks and elements before it removes comments, so a
+        // comment must be treated like the start of such a block if it contains its start token
+        val content = buffer.subSequence(blockStart, endStart).toString
+        if (content.trim == "{{{") {
+          openBlock(SkipEnd, Block, pos)
+        } else {
+          val lower = content.toLowerCase
+          Preserved.find { case (start, _) => lower.contains(start) }.foreach {
+            case (_, end) => openBlock(end, Block, pos)
+          }
+        }
+      case _ =>
+    }
+  }
+
+  /**
+   * Records a found cut position.
+   *
+   * @param position The cut position.
+   * @param start The start position of the tag which ends at the cut position.
+   * @param onCut A function which gets called for every cut position found.
+   */
+  private def foundCut(position: Int, start: Int, onCut: Int => Unit): Unit = {
+    cut = position
+    cutTagStart = start
+    onCut(position)
+  }
+}
+
+/**
+ * The companion object.
+ */
+private[compressor] object SegmentScanner {
+
+  /**
+   * The scanner states.
+   */
+  val Text = 0
+  val Tag = 1
+  val Element = 2
+  val Comment = 3
+  val Block = 4
+
+  /**
+   * The number of chars needed to classify a token which starts with a `<`.
+   */
+  val Lookahead = 10
+
+  /**
+   * The maximum expected length of a block end token.
+   */
+  val MaxEndLength = 64
+
+  /**
+   * The patterns which close the different blocks.
+   */
+  val CommentEnd = Pattern.compile("-->")
+  val CondCommentEnd = Pattern.compile("<!\\[[^\\]]+]-->")
+  val CDataEnd = Pattern.compile("]]>")
+  val SkipEnd = Pattern.compile("<!--\\s*\\}\\}\\}\\s*-->")
+
+  /**
+   * The start tokens of the elements whose content gets preserved by the compressor, together with
+   * the patterns which close them.
+   */
+  val Preserved: Seq[(String, Pattern)] = Seq("pre", "textarea", "script", "style").map { name =>
+    "<" + name -> Pattern.compile("</" + name + ">", Pattern.CASE_INSENSITIVE)
+  }
+
+  /**
+   * Checks case-insensitively if the buffer contains the given token at the given position.
+   *
+   * @param buffer The buffer to check.
+   * @param pos The position to check.
+   * @param token The token to look for.
+   * @return True if the buffer contains the token at the given position, false otherwise.
+   */
+  def startsWith(buffer: CharSequence, pos: Int, token: String): Boolean = {
+    pos + token.length <= buffer.length &&
+      token.indices.forall(i => Character.toLowerCase(buffer.charAt(pos + i)) == Character.toLowerCase(token.charAt(i)))
+  }
+}
+
+/**
+ * Compresses markup segment by segment, while it arrives in arbitrary pieces.
+ *
+ * Every time a piece arrives, the buffered markup up to the last cut position gets compressed. The
+ * compressor sees the tag before a cut position again as context for the following segment, so that
+ * whitespace around the cut position gets compressed the same way as if the document would be
+ * compressed as a whole.
+ *
+ * The compressed segment gets held back until the next segment confirms that the compressor leaves the
+ * tag at its end as it is, whatever follows. If the compressor rewrites the tag depending on what
+ * follows, the segmenter stops cutting and compresses the held segment together with the remainder
+ * of the markup as a whole.
+ *
+ * Once more than `maxHeld` chars of markup are held back, because no cut position was found or the
+ * remainder gets compressed as a whole, the held markup and the rest of the document get passed
+ * through uncompressed.
+ *
+ * @param compress The function which compresses a piece of markup.
+ * @param maxHeld The maximum number of chars which get held back.
+ */
+private[compressor] class Segmenter(compress: String => String, maxHeld: Long) extends IncrementalCompressor {
+  import Segmenter._
+
+  /**
+   * Creates a segmenter which holds back any number of chars.
+   *
+   * @param compress The function which compresses a piece of markup.
+   */
+  def this(compress: String => String) = this(compress, Long.MaxValue)
+
+  /**
+   * The markup which wasn't compressed yet.
+   */
+  private val buffer = new java.lang.StringBuilder
+
+  /**
+   * The scanner which finds the cut positions.
+   */
+  private val scanner = new SegmentScanner
+
+  /**
+   * The tag before the held segment and its compressed form, or None if nothing was returned yet.
+   */
+  private var context: Option[(String, String)] = None
+
+  /**
+   * The compressed segment which wasn't returned yet, or None if no segment is held back.
+   */
+  private var held: Option[Held] = None
+
+  /**
+   * Indicates if the remainder of the markup gets compressed as a whole.
+   */
+  private var whole = false
+
+  /**
+   * Indicates if the rest of the markup gets passed through uncompressed.
+   */
+  private var passThrough = false
+
+  /**
+   * Appends a piece of markup.
+   *
+   * @param markup The markup to append.
+   * @return The compressed markup up to a cut position before the last one, might be empty.
+   */
+  override def feed(markup: String): String = {
+    if (passThrough) {
+      markup
+    } else {
+      val output = cut(markup)
+      if (buffer.length + held.map(_.raw.length).getOrElse(0) > maxHeld) {
+        passThrough = true
+        val raw = held.map(_.raw).getOrElse("") + buffer
+        held = None
+        buffer.setLength(0)
+        output + raw
+      } else {
+        output
+      }
+    }
+  }
+
+  /**
+   * Appends a piece of markup and compresses the buffered markup up to the last cut position.
+   *
+   * @param markup The markup to append.
+   * @return The compressed markup up to a cut position before the last one, might be empty.
+   */
+  private def cut(markup: String): String = {
+    buffer.append(markup)
+    if (whole) {
+      ""
+    } else {
+      scanner.scan(buffer)
+      val cut = scanner.cut
+      if (cut <= 0) {
+        ""
+      } else {
+        val segment = buffer.substring(0, cut)
+        val tag = buffer.substring(scanner.cutTagStart, cut)
+        buffer.delete(0, cut)
+        scanner.shift(cut)
+        next(segment, Some(tag))
+      }
+    }
+  }
+
+  /**
+   * Compresses all markup which is still buffered or held back.
+   *
+   * @return The compressed markup.
+   */
+  override def finish(): String = {
+    val segment = buffer.toString
+    buffer.setLength(0)
+    if (passThrough) ""
+    else if (whole) compressRemainder(compress, context, segment)
+    else if (segment.isEmpty) held.map(_.output).getOrElse("")
+    else next(segment, None)
+  }
+
+  /**
+   * Compresses the next segment in the context of the tag at the end of the held segment, and returns
+   * the held segment if the compressor leaves this tag as it is.
+   *
+   * @param segment The segment to compress.
+   * @param tag The tag at the end of the segment, or None if it's the last segment.
+   * @return The compressed markup which can be returned, might be empty.
+   */
+  private def next(segment: String, tag: Option[String]): String = {
+    val previous = held
+    val confirmed = previous.forall(h => h.output.endsWith(h.compressedTag))
+    compressSegment(compress, previous.map(h => h.tag -> h.compressedTag).orElse(context), segment) match {
+      case Some(output) if confirmed =>
+        previous.foreach(h => context = Some(h.tag -> h.compressedTag))
+        held = tag.map(t => Held(segment, output, t, compress(t)))
+        previous.map(_.output).getOrElse("") + (if (tag.isEmpty) output else "")
+      case _ =>
+        val remainder = previous.map(_.raw).getOrElse("") + segment
+        held = None
+        if (tag.isEmpty) {
+          compressRemainder(compress, context, remainder)
+        } else {
+          whole = true
+          buffer.insert(0, remainder)
+          ""
+        }
+    }
+  }
+}
+
+/**
+ * The companion object.
+ */
+private[compressor] object Segmenter {
+
+  /**
+   * A compressed segment which wasn't returned yet.
+   *
+   * @param raw The segment.
+   * @param output The compressed segment.
+   * @param tag The tag at the end of the segment.
+   * @param compressedTag The compressed form of the tag.
+   */
+  case class Held(raw: String, output: String, tag: String, compressedTag: String)
+
+  /**
+   * Compresses a segment in the context of the tag before it.
+   *
+   * The compressor sees the tag again in front of the segment, so that whitespace at the start of the
+   * segment gets compressed the same way as if the document would be compressed as a whole. The
+   * compressed tag gets removed from the output afterwards.
+   *
+   * @param compress The function which compresses a piece of markup.
+   * @param context The tag before the segment and its compressed form, or None for the first segment.
+   * @param segment The segment to compress.
+   * @return The compressed segment, or None if the compressor rewrites the tag in front of the segment.
+   */
+  def compressSegment(compress: String => String, context: Option[(String, String)], segment: String): Option[String] = context match {
+    case None => Some(compress(segment))
+    case Some((tag, compressedTag)) =>
+      val compressed = compress(tag + segment)
+      if (compressed.startsWith(compressedTag)) Some(compressed.substring(compressedTag.length)) else None
+  }
+
+  /**
+   * Compresses the remainder of a document as a whole, in the context of the tag before it.
+   *
+   * The compressed form of the tag before the remainder was already returned. If the compressor
+   * rewrites the tag in front of the remainder, the remainder gets compressed without it.
+   *
+   * @param compress The function which compresses a piece of markup.
+   * @param context The tag before the remainder and its compressed form, or None for a whole document.
+   * @param remainder The remainder to compress.
+   * @return The compressed remainder.
+   */
+  def compressRemainder(compress: String => String, context: Option[(String, String)], remainder: String): String = {
+    if (remainder.isEmpty) {
+      ""
+    } else {
+      compressSegment(compress, context, remainder).getOrElse {
+        val alone = compress(remainder)
+        if (alone.nonEmpty && Character.isWhitespace(remainder.charAt(0))) " " + alone else alone
+      }
+    }
+  }
+}
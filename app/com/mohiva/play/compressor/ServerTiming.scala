@@ -0,0 +1,201 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.Locale
+import java.util.concurrent.ConcurrentLinkedQueue
+
+import play.api.Configuration
+import play.api.mvc.RequestHeader
+
+import scala.collection.JavaConverters._
+
+/**
+ * The time a phase of a compression took.
+ *
+ * @param name The name of the phase.
+ * @param nanos The time the phase took in nanoseconds.
+ */
+case class CompressionSpan(name: String, nanos: Long)
+
+/**
+ * Records the phases of the compression of a single result.
+ *
+ * The phases of a compression run one after another, but possibly on different threads.
+ *
+ * @param request The request whose result gets compressed.
+ */
+class CompressionTiming(val request: RequestHeader) {
+
+  /**
+   * The recorded spans.
+   */
+  private val recorded = new ConcurrentLinkedQueue[CompressionSpan]
+
+  /**
+   * Records a phase.
+   *
+   * @param name The name of the phase.
+   * @param nanos The time the phase took in nanoseconds.
+   */
+  def record(name: String, nanos: Long): Unit = recorded.add(CompressionSpan(name, nanos))
+
+  /**
+   * Runs a phase and records the time it took.
+   *
+   * @param name The name of the phase.
+   * @param phase The phase to run.
+   * @tparam T The type of the result of the phase.
+   * @return The result of the phase.
+   */
+  def time[T](name: String)(phase: => T): T = {
+    val start = System.nanoTime
+    try phase finally record(name, System.nanoTime - start)
+  }
+
+  /**
+   * Gets the recorded spans in the order in which they were recorded.
+   *
+   * @return The recorded spans.
+   */
+  def spans: Seq[CompressionSpan] = recorded.asScala.toList
+
+  /**
+   * Formats the recorded spans as the value of a `Server-Timing` header, with the durations in
+   * milliseconds.
+   *
+   * The header is sent to the client, so it doesn't tell the cache lookup apart from the compression.
+   * The spans of the cache lookup, the decoding and the encoding count as part of the compression,
+   * so a result from the cache has the same phases as a freshly compressed one.
+   *
+   * @return The header value, like `compressor-buffer;dur=0.120, compressor-compress;dur=2.310`.
+   */
+  def headerValue: String = {
+    val phases = spans.map {
+      case CompressionSpan(CompressionTiming.Cache | CompressionTiming.Decode | CompressionTiming.Encode, nanos) =>
+        CompressionSpan(CompressionTiming.Compress, nanos)
+      case span => span
+    }
+    phases.map(_.name).distinct.map { name =>
+      val nanos = phases.filter(_.name == name).map(_.nanos).sum
+      String.format(Locale.ROOT, "%s%s;dur=%.3f", ServerTiming.Prefix, name, Double.box(nanos / 1e6))
+    }.mkString(", ")
+  }
+}
+
+/**
+ * The companion object.
+ */
+object CompressionTiming {
+
+  /**
+   * The phase in which a streamed body gets buffered.
+   */
+  val Buffer = "buffer"
+
+  /**
+   * The phase in which the compressed output gets looked up in the caches.
+   */
+  val Cache = "cache"
+
+  /**
+   * The phase in which the body gets decoded into markup.
+   */
+  val Decode = "decode"
+
+  /**
+   * The phase in which the markup gets compressed.
+   */
+  val Compress = "compress"
+
+  /**
+   * The phase in which the compressed markup gets encoded into bytes.
+   */
+  val Encode = "encode"
+
+  /**
+   * The phase in which the compressed body gets encoded with the transport encoding, like gzip.
+   */
+  val ContentEncoding = "content-encoding"
+}
+
+/**
+ * Decides which results get their compression phases recorded, and which get them as a `Server-Timing`
+ * header.
+ *
+ * The phases get recorded for all results if enabled or if the metrics trace them, and for the results
+ * of requests which carry the request header. The header gets added to all recorded results if enabled,
+ * otherwise only to the results of requests which carry the request header. So the phases can be
+ * traced without sending them to the clients.
+ *
+ * @param enabled Indicates if the phases of all results get recorded.
+ * @param header Indicates if all recorded results get the header.
+ * @param requestHeader The name of the request header which enables the recording and the header for a request.
+ */
+class ServerTiming(val enabled: Boolean, val header: Boolean, val requestHeader: Option[String]) {
+
+  /**
+   * Starts the recording of the phases for a request, if enabled.
+   *
+   * @param rh The request header.
+   * @param tracing Indicates if the metrics trace the phases of all results.
+   * @return The recorder, or None if the phases of the request don't get recorded.
+   */
+  def start(rh: RequestHeader, tracing: Boolean): Option[CompressionTiming] = {
+    if (enabled || header || tracing || requested(rh)) Some(new CompressionTiming(rh)) else None
+  }
+
+  /**
+   * Checks if the recorded phases should be added to the result of a request as a header.
+   *
+   * @param rh The request header.
+   * @return True if the result should get the header, false otherwise.
+   */
+  def sendsHeader(rh: RequestHeader): Boolean = header || requested(rh)
+
+  /**
+   * Checks if a request carries the request header.
+   *
+   * @param rh The request header.
+   * @return True if the request carries the request header, false otherwise.
+   */
+  private def requested(rh: RequestHeader): Boolean = requestHeader.exists(rh.headers.hasHeader)
+}
+
+/**
+ * The companion object.
+ */
+object ServerTiming {
+
+  /**
+   * The name of the response header.
+   */
+  val Header = "Server-Timing"
+
+  /**
+   * The prefix of the metric names in the header.
+   */
+  val Prefix = "compressor-"
+
+  /**
+   * Creates the settings from the `play.filters.compressor.timing` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @return The settings.
+   */
+  def fromConfiguration(configuration: Configuration): ServerTiming = {
+    new ServerTiming(
+      configuration.getOptional[Boolean]("play.filters.compressor.timing.enabled").getOrElse(false),
+      configuration.getOptional[Boolean]("play.filters.compressor.timing.header").getOrElse(false),
+      configuration.getOptional[String]("play.filters.compressor.timing.requestHeader").filter(_.nonEmpty)
+    )
+  }
+}
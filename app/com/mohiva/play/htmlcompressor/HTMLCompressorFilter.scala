@@ -10,32 +10,107 @@
  */
 package com.mohiva.play.htmlcompressor
 
-import javax.inject.Inject
+import javax.inject.{ Inject, Singleton }
 
 import akka.stream.Materializer
-import com.googlecode.htmlcompressor.compressor.HtmlCompressor
-import com.mohiva.play.compressor.CompressorFilter
+import com.googlecode.htmlcompressor.compressor.{ Compressor, HtmlCompressor, YuiCssCompressor, YuiJavaScriptCompressor }
+import com.mohiva.play.compressor._
 import play.api.http.MimeTypes
-import play.api.inject.Module
+import play.api.inject.{ ApplicationLifecycle, DefaultApplicationLifecycle, Module }
 import play.api.mvc._
-import play.api.{ Configuration, Environment, Mode }
+import play.api.{ Configuration, Environment }
 
 /**
- * Uses Google's HTML Processor to compress the HTML code of a response.
+ * Uses Google's HTML Processor, or the minifier of another engine, to compress the HTML code of a response.
  */
-abstract class HTMLCompressorFilter extends CompressorFilter[HtmlCompressor] {
+abstract class HTMLCompressorFilter extends CompressorFilter[Compressor] {
 
   /**
-   * Check if the given result is a HTML result.
+   * The cache for the compressed inline script and style blocks, if enabled.
+   */
+  lazy val inlineCache = CompressionCache.fromConfiguration(configuration, "play.filters.compressor.html.inlineCache")
+
+  /**
+   * Creates the provider which hands out the compressors, whose inline script and style compressors
+   * consult the inline cache, if enabled and if they are `HtmlCompressor` instances.
+   *
+   * @param template The compressor which gets shared if the settings aren't known.
+   * @param settings The settings from which the template was created, if known.
+   * @return The provider.
+   */
+  override protected def provider(template: Compressor, settings: Option[CompressorSettings[Compressor]]): CompressorProvider[Compressor] = {
+    inlineCache match {
+      case Some(cache) =>
+        def cached(compressor: Compressor) = compressor match {
+          case c: HtmlCompressor => HTMLCompressorFilter.withInlineCache(c, cache, metrics)
+          case c => c
+        }
+        CompressorProvider.fromConfiguration(configuration, cached(template), settings.map(s => () => cached(s.create())))
+      case None => super.provider(template, settings)
+    }
+  }
+
+  /**
+   * Skips results which aren't HTML results.
    *
    * @param result The result to check.
-   * @return True if the result is a HTML result, false otherwise.
+   * @return The reason why the result shouldn't be compressed, or None if it should be compressed.
    */
-  override protected def isCompressible(result: Result): Boolean = {
+  override protected def skipReason(result: Result): Option[SkipReason] = {
     val contentTypeHtml = result.body.contentType.exists {
       _.contains(MimeTypes.HTML)
     }
-    super.isCompressible(result) && contentTypeHtml
+    super.skipReason(result).orElse(if (contentTypeHtml) None else Some(SkipReason.ContentType))
+  }
+}
+
+/**
+ * The companion object.
+ */
+object HTMLCompressorFilter {
+
+  /**
+   * Lets the inline script and style compressors of the given compressor look up the compressed blocks
+   * in the given cache.
+   *
+   * The same script and style blocks are often inlined into many pages, and compressing them is by
+   * far the slowest part of the HTML compression. With the cache they get compressed only once. If
+   * the compressor has no script or style compressor of its own, the YUI compressor with its YUI
+   * settings gets used, as the compressor itself would do. The compressor gets changed in place, so it
+   * must not be in use yet. Its settings and its output stay the same.
+   *
+   * @param compressor The compressor whose inline compressors should consult the cache.
+   * @param cache The cache for the compressed blocks.
+   * @param metrics The metrics which record the cache lookups and evictions.
+   * @return The given compressor.
+   */
+  def withInlineCache(compressor: HtmlCompressor, cache: CompressionCache, metrics: CompressorMetrics): HtmlCompressor = {
+    val settings = CompressorSettings.fingerprint(compressor)
+    def cached(inline: Compressor, kind: String) = inline match {
+      case c: CachingCompressor => c
+      case c => new CachingCompressor(c, cache, kind + ";" + c.getClass.getName + ";" + settings, metrics)
+    }
+    if (compressor.isCompressJavaScript) {
+      val js = Option(compressor.getJavaScriptCompressor).getOrElse {
+        val c = new YuiJavaScriptCompressor()
+        c.setNoMunge(compressor.isYuiJsNoMunge)
+        c.setPreserveAllSemiColons(compressor.isYuiJsPreserveAllSemiColons)
+        c.setDisableOptimizations(compressor.isYuiJsDisableOptimizations)
+        c.setLineBreak(compressor.getYuiJsLineBreak)
+        Option(compressor.getYuiErrorReporter).foreach(c.setErrorReporter)
+        c
+      }
+      compressor.setJavaScriptCompressor(cached(js, "script"))
+    }
+    if (compressor.isCompressCss) {
+      val css = Option(compressor.getCssCompressor).getOrElse {
+        val c = new YuiCssCompressor()
+        c.setLineBreak(compressor.getYuiCssLineBreak)
+        c
+      }
+      compressor.setCssCompressor(cached(css, "style"))
+    }
+    compressor
   }
 }
 
@@ -44,41 +119,171 @@ abstract class HTMLCompressorFilter extends CompressorFilter[HtmlCompressor] {
  *
  * @param configuration The Play configuration.
  * @param environment   The Play environment.
+ * @param mat           The materializer.
+ * @param metrics       The metrics which record the compressions.
+ * @param lifecycle     The lifecycle of the application, which releases the disk cache.
  */
-class DefaultHTMLCompressorFilter @Inject() (val configuration: Configuration, environment: Environment, val mat: Materializer)
+@Singleton
+class DefaultHTMLCompressorFilter @Inject() (
+  val configuration: Configuration,
+  environment: Environment,
+  val mat: Materializer,
+  override val metrics: CompressorMetrics,
+  lifecycle: ApplicationLifecycle)
   extends HTMLCompressorFilter {
 
+  /**
+   * Creates the filter outside of an application, whose disk cache gets never released.
+   *
+   * @param configuration The Play configuration.
+   * @param environment   The Play environment.
+   * @param mat           The materializer.
+   * @param metrics       The metrics which record the compressions.
+   */
+  def this(configuration: Configuration, environment: Environment, mat: Materializer, metrics: CompressorMetrics) =
+    this(configuration, environment, mat, metrics, new DefaultApplicationLifecycle)
+
+  /**
+   * Creates the filter outside of an application, with its own in-memory metrics.
+   *
+   * @param configuration The Play configuration.
+   * @param environment   The Play environment.
+   * @param mat           The materializer.
+   */
+  def this(configuration: Configuration, environment: Environment, mat: Materializer) =
+    this(configuration, environment, mat, new InMemoryCompressorMetrics)
+
+  /**
+   * The settings of the `play.filters.compressor.html` configuration.
+   */
+  private val htmlSettings = DefaultHTMLCompressorFilter.settings(configuration, environment)
+
+  /**
+   * The settings from which the compressors get created.
+   */
+  override val compressorSettings: Option[CompressorSettings[Compressor]] = Some(htmlSettings)
+
   /**
    * The compressor instance.
    */
-  override val compressor: HtmlCompressor = {
-    val c = new HtmlCompressor()
-    c.setPreserveLineBreaks(
-      configuration
-        .getOptional[Boolean]("play.filters.compressor.html.preserveLineBreaks")
-        .getOrElse(environment.mode == Mode.Dev)
-    )
-    c.setRemoveComments(
-      configuration
-        .getOptional[Boolean]("play.filters.compressor.html.removeComments")
-        .getOrElse(true)
-    )
-    c.setRemoveIntertagSpaces(
-      configuration
-        .getOptional[Boolean]("play.filters.compressor.html.removeIntertagSpaces")
-        .getOrElse(false)
-    )
-    c.setRemoveHttpProtocol(
-      configuration
-        .getOptional[Boolean]("play.filters.compressor.html.removeHttpProtocol")
-        .getOrElse(true)
-    )
-    c.setRemoveHttpsProtocol(
-      configuration
-        .getOptional[Boolean]("play.filters.compressor.html.removeHttpsProtocol")
-        .getOrElse(true)
-    )
-    c
+  override val compressor: Compressor = htmlSettings.create()
+
+  /**
+   * The settings from which the compressors of the named profiles get created.
+   */
+  override val profileSettings: Map[String, CompressorSettings[Compressor]] =
+    DefaultHTMLCompressorFilter.profileSettings(configuration, environment)
+
+  /**
+   * The compressors of the named profiles.
+   */
+  override val profileCompressors: Map[String, Compressor] = profileSettings.map {
+    case (name, settings) => name -> settings.create()
+  }
+
+  start(lifecycle)
+  warmUp(CompressorWarmup.fromConfiguration(configuration, "html", DefaultHTMLCompressorFilter.Sample, environment.classLoader), MimeTypes.HTML)
+}
+
+/**
+ * The companion object.
+ */
+object DefaultHTMLCompressorFilter {
+
+  /**
+   * The HTML document which gets compressed by the warm-up, if no documents are configured.
+   */
+  val Sample =
+    """<!DOCTYPE html>
+      |<html>
+      |  <head>
+      |    <title>  A   page  </title>
+      |    <link rel="stylesheet"  href="https://example.com/style.css" type="text/css" />
+      |    <style type="text/css">
+      |      body  {  color :  red; }
+      |    </style>
+      |  </head>
+      |  <body  class = "page" >
+      |    <div class = "item"  id="item">
+      |      <!-- An item of the listing -->
+      |      <h2>  A   title  </h2>
+      |      <p>
+      |        Some    text with <b>bold</b>   and <i>italic</i>   words.
+      |      </p>
+      |      <a href="http://example.com/item"  title="Item">  Link  </a>
+      |      <img src="https://example.com/image.png" alt="Image" />
+      |      <pre>  preformatted
+      |          text  </pre>
+      |      <textarea name="text">  some
+      |        text  </textarea>
+      |      <script type="text/javascript">
+      |        var item = { id: 1 };
+      |      </script>
+      |    </div>
+      |  </body>
+      |</html>
+      |""".stripMargin
+
+  /**
+   * Creates the compressor from the `play.filters.compressor.html` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @param environment   The Play environment.
+   * @return The compressor.
+   */
+  def compressor(configuration: Configuration, environment: Environment): Compressor = {
+    settings(configuration, environment).create()
+  }
+
+  /**
+   * Gets the settings from the `play.filters.compressor.html` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @param environment   The Play environment.
+   * @return The settings.
+   */
+  def settings(configuration: Configuration, environment: Environment): CompressorSettings[Compressor] = {
+    fromSettings(configuration.getOptional[Configuration]("play.filters.compressor.html").getOrElse(Configuration.empty), environment)
+  }
+
+  /**
+   * Creates the compressors of the profiles in the `play.filters.compressor.html.profiles` configuration.
+   *
+   * Every profile overrides some of the `play.filters.compressor.html` settings, the other settings
+   * are taken from there.
+   *
+   * @param configuration The Play configuration.
+   * @param environment   The Play environment.
+   * @return The compressors by the names of their profiles.
+   */
+  def profiles(configuration: Configuration, environment: Environment): Map[String, Compressor] = {
+    profileSettings(configuration, environment).map { case (name, settings) => name -> settings.create() }
+  }
+
+  /**
+   * Gets the settings of the profiles in the `play.filters.compressor.html.profiles` configuration.
+   *
+   * @param configuration The Play configuration.
+   * @param environment   The Play environment.
+   * @return The settings by the names of their profiles.
+   */
+  def profileSettings(configuration: Configuration, environment: Environment): Map[String, CompressorSettings[Compressor]] = {
+    val settings = configuration.getOptional[Configuration]("play.filters.compressor.html").getOrElse(Configuration.empty)
+    val profiles = settings.getOptional[Configuration]("profiles").getOrElse(Configuration.empty)
+    profiles.subKeys.map { name =>
+      name -> fromSettings(settings ++ profiles.get[Configuration](name), environment)
+    }.toMap
+  }
+
+  /**
+   * Creates the settings with the engine which the `engine` setting selects.
+   *
+   * @param settings      The settings, relative to `play.filters.compressor.html` or a profile.
+   * @param environment   The Play environment.
+   * @return The settings.
+   */
+  private def fromSettings(settings: Configuration, environment: Environment): CompressorSettings[Compressor] = {
+    new CompressorSettings(HtmlCompressorEngine.fromConfiguration(settings, environment), settings, environment)
   }
 }
 
@@ -96,7 +301,7 @@ class HTMLCompressorFilterModule extends Module {
 /**
  * Injection helper for the HTML compressor filter.
  */
-trait HTMLCompressorFilterComponents {
+trait HTMLCompressorFilterComponents extends CompressorMetricsComponents {
 
   def configuration: Configuration
 
@@ -104,5 +309,8 @@ trait HTMLCompressorFilterComponents {
 
   def mat: Materializer
 
-  lazy val htmlCompressorFilter: HTMLCompressorFilter = new DefaultHTMLCompressorFilter(configuration, environment, mat)
+  def applicationLifecycle: ApplicationLifecycle
+
+  lazy val htmlCompressorFilter: HTMLCompressorFilter =
+    new DefaultHTMLCompressorFilter(configuration, environment, mat, compressorMetrics, applicationLifecycle)
 }
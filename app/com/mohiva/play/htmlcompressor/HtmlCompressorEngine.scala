@@ -0,0 +1,123 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.htmlcompressor
+
+import com.googlecode.htmlcompressor.compressor.{ Compressor, HtmlCompressor }
+import com.mohiva.play.compressor.CompressorEngine
+import play.api.{ Configuration, Environment, Mode }
+
+/**
+ * An engine which creates an `HtmlCompressor` and applies the HTML settings to it.
+ *
+ * Engines which plug in another `HtmlCompressor` subclass only need to create it. Engines which plug in
+ * an independent minifier implement [[com.mohiva.play.compressor.CompressorEngine]] for `Compressor`
+ * instead, and read the HTML settings themselves.
+ */
+abstract class HtmlCompressorEngine extends CompressorEngine[Compressor] {
+
+  /**
+   * Creates the compressor, which gets the settings applied.
+   *
+   * @return The compressor.
+   */
+  protected def newCompressor(): HtmlCompressor
+
+  /**
+   * Creates a compressor.
+   *
+   * @param settings The settings, relative to `play.filters.compressor.html` or a profile.
+   * @param environment The Play environment.
+   * @return The compressor.
+   */
+  override def create(settings: Configuration, environment: Environment): HtmlCompressor = {
+    val c = newCompressor()
+    c.setPreserveLineBreaks(
+      settings
+        .getOptional[Boolean]("preserveLineBreaks")
+        .getOrElse(environment.mode == Mode.Dev)
+    )
+    c.setRemoveComments(
+      settings
+        .getOptional[Boolean]("removeComments")
+        .getOrElse(true)
+    )
+    c.setRemoveIntertagSpaces(
+      settings
+        .getOptional[Boolean]("removeIntertagSpaces")
+        .getOrElse(false)
+    )
+    c.setRemoveHttpProtocol(
+      settings
+        .getOptional[Boolean]("removeHttpProtocol")
+        .getOrElse(true)
+    )
+    c.setRemoveHttpsProtocol(
+      settings
+        .getOptional[Boolean]("removeHttpsProtocol")
+        .getOrElse(true)
+    )
+    c.setCompressJavaScript(
+      settings
+        .getOptional[Boolean]("compressJavaScript")
+        .getOrElse(false)
+    )
+    c.setCompressCss(
+      settings
+        .getOptional[Boolean]("compressCss")
+        .getOrElse(false)
+    )
+    c
+  }
+}
+
+/**
+ * The engine which creates the regex based `HtmlCompressor` of the HTML Compressor library.
+ */
+class RegexHtmlCompressorEngine extends HtmlCompressorEngine {
+  override protected def newCompressor(): HtmlCompressor = new HtmlCompressor()
+}
+
+/**
+ * The engine which creates the [[SinglePassHtmlCompressor]].
+ */
+class SinglePassHtmlCompressorEngine extends HtmlCompressorEngine {
+  override protected def newCompressor(): HtmlCompressor = new SinglePassHtmlCompressor()
+}
+
+/**
+ * The companion object.
+ */
+object HtmlCompressorEngine {
+
+  /**
+   * The name of the engine which gets used if no engine is set.
+   */
+  val Default = "regex"
+
+  /**
+   * The built-in engines by their names.
+   */
+  val Engines: Map[String, CompressorEngine[Compressor]] = Map(
+    "regex" -> new RegexHtmlCompressorEngine,
+    "single-pass" -> new SinglePassHtmlCompressorEngine
+  )
+
+  /**
+   * Gets the engine which the `engine` setting selects.
+   *
+   * @param settings The settings, relative to `play.filters.compressor.html` or a profile.
+   * @param environment The Play environment.
+   * @return The engine.
+   */
+  def fromConfiguration(settings: Configuration, environment: Environment): CompressorEngine[Compressor] = {
+    CompressorEngine.fromConfiguration(settings, environment, Engines, Default)
+  }
+}
@@ -0,0 +1,412 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.htmlcompressor
+
+import java.util.concurrent.{ ConcurrentHashMap, ConcurrentMap }
+import java.util.regex.Pattern
+import javax.inject.{ Inject, Singleton }
+
+import com.google.common.collect.MapMaker
+import com.googlecode.htmlcompressor.compressor.Compressor
+import com.mohiva.play.compressor.{ CompressorFilter, CompressorProvider }
+import com.typesafe.config.ConfigFactory
+import play.api.inject.Module
+import play.api.{ Configuration, Environment, Mode }
+import play.twirl.api.{ Format, Html, HtmlFormat }
+
+import scala.collection.immutable
+
+/**
+ * A Twirl format which minifies the static markup of the templates.
+ *
+ * The static markup of a template body doesn't change between renderings, only the interpolated values
+ * do. So the first time a template body gets rendered, its static markup gets compressed as a whole,
+ * with a placeholder for every interpolated value, and the compressed pieces between the placeholders
+ * get cached. Every following rendering only joins the cached pieces with the values.
+ *
+ * Values which are interpolated into a preserved block, like `pre` or `textarea`, are rendered without
+ * minification. If the compressor removes or reorders a placeholder, for example because it is inside
+ * a comment, the template body isn't minified at all.
+ *
+ * Twirl passes only values of the exact `Html` class through, so the format renders plain `Html`
+ * instances. It recognizes the static markup by the instances which its `raw` method returns for the
+ * literals of the templates, and remembers the template bodies it has rendered, until they get
+ * garbage collected.
+ *
+ * A minified template body ends with the [[com.mohiva.play.compressor.CompressorFilter.PrecompressedMarker]],
+ * which gets removed if the body is interpolated into another template body. The filter passes results
+ * which end with it through, and removes it.
+ *
+ * To compile the HTML templates with this format, add the following to your `build.sbt`:
+ *
+ * {{{
+ * TwirlKeys.templateFormats += ("html" -> "com.mohiva.play.htmlcompressor.MinifiedHtmlFormat")
+ * }}}
+ *
+ * @param provider The provider of the compressors, until the format gets configured.
+ */
+class MinifiedHtmlFormat(provider: => CompressorProvider[Compressor]) extends Format[Html] {
+  import MinifiedHtmlFormat._
+
+  /**
+   * The provider of the compressors, until the format gets configured.
+   */
+  private lazy val initial = provider
+
+  /**
+   * The provider of the compressors the format was configured with.
+   */
+  @volatile private var configured: Option[CompressorProvider[Compressor]] = None
+
+  /**
+   * The compressed static markup of the template bodies, keyed by their static markup.
+   */
+  private val templates = new ConcurrentHashMap[immutable.Seq[String], Option[MinifiedTemplate]]
+
+  /**
+   * The instances which were returned for the static markup, keyed by the markup.
+   */
+  private val statics = new ConcurrentHashMap[String, Html]
+
+  /**
+   * The static markup, keyed by the instances which were returned for it.
+   */
+  private val staticMarkup = new ConcurrentHashMap[Identity, String]
+
+  /**
+   * The rendered template bodies, which are compared by their identity and held weakly.
+   */
+  private val rendered: ConcurrentMap[Html, Rendered] = new MapMaker().weakKeys().makeMap[Html, Rendered]()
+
+  override def raw(text: String): Html = statics.get(text) match {
+    case null if statics.size >= MaxStatics => new Html(text)
+    case null =>
+      val html = new Html(text)
+      staticMarkup.put(new Identity(html), text)
+      statics.putIfAbsent(text, html) match {
+        case null => html
+        case existing =>
+          staticMarkup.remove(new Identity(html))
+          existing
+      }
+    case html => html
+  }
+
+  override def escape(text: String): Html = HtmlFormat.escape(text)
+
+  override def empty: Html = HtmlFormat.empty
+
+  override def fill(elements: immutable.Seq[Html]): Html = {
+    val values = elements.map(unmarked)
+    val key = values.map(e => staticMarkup.get(new Identity(e)))
+    if (key.forall(_ == null)) {
+      // Like the bodies of loops, whose elements are minified if they were marked
+      val html = new Html(values)
+      remember(html, None, elements, elements.exists(e => rendered.get(e) match {
+        case null => false
+        case r => r.marked
+      }))
+    } else {
+      val template = templates.get(key) match {
+        case null =>
+          val t = minify(key)
+          templates.putIfAbsent(key, t) match {
+            case null => t
+            case existing => existing
+          }
+        case t => t
+      }
+
+      val interpolated = key.zip(elements).collect { case (null, e) => e }
+      template match {
+        case Some(t) => remember(t.render(interpolated, unmarked, original), Some(t), interpolated, marked = true)
+        case None => remember(new Html(elements.map(original)), None, elements, marked = false)
+      }
+    }
+  }
+
+  /**
+   * Configures the format with the `play.filters.compressor.html` settings of the application.
+   *
+   * The static markup which was already compressed with other settings gets compressed again.
+   *
+   * @param configuration The Play configuration.
+   * @param environment The Play environment.
+   */
+  def configure(configuration: Configuration, environment: Environment): Unit = {
+    configure(DefaultMinifiedHtmlFormat.provider(configuration, environment))
+  }
+
+  /**
+   * Configures the format with the given provider of the compressors.
+   *
+   * The static markup which was already compressed with other compressors gets compressed again.
+   *
+   * @param provider The provider of the compressors.
+   */
+  def configure(provider: CompressorProvider[Compressor]): Unit = {
+    configured = Some(provider)
+    templates.clear()
+  }
+
+  /**
+   * Gets the number of cached template bodies.
+   *
+   * @return The number of cached template bodies.
+   */
+  def size: Int = templates.size
+
+  /**
+   * Gets the markup of an element without minification.
+   *
+   * @param html The element.
+   * @return The element without minification.
+   */
+  def original(html: Html): Html = rendered.get(html) match {
+    case null => html
+    case Rendered(_, Some(template), values, _) => template.original(values, original)
+    case Rendered(_, None, values, _) => new Html(values.map(original))
+  }
+
+  /**
+   * Removes the marker from an element, if it's a rendered template body.
+   *
+   * @param html The element.
+   * @return The element without the marker.
+   */
+  private def unmarked(html: Html): Html = rendered.get(html) match {
+    case null => html
+    case r => r.unmarked
+  }
+
+  /**
+   * Remembers a rendered template body, and marks it if it's minified.
+   *
+   * @param html The rendered template body.
+   * @param template The template, or None if the body wasn't rendered from a minified template.
+   * @param values The interpolated elements, or all elements if the body wasn't rendered from a template.
+   * @param marked True if the body is minified, false otherwise.
+   * @return The rendered template body, which ends with the marker if it's minified.
+   */
+  private def remember(html: Html, template: Option[MinifiedTemplate], values: immutable.Seq[Html], marked: Boolean): Html = {
+    val result = if (marked) new Html(Vector(html, Marker)) else html
+    rendered.put(result, Rendered(html, template, values, marked))
+    result
+  }
+
+  /**
+   * Compresses the static markup of a template body.
+   *
+   * @param key The static markup of the template body, with a null for every interpolated value.
+   * @return The minified template body, or None if it can't be minified.
+   */
+  private def minify(key: immutable.Seq[String]): Option[MinifiedTemplate] = {
+    val skeleton = new StringBuilder
+    var values = 0
+    key.foreach {
+      case null =>
+        skeleton.append(placeholder(values))
+        values += 1
+      case text => skeleton.append(text)
+    }
+
+    val markup = skeleton.toString
+    val compressed = configured.getOrElse(initial).compress(markup)
+    val pieces = Placeholder.split(compressed, -1)
+    val indices = {
+      val m = Placeholder.matcher(compressed)
+      Iterator.continually(m).takeWhile(_.find).map(_.group(1).toInt).toList
+    }
+
+    if (indices != (0 until values).toList) {
+      None
+    } else {
+      val leading = if (markup.nonEmpty && markup.head <= ' ' && compressed.headOption.exists(_ > ' ')) " " else ""
+      val trailing = if (markup.nonEmpty && markup.last <= ' ' && compressed.lastOption.exists(_ > ' ')) " " else ""
+      pieces(0) = leading + pieces(0)
+      pieces(pieces.length - 1) = pieces(pieces.length - 1) + trailing
+      Some(new MinifiedTemplate(key, pieces.toVector.map(p => new Html(p)), preserved(markup, values)))
+    }
+  }
+
+  /**
+   * Detects the interpolated values which are inside a preserved block.
+   *
+   * @param markup The static markup with the placeholders.
+   * @param values The number of interpolated values.
+   * @return For every value, true if it's inside a preserved block, false otherwise.
+   */
+  private def preserved(markup: String, values: Int): Vector[Boolean] = {
+    val inside = Array.fill(values)(false)
+    val blocks = PreservedBlock.matcher(markup)
+    while (blocks.find) {
+      val placeholders = Placeholder.matcher(blocks.group)
+      while (placeholders.find) inside(placeholders.group(1).toInt) = true
+    }
+    inside.toVector
+  }
+}
+
+/**
+ * The default format, which compresses with the `play.filters.compressor.html` settings of the
+ * application, once the [[MinifiedHtmlFormatModule]] has configured it. Until then, it reads the
+ * settings from the `application.conf` on the classpath.
+ */
+object MinifiedHtmlFormat extends MinifiedHtmlFormat(
+  DefaultMinifiedHtmlFormat.provider(Configuration(ConfigFactory.load()), Environment.simple(mode = Mode.Prod))) {
+
+  /**
+   * The maximum number of literals whose instances get recognized as static markup.
+   */
+  private val MaxStatics = 100000
+
+  /**
+   * The pattern of the placeholders for the interpolated values.
+   */
+  private val Placeholder = Pattern.compile("\u0001(\\d+)\u0001")
+
+  /**
+   * The pattern of the blocks whose content the compressor preserves.
+   */
+  private val PreservedBlock = Pattern.compile(
+    "<(pre|textarea|script|style)\\b.*?</\\1\\s*>|<!--.*?-->",
+    Pattern.CASE_INSENSITIVE | Pattern.DOTALL
+  )
+
+  /**
+   * The last element of a minified template body.
+   */
+  private val Marker = new Html(CompressorFilter.PrecompressedMarker)
+
+  /**
+   * Creates the placeholder for an interpolated value.
+   *
+   * @param index The index of the value.
+   * @return The placeholder.
+   */
+  private def placeholder(index: Int): String = "\u0001" + index + "\u0001"
+
+  /**
+   * Compares an element by its identity.
+   *
+   * @param html The element.
+   */
+  private class Identity(val html: Html) {
+    override def hashCode: Int = System.identityHashCode(html)
+    override def equals(other: Any): Boolean = other match {
+      case i: Identity => i.html eq html
+      case _ => false
+    }
+  }
+
+  /**
+   * A rendered template body.
+   *
+   * @param unmarked The template body without the marker.
+   * @param template The template, or None if the body wasn't rendered from a minified template.
+   * @param values The interpolated elements, or all elements if the body wasn't rendered from a template.
+   * @param marked True if the body ends with the marker, false otherwise.
+   */
+  private case class Rendered(unmarked: Html, template: Option[MinifiedTemplate], values: immutable.Seq[Html], marked: Boolean)
+
+  /**
+   * The compressed static markup of a template body.
+   *
+   * @param key The static markup of the template body, with a null for every interpolated value.
+   * @param pieces The compressed pieces between the interpolated values.
+   * @param preserved For every value, true if it's inside a preserved block, false otherwise.
+   */
+  private class MinifiedTemplate(key: immutable.Seq[String], pieces: Vector[Html], preserved: Vector[Boolean]) {
+
+    /**
+     * Renders the template body.
+     *
+     * @param values The interpolated values.
+     * @param unmarkedOf A function which gets the markup of a value without the marker.
+     * @param originalOf A function which gets the markup of a value without minification.
+     * @return The rendered template body.
+     */
+    def render(values: immutable.Seq[Html], unmarkedOf: Html => Html, originalOf: Html => Html): Html = {
+      val builder = Vector.newBuilder[Html]
+      builder += pieces(0)
+      values.zipWithIndex.foreach {
+        case (value, i) =>
+          builder += (if (preserved(i)) originalOf(value) else unmarkedOf(value))
+          builder += pieces(i + 1)
+      }
+      new Html(builder.result())
+    }
+
+    /**
+     * Renders the template body without minification.
+     *
+     * @param values The interpolated values.
+     * @param originalOf A function which gets the markup of a value without minification.
+     * @return The template body without minification.
+     */
+    def original(values: immutable.Seq[Html], originalOf: Html => Html): Html = {
+      val it = values.iterator
+      new Html(key.map {
+        case null => originalOf(it.next())
+        case text => new Html(text)
+      })
+    }
+  }
+}
+
+/**
+ * Configures the default format with the settings of the application, when it starts.
+ *
+ * @param configuration The Play configuration.
+ * @param environment The Play environment.
+ */
+@Singleton
+class MinifiedHtmlFormatConfigurator @Inject() (configuration: Configuration, environment: Environment) {
+  MinifiedHtmlFormat.configure(configuration, environment)
+}
+
+/**
+ * Play module which configures the default format with the settings of the application.
+ */
+class MinifiedHtmlFormatModule extends Module {
+  def bindings(environment: Environment, configuration: Configuration) = {
+    Seq(
+      bind[MinifiedHtmlFormatConfigurator].toSelf.eagerly()
+    )
+  }
+}
+
+/**
+ * Provides the compressors of the default format.
+ */
+private object DefaultMinifiedHtmlFormat {
+
+  /**
+   * Creates the provider from the `play.filters.compressor.html` settings.
+   *
+   * Settings which rewrite the attributes around the placeholders of the interpolated values are
+   * rejected, because the values would end up in attributes whose quotes were removed.
+   *
+   * @param configuration The Play configuration.
+   * @param environment The Play environment.
+   * @return The provider.
+   */
+  def provider(configuration: Configuration, environment: Environment): CompressorProvider[Compressor] = {
+    if (configuration.getOptional[Boolean]("play.filters.compressor.html.removeQuotes").getOrElse(false)) {
+      throw configuration.reportError(
+        "play.filters.compressor.html.removeQuotes",
+        "The MinifiedHtmlFormat cannot remove the quotes of attributes, because interpolated values would end up unquoted"
+      )
+    }
+    val settings = DefaultHTMLCompressorFilter.settings(configuration, environment)
+    CompressorProvider.fromConfiguration(configuration, settings.create(), Some(() => settings.create()))
+  }
+}
@@ -0,0 +1,909 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.htmlcompressor
+
+import java.util.regex.Pattern
+
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * An HTML compressor which compresses a document in a single pass over its chars.
+ *
+ * The `HtmlCompressor` replaces the preserved blocks of a document with placeholders, runs a regular
+ * expression over the rest for every setting and puts the blocks back. This compressor produces the same
+ * output with a hand-written state machine, which visits every char once and only looks ahead to find the
+ * end of a comment or a preserved block. The compressed markup of a tag gets fixed up when its `>` is
+ * written, so that no pass over the whole document is needed.
+ *
+ * It supports the `removeComments`, `removeIntertagSpaces`, `preserveLineBreaks`, `removeHttpProtocol`
+ * and `removeHttpsProtocol` settings. If another setting differs from its default, or if a document
+ * contains constructs whose output depends on the order of the regex passes, like conditional comments,
+ * skip blocks or a script block inside a comment, the document gets compressed by the `HtmlCompressor`.
+ */
+class SinglePassHtmlCompressor extends HtmlCompressor {
+
+  override def compress(html: String): String = {
+    if (!isEnabled || html == null || html.isEmpty) {
+      html
+    } else if (!isSinglePass || !SinglePassHtmlMinifier.isSupported(html)) {
+      super.compress(html)
+    } else {
+      new SinglePassHtmlMinifier(
+        html,
+        isRemoveComments,
+        isRemoveIntertagSpaces,
+        isPreserveLineBreaks,
+        isRemoveHttpProtocol,
+        isRemoveHttpsProtocol
+      ).minify().getOrElse(super.compress(html))
+    }
+  }
+
+  /**
+   * Indicates if the settings of the compressor can be handled in a single pass.
+   *
+   * @return True if only the supported settings differ from their defaults, false otherwise.
+   */
+  def isSinglePass: Boolean = {
+    isRemoveMultiSpaces &&
+      !isCompressJavaScript &&
+      !isCompressCss &&
+      !isRemoveQuotes &&
+      !isSimpleDoctype &&
+      !isRemoveScriptAttributes &&
+      !isRemoveStyleAttributes &&
+      !isRemoveLinkAttributes &&
+      !isRemoveFormAttributes &&
+      !isRemoveInputAttributes &&
+      !isSimpleBooleanAttributes &&
+      !isRemoveJavaScriptProtocol &&
+      !isGenerateStatistics &&
+      getRemoveSurroundingSpaces == null &&
+      (getPreservePatterns == null || getPreservePatterns.isEmpty)
+  }
+}
+
+/**
+ * Compresses a single HTML document with the rules of the `HtmlCompressor`.
+ *
+ * The scanner splits the document into the markup which gets compressed, the inline event handlers,
+ * the content of the `pre`, `script`, `style` and `textarea` blocks, which are preserved like the
+ * `HtmlCompressor` preserves them, and the removed comments. The writer collapses the whitespace of the
+ * markup and fixes up every tag when its `>` gets written. The preserved parts and the preserved line
+ * breaks are atoms for the writer, like the placeholders of the `HtmlCompressor` are for its regular
+ * expressions.
+ *
+ * @param html The document to compress.
+ * @param removeComments True if comments should be removed, false otherwise.
+ * @param removeIntertagSpaces True if the spaces between tags should be removed, false otherwise.
+ * @param preserveLineBreaks True if line breaks should be preserved, false otherwise.
+ * @param removeHttpProtocol True if the `http:` protocol should be removed from URL attributes, false otherwise.
+ * @param removeHttpsProtocol True if the `https:` protocol should be removed from URL attributes, false otherwise.
+ */
+private[htmlcompressor] class SinglePassHtmlMinifier(
+  html: String,
+  removeComments: Boolean,
+  removeIntertagSpaces: Boolean,
+  preserveLineBreaks: Boolean,
+  removeHttpProtocol: Boolean,
+  removeHttpsProtocol: Boolean) {
+  import SinglePassHtmlMinifier._
+
+  /**
+   * The length of the document.
+   */
+  private val length = html.length
+
+  /**
+   * The compressed document.
+   */
+  private val out = new java.lang.StringBuilder(length)
+
+  /**
+   * Indicates if the document contains a construct which can't be compressed in a single pass.
+   */
+  private var unsupported = false
+
+  /**
+   * Indicates if comments are still removed. Once a comment isn't closed, no later one can be.
+   */
+  private var comments = removeComments
+
+  /**
+   * Indicates for every kind of preserved block if it can still be found. Once a block isn't closed,
+   * no later one of the same kind can be.
+   */
+  private val blocks = Array.fill(BlockTags.length)(true)
+
+  /**
+   * The start and the end of the next event handler value, -1 if there is none.
+   */
+  private var eventStart = -1
+  private var eventEnd = -1
+
+  /**
+   * The start and the end of the content of the next preserved block, -1 if there is none.
+   */
+  private var blockStart = -1
+  private var blockEnd = -1
+
+  /**
+   * The start of the value of the event handler, which was found last.
+   */
+  private var eventValueStart = -1
+
+  /**
+   * Indicates if the first char which survives the trimming of the document was written.
+   */
+  private var started = false
+
+  /**
+   * Indicates if the first char which survives the trimming of the document directly follows whitespace.
+   */
+  private var leadingSpace = false
+
+  /**
+   * Indicates if whitespace was read, which wasn't written yet.
+   */
+  private var pendingSpace = false
+
+  /**
+   * Indicates if the last written item is a `>` or an atom.
+   */
+  private var afterTagOrAtom = false
+
+  /**
+   * The position of the `<` which opens the current tag in the output, -1 if no tag is open.
+   */
+  private var tagStart = -1
+
+  /**
+   * The position in the output after the last written `<` or `>`.
+   */
+  private var segmentStart = 0
+
+  /**
+   * The start and end positions of the atoms in the output, which were written after the last `>`.
+   */
+  private val atoms = ArrayBuffer.empty[Int]
+
+  /**
+   * The position in the output before which the end of the document can't be trimmed anymore.
+   */
+  private var protectedEnd = 0
+
+  /**
+   * Compresses the document.
+   *
+   * @return The compressed document, or None if the document can't be compressed in a single pass.
+   */
+  def minify(): Option[String] = {
+    var pos = 0
+    while (pos < length && !unsupported) {
+      if (pos == eventStart) {
+        atom(html.substring(eventStart, eventEnd))
+        pos = eventEnd
+        eventStart = -1
+      } else if (pos == blockStart) {
+        atom(html.substring(blockStart, blockEnd))
+        pos = blockEnd
+        blockStart = -1
+      } else {
+        val c = html.charAt(pos)
+        if (isSpace(c)) {
+          var end = pos + 1
+          while (end < length && isSpace(html.charAt(end))) end += 1
+          whitespace(pos, end)
+          val event = eventAt(end)
+          if (event >= 0 && !isBlank(eventValueStart, event)) {
+            eventStart = eventValueStart
+            eventEnd = event
+          }
+          pos = end
+        } else if (c == '<') {
+          pos = lessThan(pos)
+        } else {
+          char(c)
+          pos += 1
+        }
+      }
+    }
+
+    if (unsupported) None else Some(finish())
+  }
+
+  /**
+   * Handles a `<`, which can start a comment or a preserved block.
+   *
+   * @param pos The position of the `<`.
+   * @return The position from which the scanning continues.
+   */
+  private def lessThan(pos: Int): Int = {
+    val comment = if (comments && html.startsWith(CommentStart, pos)) commentEnd(pos) else -1
+    if (comment >= 0) {
+      // The HtmlCompressor preserves the blocks before it removes the comments
+      if (containsBlockTag(pos, comment, BlockTags.length)) unsupported = true
+      comment
+    } else {
+      if (comments && html.startsWith(CommentStart, pos) && !html.startsWith("[", pos + CommentStart.length)) {
+        comments = false
+      }
+      val kind = BlockTags.indexWhere(tag => startsWith(pos + 1, tag))
+      if (kind >= 0 && blocks(kind)) block(pos, kind)
+      char('<')
+      pos + 1
+    }
+  }
+
+  /**
+   * Finds the end of a comment, like `<!---->|<!--[^\[].*?-->` does.
+   *
+   * @param pos The position of the `<!--`.
+   * @return The position after the `-->`, or -1 if the comment isn't closed.
+   */
+  private def commentEnd(pos: Int): Int = {
+    val bodyStart = pos + CommentStart.length
+    if (html.startsWith(CommentEnd, bodyStart)) {
+      bodyStart + CommentEnd.length
+    } else if (bodyStart < length && html.charAt(bodyStart) != '[') {
+      var i = bodyStart
+      var end = -1
+      while (end < 0 && i < length && !unsupported) {
+        val c = html.charAt(i)
+        val event = if (isSpace(c)) eventAt(i + 1) else -1
+        if (event >= 0) {
+          i = event + 1
+        } else if (c == '-' && i > bodyStart && html.startsWith(CommentEnd, i)) {
+          end = i + CommentEnd.length
+        } else {
+          i += 1
+        }
+      }
+      end
+    } else {
+      -1
+    }
+  }
+
+  /**
+   * Checks if a `pre`, `script`, `style` or `textarea` tag with a higher priority than the given kind of
+   * block opens inside the given part of the document.
+   *
+   * The `HtmlCompressor` preserves the blocks in the order of their tags in [[SinglePassHtmlMinifier.BlockTags]],
+   * so a block which opens inside a comment or a block with a lower priority would be found before it.
+   *
+   * @param from The start of the part.
+   * @param to The end of the part.
+   * @param kind The kind of the block, whose higher priority tags should be found.
+   * @return True if such a tag opens inside the part, false otherwise.
+   */
+  private def containsBlockTag(from: Int, to: Int, kind: Int): Boolean = {
+    val tags = BlockTags.take(kind)
+    var i = if (tags.isEmpty) -1 else html.indexOf('<', from + 1)
+    var found = false
+    while (!found && i >= 0 && i < to) {
+      found = tags.exists(tag => startsWith(i + 1, tag))
+      i = html.indexOf('<', i + 1)
+    }
+    found
+  }
+
+  /**
+   * Finds the preserved block which a `pre`, `script`, `style` or `textarea` tag opens, like
+   * `(<pre[^>]*?>)(.*?)(</pre>)` does.
+   *
+   * The content of a block which isn't blank becomes the next atom. The tags of the block are compressed
+   * like all other tags.
+   *
+   * @param pos The position of the `<` which opens the block.
+   * @param kind The kind of the block.
+   */
+  private def block(pos: Int, kind: Int): Unit = {
+    val tag = BlockTags(kind)
+    val open = find(pos + 1 + tag.length, (_, c) => c == '>')
+    if (open < 0) {
+      blocks(kind) = false
+    } else if ((pos + 1 until open).exists(html.charAt(_) == '<') || kind == Script && isTemplate(pos, open + 1)) {
+      unsupported = true
+    } else {
+      val close = find(open + 1, (i, c) => c == '<' && isCloseTag(i, tag))
+      if (close < 0) {
+        blocks(kind) = false
+      } else if (containsBlockTag(open, close, kind)) {
+        unsupported = true
+      } else if (!isBlank(open + 1, close)) {
+        blockStart = open + 1
+        blockEnd = close
+      }
+    }
+  }
+
+  /**
+   * Finds the first char which matches the given predicate and doesn't belong to an event handler.
+   *
+   * @param from The position from which the char should be found.
+   * @param p The predicate, which gets the position and the char.
+   * @return The position of the char, or -1 if no char matches.
+   */
+  private def find(from: Int, p: (Int, Char) => Boolean): Int = {
+    var i = from
+    var found = -1
+    while (found < 0 && i < length && !unsupported) {
+      val c = html.charAt(i)
+      val event = if (isSpace(c)) eventAt(i + 1) else -1
+      if (event >= 0) {
+        i = event + 1
+      } else if (p(i, c)) {
+        found = i
+      } else {
+        i += 1
+      }
+    }
+    found
+  }
+
+  /**
+   * Checks if the document contains the given lower case text at the given position, ignoring the case
+   * of ASCII letters like the regular expressions of the `HtmlCompressor` do.
+   *
+   * @param pos The position to check.
+   * @param text The text to look for.
+   * @return True if the document contains the text at the given position, false otherwise.
+   */
+  private def startsWith(pos: Int, text: String): Boolean = {
+    pos + text.length <= length && {
+      var i = 0
+      while (i < text.length && toLower(html.charAt(pos + i)) == text.charAt(i)) i += 1
+      i == text.length
+    }
+  }
+
+  /**
+   * Checks if a closing tag like `</pre>` starts at the given position, ignoring the case.
+   *
+   * @param pos The position to check.
+   * @param tag The name of the tag.
+   * @return True if the closing tag starts at the given position, false otherwise.
+   */
+  private def isCloseTag(pos: Int, tag: String): Boolean = {
+    html.startsWith("</", pos) && startsWith(pos + 2, tag) && html.startsWith(">", pos + 2 + tag.length)
+  }
+
+  /**
+   * Checks if a script tag declares a jQuery template, whose content the `HtmlCompressor` compresses.
+   *
+   * @param from The start of the tag.
+   * @param to The end of the tag.
+   * @return True if the tag declares a jQuery template, false otherwise.
+   */
+  private def isTemplate(from: Int, to: Int): Boolean = {
+    JQueryTemplate.matcher(html.substring(from, to)).matches()
+  }
+
+  /**
+   * Matches an inline event handler, like `\son[a-z]+\s*=\s*"([^"\\\r\n]*(?:\\.[^"\\\r\n]*)*)"` does,
+   * after the whitespace in front of it.
+   *
+   * A handler in single quotes, whose value contains a double quote, can't be handled in a single pass,
+   * because the `HtmlCompressor` looks for the handlers in double quotes first.
+   *
+   * @param pos The position after the whitespace.
+   * @return The position of the closing quote, or -1 if no handler starts at the given position.
+   */
+  private def eventAt(pos: Int): Int = {
+    if (pos + 2 < length &&
+      (html.charAt(pos) | 0x20) == 'o' &&
+      (html.charAt(pos + 1) | 0x20) == 'n' &&
+      isLetter(html.charAt(pos + 2))) {
+      var i = pos + 3
+      while (i < length && isLetter(html.charAt(i))) i += 1
+      while (i < length && isSpace(html.charAt(i))) i += 1
+      if (i < length && html.charAt(i) == '=') {
+        i += 1
+        while (i < length && isSpace(html.charAt(i))) i += 1
+        if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+          val quote = html.charAt(i)
+          val end = quotedEnd(i + 1, quote)
+          if (end >= 0) {
+            eventValueStart = i + 1
+            if (quote == '\'' && (i + 1 until end).exists(html.charAt(_) == '"')) unsupported = true
+          }
+          end
+        } else {
+          -1
+        }
+      } else {
+        -1
+      }
+    } else {
+      -1
+    }
+  }
+
+  /**
+   * Finds the closing quote of an event handler value, which may contain escaped chars but no line breaks.
+   *
+   * @param from The position after the opening quote.
+   * @param quote The quote char.
+   * @return The position of the closing quote, or -1 if the value isn't closed.
+   */
+  private def quotedEnd(from: Int, quote: Char): Int = {
+    var i = from
+    var end = -1
+    var failed = false
+    while (end < 0 && !failed && i < length) {
+      val c = html.charAt(i)
+      if (c == quote) {
+        end = i
+      } else if (c == '\r' || c == '\n') {
+        failed = true
+      } else if (c == '\\') {
+        if (i + 1 < length && !isLineTerminator(html.charAt(i + 1))) i += 2 else failed = true
+      } else {
+        i += 1
+      }
+    }
+    end
+  }
+
+  /**
+   * Handles a run of whitespace.
+   *
+   * If line breaks are preserved, every line break with the blanks around it becomes an atom, like
+   * `(?:\p{Blank}*(\r?\n)\p{Blank}*)+` does. The other whitespace gets collapsed.
+   *
+   * @param from The start of the run.
+   * @param to The end of the run.
+   */
+  private def whitespace(from: Int, to: Int): Unit = {
+    if (!preserveLineBreaks) {
+      pendingSpace = true
+    } else {
+      var i = from
+      while (i < to) {
+        val start = lineBreakStart(i, to)
+        if (start < 0) {
+          pendingSpace = true
+          i = to
+        } else {
+          if (start > i) pendingSpace = true
+          var j = start
+          var lineBreak = ""
+          var matched = true
+          while (matched) {
+            var k = j
+            while (k < to && isBlankChar(html.charAt(k))) k += 1
+            if (k < to && html.charAt(k) == '\n') {
+              lineBreak = "\n"
+              j = k + 1
+            } else if (k + 1 < to && html.charAt(k) == '\r' && html.charAt(k + 1) == '\n') {
+              lineBreak = "\r\n"
+              j = k + 2
+            } else {
+              matched = false
+              j = k
+            }
+          }
+          atom(lineBreak)
+          i = j
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the first position in a run of whitespace, at which a preserved line break starts.
+   *
+   * @param from The position from which the line break should be found.
+   * @param to The end of the run.
+   * @return The start of the line break, or -1 if the run contains no more line break.
+   */
+  private def lineBreakStart(from: Int, to: Int): Int = {
+    var i = from
+    var start = -1
+    while (start < 0 && i < to) {
+      var k = i
+      while (k < to && isBlankChar(html.charAt(k))) k += 1
+      if (k < to && (html.charAt(k) == '\n' || k + 1 < to && html.charAt(k) == '\r' && html.charAt(k + 1) == '\n')) {
+        start = i
+      } else {
+        i = k + 1
+      }
+    }
+    start
+  }
+
+  /**
+   * Checks if a part of the document is blank, like `String.trim` considers it.
+   *
+   * @param from The start of the part.
+   * @param to The end of the part.
+   * @return True if the part is blank, false otherwise.
+   */
+  private def isBlank(from: Int, to: Int): Boolean = {
+    var i = from
+    while (i < to && html.charAt(i) <= ' ') i += 1
+    i == to
+  }
+
+  /**
+   * Writes the pending whitespace as a single space, unless it gets trimmed or it's between two tags
+   * and the spaces between tags should be removed.
+   *
+   * @param beforeTagOrAtom True if the whitespace is followed by a `<` or an atom, false otherwise.
+   */
+  private def flushSpace(beforeTagOrAtom: Boolean): Unit = {
+    if (pendingSpace) {
+      pendingSpace = false
+      if (!(removeIntertagSpaces && afterTagOrAtom && beforeTagOrAtom)) out.append(' ')
+    }
+  }
+
+  /**
+   * Writes a char of the compressed markup.
+   *
+   * @param c The char to write.
+   */
+  private def char(c: Char): Unit = {
+    if (!started) {
+      leadingSpace = pendingSpace
+      pendingSpace = false
+      started = c > ' '
+    }
+    if (started) {
+      flushSpace(c == '<')
+      if (c == '<') {
+        if (tagStart < 0) tagStart = out.length
+        segmentStart = out.length + 1
+      }
+      out.append(c)
+      if (c == '>') closeTag()
+      afterTagOrAtom = c == '>'
+    }
+  }
+
+  /**
+   * Writes an atom, which gets neither collapsed nor trimmed.
+   *
+   * @param content The content of the atom.
+   */
+  private def atom(content: String): Unit = {
+    if (!started) {
+      pendingSpace = false
+      started = true
+    }
+    flushSpace(beforeTagOrAtom = true)
+    atoms += out.length
+    out.append(content)
+    atoms += out.length
+    protectedEnd = out.length
+    afterTagOrAtom = true
+  }
+
+  /**
+   * Fixes up the markup which was written since the last `>`, after a `>` was written.
+   *
+   * The protocols get removed from the attributes of the tag, the spaces around the equal signs get
+   * removed from the text in front of the `>` and the space in front of the `>` gets removed, in the
+   * order in which the `HtmlCompressor` runs its regular expressions.
+   */
+  private def closeTag(): Unit = {
+    if (tagStart >= 0) {
+      if (removeHttpProtocol) removeProtocol("http:")
+      if (removeHttpsProtocol) removeProtocol("https:")
+    }
+    removeSpacesAroundEquals()
+    if (tagStart >= 0) removeEndSpace()
+    atoms.clear()
+    tagStart = -1
+    segmentStart = out.length
+    protectedEnd = out.length
+  }
+
+  /**
+   * Removes the protocol from the first URL attribute of the current tag, which has it, like
+   * `(<[^>]+?(?:href|src|cite|action)\s*=\s*['"])http:(//[^>]+?>)` does, unless the tag is an
+   * external link.
+   *
+   * @param protocol The protocol to remove.
+   */
+  private def removeProtocol(protocol: String): Unit = {
+    val end = out.length - 1
+    var i = tagStart + 2
+    var found = -1
+    while (found < 0 && i < end) {
+      found = protocolAt(i, end, protocol)
+      i += 1
+    }
+    if (found >= 0 && !isExternal(end)) delete(found, protocol.length)
+  }
+
+  /**
+   * Matches a URL attribute with the given protocol.
+   *
+   * @param pos The position at which the name of the attribute should start.
+   * @param end The position of the `>` which closes the tag.
+   * @param protocol The protocol.
+   * @return The position of the protocol, or -1 if no such attribute starts at the given position.
+   */
+  private def protocolAt(pos: Int, end: Int, protocol: String): Int = {
+    UrlAttributes.find(name => matches(pos, end, name)) match {
+      case Some(name) =>
+        var i = skipSpaces(pos + name.length, end)
+        if (i < end && out.charAt(i) == '=' && !isAtom(i)) {
+          i = skipSpaces(i + 1, end)
+          if (i < end && (out.charAt(i) == '"' || out.charAt(i) == '\'') && !isAtom(i) &&
+            matches(i + 1, end, protocol) &&
+            matches(i + 1 + protocol.length, end, "//") &&
+            i + 3 + protocol.length < end) {
+            i + 1
+          } else {
+            -1
+          }
+        } else {
+          -1
+        }
+      case None => -1
+    }
+  }
+
+  /**
+   * Checks if the current tag is an external link, like
+   * `<(?:[^>]*)rel\s*=\s*(["']*)(?:alternate\s+)?external\1(?:[^>]*)>` does.
+   *
+   * @param end The position of the `>` which closes the tag.
+   * @return True if the tag is an external link, false otherwise.
+   */
+  private def isExternal(end: Int): Boolean = {
+    (tagStart + 1 until end).exists { pos =>
+      matches(pos, end, "rel") && {
+        var i = skipSpaces(pos + 3, end)
+        (i < end && out.charAt(i) == '=' && !isAtom(i)) && {
+          i = skipSpaces(i + 1, end)
+          var quotes = i
+          while (quotes < end && (out.charAt(quotes) == '"' || out.charAt(quotes) == '\'') && !isAtom(quotes)) quotes += 1
+          (i to quotes).exists { valueStart =>
+            val quote = out.substring(i, valueStart)
+            val alternate = if (matches(valueStart, end, "alternate")) {
+              val spaces = skipSpaces(valueStart + 9, end)
+              if (spaces > valueStart + 9) Seq(spaces) else Nil
+            } else {
+              Nil
+            }
+            (alternate :+ valueStart).exists { externalStart =>
+              matches(externalStart, end, "external") && matches(externalStart + 8, end, quote)
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the spaces around the equal signs in the text in front of the `>`, like
+   * `(\s\w+)\s*=\s*(?=[^<]*?>)` does. The whitespace which got trimmed from the start of the document
+   * still counts, because the `HtmlCompressor` trims the document last.
+   */
+  private def removeSpacesAroundEquals(): Unit = {
+    var end = out.length - 1
+    var i = if (segmentStart == 0 && leadingSpace) -1 else segmentStart
+    while (i < end) {
+      if (i < 0 || out.charAt(i) == ' ' && !isAtom(i)) {
+        var j = i + 1
+        while (j < end && isWord(out.charAt(j)) && !isAtom(j)) j += 1
+        if (j > i + 1) {
+          val equals = if (j < end && out.charAt(j) == ' ' && !isAtom(j)) j + 1 else j
+          if (equals < end && out.charAt(equals) == '=' && !isAtom(equals)) {
+            if (equals + 1 < end && out.charAt(equals + 1) == ' ' && !isAtom(equals + 1)) {
+              delete(equals + 1, 1)
+              end -= 1
+            }
+            if (equals > j) {
+              delete(j, 1)
+              end -= 1
+            }
+            i = j + 1
+          } else {
+            i = j
+          }
+        } else {
+          i = j
+        }
+      } else {
+        i += 1
+      }
+    }
+  }
+
+  /**
+   * Removes the space in front of the `>` or `/>` of the current tag, like
+   * `(<(?:[^>]+?))(?:\s+?)(/?>)` does.
+   */
+  private def removeEndSpace(): Unit = {
+    val end = out.length - 1
+    if (end - 1 >= tagStart + 2 && out.charAt(end - 1) == ' ' && !isAtom(end - 1)) {
+      delete(end - 1, 1)
+    } else if (end - 2 >= tagStart + 2 && out.charAt(end - 1) == '/' && out.charAt(end - 2) == ' ' &&
+      !isAtom(end - 1) && !isAtom(end - 2)) {
+      delete(end - 2, 1)
+    }
+  }
+
+  /**
+   * Checks if the output contains the given text at the given position, ignoring the case, outside of atoms.
+   *
+   * @param pos The position to check.
+   * @param end The position before which the text must end.
+   * @param text The text to look for.
+   * @return True if the output contains the text at the given position, false otherwise.
+   */
+  private def matches(pos: Int, end: Int, text: String): Boolean = {
+    pos + text.length <= end && {
+      var i = 0
+      while (i < text.length && toLower(out.charAt(pos + i)) == text.charAt(i) && !isAtom(pos + i)) i += 1
+      i == text.length
+    }
+  }
+
+  /**
+   * Skips the spaces in the output.
+   *
+   * @param from The position from which the spaces should be skipped.
+   * @param end The position before which the spaces must end.
+   * @return The position after the spaces.
+   */
+  private def skipSpaces(from: Int, end: Int): Int = {
+    var i = from
+    while (i < end && out.charAt(i) == ' ' && !isAtom(i)) i += 1
+    i
+  }
+
+  /**
+   * Checks if a position in the output belongs to an atom, which was written after the last `>`.
+   *
+   * @param pos The position to check.
+   * @return True if the position belongs to an atom, false otherwise.
+   */
+  private def isAtom(pos: Int): Boolean = {
+    atoms.nonEmpty && {
+      var i = 0
+      while (i < atoms.length && !(pos >= atoms(i) && pos < atoms(i + 1))) i += 2
+      i < atoms.length
+    }
+  }
+
+  /**
+   * Deletes chars from the output and moves the positions behind them.
+   *
+   * @param pos The position of the first char to delete.
+   * @param count The number of chars to delete.
+   */
+  private def delete(pos: Int, count: Int): Unit = {
+    out.delete(pos, pos + count)
+    if (segmentStart > pos) segmentStart -= count
+    var i = 0
+    while (i < atoms.length) {
+      if (atoms(i) > pos) atoms(i) -= count
+      i += 1
+    }
+  }
+
+  /**
+   * Trims the end of the compressed document.
+   *
+   * @return The compressed document.
+   */
+  private def finish(): String = {
+    var end = out.length
+    while (end > protectedEnd && out.charAt(end - 1) <= ' ') end -= 1
+    out.setLength(end)
+    out.toString
+  }
+}
+
+/**
+ * The companion object.
+ */
+private[htmlcompressor] object SinglePassHtmlMinifier {
+
+  /**
+   * The tags of the preserved blocks, in the order in which the `HtmlCompressor` preserves them.
+   */
+  val BlockTags = Array("pre", "script", "style", "textarea")
+
+  /**
+   * The index of the script tag.
+   */
+  val Script = 1
+
+  /**
+   * The attributes from which the protocols get removed.
+   */
+  val UrlAttributes = Seq("href", "src", "cite", "action")
+
+  /**
+   * The tokens which open and close a comment.
+   */
+  val CommentStart = "<!--"
+  val CommentEnd = "-->"
+
+  /**
+   * The patterns of the constructs, which can't be compressed in a single pass.
+   */
+  val SkipBlock = Pattern.compile("<!--\\s*\\{\\{\\{\\s*-->(.*?)<!--\\s*\\}\\}\\}\\s*-->", Pattern.DOTALL | Pattern.CASE_INSENSITIVE)
+  val ConditionalComment = Pattern.compile("(<!(?:--)?\\[[^\\]]+?]>)(.*?)(<!\\[[^\\]]+]-->)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE)
+  val JQueryTemplate = Pattern.compile("<script[^>]*type\\s*=\\s*([\"']*)text/x-jquery-tmpl\\1[^>]*>", Pattern.DOTALL | Pattern.CASE_INSENSITIVE)
+
+  /**
+   * Checks if a document can be compressed in a single pass.
+   *
+   * Skip blocks and conditional comments get preserved before everything else, and the placeholders of
+   * the `HtmlCompressor` would clash with a document which contains them already.
+   *
+   * @param html The document to check.
+   * @return True if the document can be compressed in a single pass, false otherwise.
+   */
+  def isSupported(html: String): Boolean = {
+    html.indexOf("%%%") < 0 &&
+      !(html.indexOf("{{{") >= 0 && SkipBlock.matcher(html).find()) &&
+      !((html.indexOf("<![") >= 0 || html.indexOf("<!--[") >= 0) && ConditionalComment.matcher(html).find())
+  }
+
+  /**
+   * Checks if a char is whitespace, like `\s` considers it.
+   *
+   * @param c The char to check.
+   * @return True if the char is whitespace, false otherwise.
+   */
+  def isSpace(c: Char): Boolean = c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B'
+
+  /**
+   * Checks if a char is a blank, like `\p{Blank}` considers it.
+   *
+   * @param c The char to check.
+   * @return True if the char is a blank, false otherwise.
+   */
+  def isBlankChar(c: Char): Boolean = c == ' ' || c == '\t'
+
+  /**
+   * Checks if a char is an ASCII letter.
+   *
+   * @param c The char to check.
+   * @return True if the char is an ASCII letter, false otherwise.
+   */
+  def isLetter(c: Char): Boolean = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'
+
+  /**
+   * Checks if a char is a word char, like `\w` considers it.
+   *
+   * @param c The char to check.
+   * @return True if the char is a word char, false otherwise.
+   */
+  def isWord(c: Char): Boolean = isLetter(c) || c >= '0' && c <= '9' || c == '_'
+
+  /**
+   * Checks if a char terminates a line, like `.` considers it.
+   *
+   * @param c The char to check.
+   * @return True if the char terminates a line, false otherwise.
+   */
+  def isLineTerminator(c: Char): Boolean = c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029'
+
+  /**
+   * Converts an ASCII letter to lower case.
+   *
+   * @param c The char to convert.
+   * @return The lower case letter, or the char itself if it's no upper case ASCII letter.
+   */
+  def toLower(c: Char): Char = if (c >= 'A' && c <= 'Z') (c + 32).toChar else c
+}
@@ -0,0 +1,494 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.xmlcompressor
+
+import java.util.regex.Pattern
+
+import com.googlecode.htmlcompressor.compressor.XmlCompressor
+import com.mohiva.play.compressor.IncrementalCompressor
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * An XML compressor which compresses a document in a single pass, while it arrives in pieces.
+ *
+ * It has the same settings and produces the same output as the regex based `XmlCompressor`, but it
+ * never needs the whole document. CDATA sections are passed through, comments are dropped while they
+ * arrive, and the markup between two tags gets compressed as soon as the next tag starts. So only the
+ * current tag with the text behind it, or the current CDATA section or comment, is held in memory.
+ */
+class StreamingXmlCompressor extends XmlCompressor {
+
+  override def compress(xml: String): String = {
+    if (!isEnabled || xml == null || xml.isEmpty) {
+      xml
+    } else {
+      val c = incremental()
+      c.feed(xml) + c.finish()
+    }
+  }
+
+  /**
+   * Creates a compressor for a single document with the settings of this compressor.
+   *
+   * @return The compressor for the document.
+   */
+  def incremental(): IncrementalCompressor = incremental(Long.MaxValue)
+
+  /**
+   * Creates a compressor for a single document with the settings of this compressor, which passes the
+   * rest of the document through uncompressed once it holds back more than the given number of chars.
+   *
+   * @param maxHeld The maximum number of chars the compressor holds back.
+   * @return The compressor for the document.
+   */
+  def incremental(maxHeld: Long): IncrementalCompressor = {
+    if (isEnabled) {
+      new StreamingXmlMinifier(isRemoveComments, isRemoveIntertagSpaces, maxHeld)
+    } else {
+      new IncrementalCompressor {
+        override def feed(markup: String): String = markup
+        override def finish(): String = ""
+      }
+    }
+  }
+}
+
+/**
+ * Compresses a single XML document in pieces.
+ *
+ * The input gets split at every `<` which doesn't start a CDATA section or a removed comment. The
+ * `XmlCompressor` rules only ever look from one `<` to the next, so every such segment can be compressed
+ * on its own, once it's known whether a tag follows it. CDATA sections get replaced by a placeholder
+ * while their segment gets compressed, like the `XmlCompressor` does.
+ *
+ * A CDATA section or comment which isn't closed, or text without tags, holds back the rest of the
+ * document. Once more than `maxHeld` chars are held back, the held markup and the rest of the document
+ * get passed through uncompressed.
+ *
+ * @param removeComments True if comments should be removed, false otherwise.
+ * @param removeIntertagSpaces True if the spaces between tags should be removed, false otherwise.
+ * @param maxHeld The maximum number of chars which get held back.
+ */
+private[xmlcompressor] class StreamingXmlMinifier(removeComments: Boolean, removeIntertagSpaces: Boolean, maxHeld: Long)
+  extends IncrementalCompressor {
+  import StreamingXmlMinifier._
+
+  /**
+   * The input which wasn't consumed yet.
+   */
+  private val input = new java.lang.StringBuilder
+
+  /**
+   * The position of the next char to scan.
+   */
+  private var pos = 0
+
+  /**
+   * The current state of the scanner.
+   */
+  private var state = Text
+
+  /**
+   * The start position of the currently open CDATA section.
+   */
+  private var cdataStart = 0
+
+  /**
+   * The start position of the currently open comment.
+   */
+  private var commentStart = 0
+
+  /**
+   * The position from which the end of the currently open section will be searched.
+   */
+  private var searchFrom = 0
+
+  /**
+   * Indicates if CDATA sections are still recognized. Once a section isn't closed, no later one can be.
+   */
+  private var cdata = true
+
+  /**
+   * Indicates if comments are still removed. Once a comment isn't closed, no later one can be.
+   */
+  private var comments = removeComments
+
+  /**
+   * The current segment, with a placeholder for every preserved block.
+   */
+  private val segment = new java.lang.StringBuilder
+
+  /**
+   * The preserved blocks of the current segment.
+   */
+  private val blocks = ArrayBuffer.empty[String]
+
+  /**
+   * The number of chars of the preserved blocks of the current segment.
+   */
+  private var blocksLength = 0L
+
+  /**
+   * The compressed output which wasn't returned yet.
+   */
+  private val output = new java.lang.StringBuilder
+
+  /**
+   * The whitespace at the end of the output, which gets held back because it must be trimmed at the
+   * end of the document.
+   */
+  private val trailing = new java.lang.StringBuilder
+
+  /**
+   * Indicates if any non-whitespace output was produced yet.
+   */
+  private var started = false
+
+  /**
+   * Indicates if the rest of the document gets passed through uncompressed.
+   */
+  private var passThrough = false
+
+  override def feed(markup: String): String = {
+    if (passThrough) {
+      markup
+    } else {
+      input.append(markup)
+      scan(finished = false)
+      compact()
+      if (trailing.length + segment.length + blocksLength + input.length > maxHeld) {
+        passThrough = true
+        drain() + release()
+      } else {
+        drain()
+      }
+    }
+  }
+
+  override def finish(): String = if (passThrough) "" else complete()
+
+  /**
+   * Compresses the held back markup at the end of the document.
+   *
+   * @return The compressed markup.
+   */
+  private def complete(): String = {
+    scan(finished = true)
+    while (state != Text) {
+      // A section which isn't closed at the end of the document isn't a section
+      state match {
+        case CData =>
+          cdata = false
+          pos = cdataStart
+        case CommentCData =>
+          cdata = false
+          pos = commentStart
+        case _ =>
+          comments = false
+          pos = commentStart
+      }
+      state = Text
+      scan(finished = true)
+    }
+    flush(followedByTag = false)
+    trailing.setLength(0)
+    input.setLength(0)
+    drain()
+  }
+
+  /**
+   * Scans the not yet scanned part of the input.
+   *
+   * @param finished True if no more input will follow, false otherwise.
+   */
+  private def scan(finished: Boolean): Unit = {
+    val length = input.length
+    var waiting = false
+    while (pos < length && !waiting) {
+      state match {
+        case Text =>
+          val c = input.charAt(pos)
+          if (c != '<') {
+            text(c)
+            pos += 1
+          } else if (cdata && startsWith(pos, CDataStart)) {
+            state = CData
+            cdataStart = pos
+            searchFrom = pos + CDataStart.length
+            pos = searchFrom
+          } else if (comments && startsWith(pos, CommentStart)) {
+            state = Comment
+            commentStart = pos
+            searchFrom = pos + CommentStart.length
+            pos = searchFrom
+          } else if (!finished && (cdata && isPrefix(pos, CDataStart) || comments && isPrefix(pos, CommentStart))) {
+            waiting = true
+          } else {
+            text(c)
+            pos += 1
+          }
+        case CData | CommentCData =>
+          val end = input.indexOf(CDataEnd, searchFrom)
+          if (end < 0) {
+            searchFrom = math.max(searchFrom, length - CDataEnd.length + 1)
+            pos = length
+          } else if (state == CData) {
+            block(input.substring(cdataStart, end + CDataEnd.length))
+            state = Text
+            pos = end + CDataEnd.length
+          } else {
+            state = Comment
+            searchFrom = end + CDataEnd.length
+            pos = searchFrom
+          }
+        case _ =>
+          val matcher = CommentToken.matcher(input).region(searchFrom, length)
+          if (!matcher.find()) {
+            searchFrom = math.max(searchFrom, length - CDataStart.length + 1)
+            pos = length
+          } else if (matcher.group == CommentEnd) {
+            state = Text
+            pos = matcher.end
+          } else if (cdata) {
+            state = CommentCData
+            searchFrom = matcher.end
+            pos = searchFrom
+          } else {
+            searchFrom = matcher.start + 1
+            pos = searchFrom
+          }
+      }
+    }
+  }
+
+  /**
+   * Removes the consumed input, but keeps the currently open section.
+   */
+  private def compact(): Unit = {
+    val consumed = state match {
+      case Text => pos
+      case CData => cdataStart
+      case _ => commentStart
+    }
+    input.delete(0, consumed)
+    pos -= consumed
+    cdataStart -= consumed
+    commentStart -= consumed
+    searchFrom -= consumed
+  }
+
+  /**
+   * Returns the held back markup uncompressed and clears it.
+   *
+   * @return The held back markup.
+   */
+  private def release(): String = {
+    val held = new java.lang.StringBuilder(trailing)
+    append(held, segment)
+    held.append(input)
+    trailing.setLength(0)
+    segment.setLength(0)
+    blocks.clear()
+    blocksLength = 0
+    input.setLength(0)
+    held.toString
+  }
+
+  /**
+   * Appends markup to a builder and replaces the placeholders with the preserved blocks of the current
+   * segment.
+   *
+   * @param builder The builder to append to.
+   * @param markup The markup with the placeholders.
+   */
+  private def append(builder: java.lang.StringBuilder, markup: CharSequence): Unit = {
+    var i = 0
+    var b = 0
+    while (i < markup.length) {
+      val c = markup.charAt(i)
+      if (c == Placeholder) {
+        builder.append(blocks(b))
+        b += 1
+      } else {
+        builder.append(c)
+      }
+      i += 1
+    }
+  }
+
+  /**
+   * Appends a char of the markup to the current segment, or starts a new segment if it's a `<`.
+   *
+   * @param c The char to append.
+   */
+  private def text(c: Char): Unit = {
+    if (c == '<') {
+      flush(followedByTag = true)
+      segment.append(c)
+    } else if (c == Placeholder) {
+      block(Placeholder.toString)
+    } else {
+      segment.append(c)
+    }
+  }
+
+  /**
+   * Appends a preserved block to the current segment.
+   *
+   * @param content The content of the block.
+   */
+  private def block(content: String): Unit = {
+    blocks += content
+    blocksLength += content.length
+    segment.append(Placeholder)
+  }
+
+  /**
+   * Compresses the current segment and appends it to the output.
+   *
+   * @param followedByTag True if a tag follows the segment, false if the document ends.
+   */
+  private def flush(followedByTag: Boolean): Unit = {
+    if (segment.length > 0) {
+      val compressed = compressSegment(segment.toString, followedByTag)
+      segment.setLength(0)
+      val restored = new java.lang.StringBuilder(compressed.length)
+      append(restored, compressed)
+      blocks.clear()
+      blocksLength = 0
+      emit(restored)
+    }
+  }
+
+  /**
+   * Compresses a segment with the rules of the `XmlCompressor`.
+   *
+   * @param markup The segment, which starts with a `<` unless it's the start of the document.
+   * @param followedByTag True if a tag follows the segment, false if the document ends.
+   * @return The compressed segment.
+   */
+  private def compressSegment(markup: String, followedByTag: Boolean): String = {
+    var s = markup
+    if (removeIntertagSpaces && followedByTag) {
+      var end = s.length
+      while (end > 0 && isSpace(s.charAt(end - 1))) end -= 1
+      if (end < s.length && end > 0 && s.charAt(end - 1) == '>') s = s.substring(0, end)
+    }
+    if (s.indexOf('>') >= 0) {
+      s = MultiSpace.matcher(s).replaceAll(" ")
+      s = TagProperty.matcher(s).replaceAll("$1=")
+      s = TagEndSpace.matcher(s).replaceAll("$1$2")
+    }
+    s
+  }
+
+  /**
+   * Appends compressed markup to the output, trimming the start and the end of the document.
+   *
+   * @param markup The compressed markup.
+   */
+  private def emit(markup: CharSequence): Unit = {
+    var start = 0
+    if (!started) {
+      while (start < markup.length && markup.charAt(start) <= ' ') start += 1
+    }
+    var end = markup.length
+    while (end > start && markup.charAt(end - 1) <= ' ') end -= 1
+    if (end > start) {
+      started = true
+      output.append(trailing).append(markup, start, end)
+      trailing.setLength(0)
+    }
+    if (started) trailing.append(markup, end, markup.length)
+  }
+
+  /**
+   * Returns the output and clears it.
+   *
+   * @return The output.
+   */
+  private def drain(): String = {
+    val result = output.toString
+    output.setLength(0)
+    result
+  }
+
+  /**
+   * Checks if the input contains the given token at the given position, ignoring the case.
+   *
+   * @param at The position to check.
+   * @param token The token to look for.
+   * @return True if the input contains the token at the given position, false otherwise.
+   */
+  private def startsWith(at: Int, token: String): Boolean = {
+    at + token.length <= input.length && input.substring(at, at + token.length).equalsIgnoreCase(token)
+  }
+
+  /**
+   * Checks if the rest of the input is a proper prefix of the given token, ignoring the case.
+   *
+   * @param at The position where the rest of the input starts.
+   * @param token The token to check.
+   * @return True if the rest of the input could still become the token, false otherwise.
+   */
+  private def isPrefix(at: Int, token: String): Boolean = {
+    input.length - at < token.length && token.regionMatches(true, 0, input.substring(at), 0, input.length - at)
+  }
+}
+
+/**
+ * The companion object.
+ */
+private[xmlcompressor] object StreamingXmlMinifier {
+
+  /**
+   * The scanner states.
+   */
+  val Text = 0
+  val CData = 1
+  val Comment = 2
+  val CommentCData = 3
+
+  /**
+   * The tokens which open and close the sections.
+   */
+  val CDataStart = "<![CDATA["
+  val CDataEnd = "]]>"
+  val CommentStart = "<!--"
+  val CommentEnd = "-->"
+
+  /**
+   * The pattern which finds the end of a comment or the start of a CDATA section inside it.
+   */
+  val CommentToken = Pattern.compile("-->|<!\\[CDATA\\[", Pattern.CASE_INSENSITIVE)
+
+  /**
+   * The char which replaces a preserved block while its segment gets compressed. It isn't allowed in
+   * XML documents, and it's neither a space nor a word char, like the placeholder of the `XmlCompressor`.
+   */
+  val Placeholder = '\u0000'
+
+  /**
+   * The patterns of the `XmlCompressor`, which compress the spaces inside tags.
+   */
+  val MultiSpace = Pattern.compile("\\s+(?=[^<]*?>)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE)
+  val TagProperty = Pattern.compile("(\\s\\w+)\\s*=\\s*(?=[^<]*?>)", Pattern.CASE_INSENSITIVE)
+  val TagEndSpace = Pattern.compile("(<(?:[^>]+?))(?:\\s+?)(/?>)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE)
+
+  /**
+   * Checks if a char is a space in the sense of the `\s` regex class.
+   *
+   * @param c The char to check.
+   * @return True if the char is a space, false otherwise.
+   */
+  def isSpace(c: Char): Boolean = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r'
+}
@@ -10,30 +10,54 @@
  */
 package com.mohiva.play.xmlcompressor
 
-import javax.inject.Inject
+import javax.inject.{ Inject, Singleton }
 
 import akka.stream.Materializer
-import com.googlecode.htmlcompressor.compressor.XmlCompressor
-import com.mohiva.play.compressor.CompressorFilter
-import play.api.inject.Module
+import com.googlecode.htmlcompressor.compressor.Compressor
+import com.mohiva.play.compressor._
+import play.api.http.MimeTypes
+import play.api.inject.{ ApplicationLifecycle, DefaultApplicationLifecycle, Module }
 import play.api.mvc._
 import play.api.{ Configuration, Environment }
 
 /**
- * Uses Google's XML Processor to compress the XML code of a response.
+ * Uses Google's XML Processor, or the minifier of another engine, to compress the XML code of a response.
  */
-abstract class XMLCompressorFilter extends CompressorFilter[XmlCompressor] {
+abstract class XMLCompressorFilter extends CompressorFilter[Compressor] {
 
   /**
-   * Check if the given result is a XML result.
+   * Indicates if streamed bodies should be compressed while they stream through the filter.
+   *
+   * The streaming engine compresses them always while they stream through the filter, because it
+   * doesn't need to see the whole document.
+   */
+  override lazy val streaming: Boolean = compressor.isInstanceOf[StreamingXmlCompressor] ||
+    configuration.getOptional[Boolean]("play.filters.compressor.streaming").getOrElse(false)
+
+  /**
+   * Compresses the streamed and chunked bodies with the streaming engine, if it's the compressor.
+   *
+   * @param compressor The compressor whose settings should be used.
+   * @param compress The function which compresses a piece of markup.
+   * @return The compressor for the body.
+   */
+  override protected def incremental(compressor: Compressor, compress: String => String): IncrementalCompressor = {
+    compressor match {
+      case c: StreamingXmlCompressor => c.incremental(maxSize)
+      case _ => super.incremental(compressor, compress)
+    }
+  }
+
+  /**
+   * Skips results which aren't XML results.
    *
    * @param result The result to check.
-   * @return True if the result is a XML result, false otherwise.
+   * @return The reason why the result shouldn't be compressed, or None if it should be compressed.
    */
-  override protected def isCompressible(result: Result) = {
+  override protected def skipReason(result: Result): Option[SkipReason] = {
     // We cannot simply look for MimeTypes.XML because of things like "application/atom+xml".
     lazy val contentTypeXml = result.body.contentType.exists(_.contains("xml"))
-    super.isCompressible(result) && contentTypeXml
+    super.skipReason(result).orElse(if (contentTypeXml) None else Some(SkipReason.ContentType))
   }
 }
 
@@ -41,25 +65,110 @@ abstract class XMLCompressorFilter extends CompressorFilter[XmlCompressor] {
  * The default implementation of the [[XMLCompressorFilter]].
  *
  * @param configuration The Play configuration.
+ * @param environment The Play environment.
+ * @param mat The materializer.
+ * @param metrics The metrics which record the compressions.
+ * @param lifecycle The lifecycle of the application, which releases the disk cache.
  */
-class DefaultXMLCompressorFilter @Inject() (val configuration: Configuration, val mat: Materializer) extends XMLCompressorFilter {
+@Singleton
+class DefaultXMLCompressorFilter @Inject() (
+  val configuration: Configuration,
+  environment: Environment,
+  val mat: Materializer,
+  override val metrics: CompressorMetrics,
+  lifecycle: ApplicationLifecycle)
+  extends XMLCompressorFilter {
+
+  /**
+   * Creates the filter outside of an application, whose disk cache gets never released.
+   *
+   * @param configuration The Play configuration.
+   * @param environment The Play environment.
+   * @param mat The materializer.
+   * @param metrics The metrics which record the compressions.
+   */
+  def this(configuration: Configuration, environment: Environment, mat: Materializer, metrics: CompressorMetrics) =
+    this(configuration, environment, mat, metrics, new DefaultApplicationLifecycle)
+
+  /**
+   * Creates the filter outside of an application, with its own in-memory metrics.
+   *
+   * @param configuration The Play configuration.
+   * @param environment The Play environment.
+   * @param mat The materializer.
+   */
+  def this(configuration: Configuration, environment: Environment, mat: Materializer) =
+    this(configuration, environment, mat, new InMemoryCompressorMetrics)
+
+  /**
+   * The settings of the `play.filters.compressor.xml` configuration.
+   */
+  private val xmlSettings = DefaultXMLCompressorFilter.settings(configuration, environment)
+
+  /**
+   * The settings from which the compressors get created.
+   */
+  override val compressorSettings: Option[CompressorSettings[Compressor]] = Some(xmlSettings)
 
   /**
    * The compressor instance.
    */
-  override val compressor: XmlCompressor = {
-    val c = new XmlCompressor()
-    c.setRemoveComments(
-      configuration
-        .getOptional[Boolean]("play.filters.compressor.xml.removeComments")
-        .getOrElse(true)
-    )
-    c.setRemoveIntertagSpaces(
-      configuration
-        .getOptional[Boolean]("play.filters.compressor.xml.removeIntertagSpaces")
-        .getOrElse(true)
-    )
-    c
+  override val compressor: Compressor = xmlSettings.create()
+
+  start(lifecycle)
+  warmUp(CompressorWarmup.fromConfiguration(configuration, "xml", DefaultXMLCompressorFilter.Sample, environment.classLoader), MimeTypes.XML)
+}
+
+/**
+ * The companion object.
+ */
+object DefaultXMLCompressorFilter {
+
+  /**
+   * The XML document which gets compressed by the warm-up, if no documents are configured.
+   */
+  val Sample =
+    """<?xml version="1.0" encoding="utf-8"?>
+      |<feed xmlns="http://www.w3.org/2005/Atom">
+      |  <!-- The feed -->
+      |  <title>  A   feed  </title>
+      |  <entry>
+      |    <title  type = "text">  A   title  </title>
+      |    <link href="http://example.com/entry" />
+      |    <content type="html"><![CDATA[  <p>  Some   text  </p>  ]]></content>
+      |    <summary>
+      |      Some    text
+      |    </summary>
+      |  </entry>
+      |</feed>
+      |""".stripMargin
+
+  /**
+   * Creates the compressor from the `play.filters.compressor.xml` configuration.
+   *
+   * The `engine` setting selects between the regex based `XmlCompressor`, the [[StreamingXmlCompressor]],
+   * which compresses streamed bodies while they arrive, and the engines which are plugged in by their
+   * class name.
+   *
+   * @param configuration The Play configuration.
+   * @param environment The Play environment.
+   * @return The compressor.
+   */
+  def compressor(configuration: Configuration, environment: Environment): Compressor = {
+    settings(configuration, environment).create()
+  }
+
+  /**
+   * Gets the settings from the `play.filters.compressor.xml` configuration, with the engine which the
+   * `engine` setting selects.
+   *
+   * @param configuration The Play configuration.
+   * @param environment The Play environment.
+   * @return The settings.
+   */
+  def settings(configuration: Configuration, environment: Environment): CompressorSettings[Compressor] = {
+    val settings = configuration.getOptional[Configuration]("play.filters.compressor.xml").getOrElse(Configuration.empty)
+    new CompressorSettings(XmlCompressorEngine.fromConfiguration(settings, environment), settings, environment)
   }
 }
 
@@ -77,11 +186,16 @@ class XMLCompressorFilterModule extends Module {
 /**
  * Injection helper for the XML compressor filter.
  */
-trait XMLCompressorFilterComponents {
+trait XMLCompressorFilterComponents extends CompressorMetricsComponents {
 
   def configuration: Configuration
 
+  def environment: Environment
+
   def mat: Materializer
 
-  lazy val xmlCompressorFilter: XMLCompressorFilter = new DefaultXMLCompressorFilter(configuration, mat)
+  def applicationLifecycle: ApplicationLifecycle
+
+  lazy val xmlCompressorFilter: XMLCompressorFilter =
+    new DefaultXMLCompressorFilter(configuration, environment, mat, compressorMetrics, applicationLifecycle)
 }
@@ -0,0 +1,98 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.xmlcompressor
+
+import com.googlecode.htmlcompressor.compressor.{ Compressor, XmlCompressor }
+import com.mohiva.play.compressor.CompressorEngine
+import play.api.{ Configuration, Environment }
+
+/**
+ * An engine which creates an `XmlCompressor` and applies the XML settings to it.
+ *
+ * Engines which plug in another `XmlCompressor` subclass only need to create it. Engines which plug in
+ * an independent minifier implement [[com.mohiva.play.compressor.CompressorEngine]] for `Compressor`
+ * instead, and read the XML settings themselves.
+ */
+abstract class XmlCompressorEngine extends CompressorEngine[Compressor] {
+
+  /**
+   * Creates the compressor, which gets the settings applied.
+   *
+   * @return The compressor.
+   */
+  protected def newCompressor(): XmlCompressor
+
+  /**
+   * Creates a compressor.
+   *
+   * @param settings The settings, relative to `play.filters.compressor.xml`.
+   * @param environment The Play environment.
+   * @return The compressor.
+   */
+  override def create(settings: Configuration, environment: Environment): XmlCompressor = {
+    val c = newCompressor()
+    c.setRemoveComments(
+      settings
+        .getOptional[Boolean]("removeComments")
+        .getOrElse(true)
+    )
+    c.setRemoveIntertagSpaces(
+      settings
+        .getOptional[Boolean]("removeIntertagSpaces")
+        .getOrElse(true)
+    )
+    c
+  }
+}
+
+/**
+ * The engine which creates the regex based `XmlCompressor` of the HTML Compressor library.
+ */
+class RegexXmlCompressorEngine extends XmlCompressorEngine {
+  override protected def newCompressor(): XmlCompressor = new XmlCompressor()
+}
+
+/**
+ * The engine which creates the [[StreamingXmlCompressor]].
+ */
+class StreamingXmlCompressorEngine extends XmlCompressorEngine {
+  override protected def newCompressor(): XmlCompressor = new StreamingXmlCompressor()
+}
+
+/**
+ * The companion object.
+ */
+object XmlCompressorEngine {
+
+  /**
+   * The name of the engine which gets used if no engine is set.
+   */
+  val Default = "regex"
+
+  /**
+   * The built-in engines by their names.
+   */
+  val Engines: Map[String, CompressorEngine[Compressor]] = Map(
+    "regex" -> new RegexXmlCompressorEngine,
+    "streaming" -> new StreamingXmlCompressorEngine
+  )
+
+  /**
+   * Gets the engine which the `engine` setting selects.
+   *
+   * @param settings The settings, relative to `play.filters.compressor.xml`.
+   * @param environment The Play environment.
+   * @return The engine.
+   */
+  def fromConfiguration(settings: Configuration, environment: Environment): CompressorEngine[Compressor] = {
+    CompressorEngine.fromConfiguration(settings, environment, Engines, Default)
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import akka.actor.ActorSystem
+import akka.stream.scaladsl.Source
+import akka.stream.{ ActorMaterializer, Materializer }
+import akka.util.ByteString
+import org.openjdk.jmh.annotations._
+import play.api.http.HttpEntity
+import play.api.mvc.{ Filter, ResponseHeader, Result }
+import play.api.test.FakeRequest
+import play.api.{ Configuration, Environment }
+
+import scala.concurrent.duration._
+import scala.concurrent.{ Await, Future }
+
+/**
+ * Base class for the benchmarks, which run a result end to end through a compressor filter.
+ *
+ * Run the benchmarks with `sbt "benchmarks/jmh:run -prof gc"` to get the allocation rate next
+ * to the throughput and the latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput, Mode.SampleTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+abstract class FilterBenchmark {
+
+  /**
+   * The size of the document in bytes.
+   */
+  @Param(Array("1024", "102400", "1048576", "5242880"))
+  var size: Int = _
+
+  /**
+   * The type of the body, either `strict` or `streamed`.
+   */
+  @Param(Array("strict", "streamed"))
+  var body: String = _
+
+  /**
+   * The actor system which runs the streams.
+   */
+  var system: ActorSystem = _
+
+  /**
+   * The materializer which runs the streams.
+   */
+  implicit var mat: Materializer = _
+
+  /**
+   * The filter to benchmark.
+   */
+  var filter: Filter = _
+
+  /**
+   * The document to compress.
+   */
+  var document: ByteString = _
+
+  /**
+   * Creates the filter.
+   *
+   * @param configuration The Play configuration.
+   * @param environment The Play environment.
+   * @return The filter.
+   */
+  def createFilter(configuration: Configuration, environment: Environment): Filter
+
+  /**
+   * Generates the document to compress.
+   *
+   * @return The document.
+   */
+  def createDocument(): String
+
+  /**
+   * The content type of the document.
+   */
+  def contentType: String
+
+  /**
+   * The settings of the filter.
+   */
+  def settings: Map[String, AnyRef]
+
+  /**
+   * Creates the actor system, the filter and the document.
+   */
+  @Setup
+  def setup(): Unit = {
+    val environment = Environment.simple()
+    system = ActorSystem("benchmark")
+    mat = ActorMaterializer()(system)
+    filter = createFilter(Configuration.load(environment, settings), environment)
+    document = ByteString(createDocument())
+  }
+
+  /**
+   * Terminates the actor system.
+   */
+  @TearDown
+  def tearDown(): Unit = {
+    Await.result(system.terminate(), 10.seconds)
+  }
+
+  /**
+   * Runs a result through the filter and consumes the filtered body.
+   *
+   * @return The filtered body.
+   */
+  @Benchmark
+  def run(): ByteString = {
+    val entity = body match {
+      case "strict" => HttpEntity.Strict(document, Some(contentType))
+      case _ => HttpEntity.Streamed(Source(document.grouped(8192).toList), Some(document.length.toLong), Some(contentType))
+    }
+    val result = Result(ResponseHeader(200), entity)
+    val filtered = filter(_ => Future.successful(result))(FakeRequest())
+    Await.result(filtered.flatMap(_.body.consumeData)(mat.executionContext), 1.minute)
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor.benchmarks
+
+import com.mohiva.play.htmlcompressor.DefaultHTMLCompressorFilter
+import org.openjdk.jmh.annotations._
+import play.api.http.MimeTypes
+import play.api.mvc.Filter
+import play.api.{ Configuration, Environment }
+
+/**
+ * Benchmarks the [[com.mohiva.play.htmlcompressor.DefaultHTMLCompressorFilter]].
+ */
+class HTMLCompressorFilterBenchmark extends FilterBenchmark {
+
+  /**
+   * The setting which differs from the default configuration.
+   */
+  @Param(Array("default", "preserveLineBreaks", "keepComments", "removeIntertagSpaces", "keepHttpProtocol", "keepHttpsProtocol", "streaming", "singlePass"))
+  var flag: String = _
+
+  override def createFilter(configuration: Configuration, environment: Environment): Filter =
+    new DefaultHTMLCompressorFilter(configuration, environment, mat)
+
+  override def createDocument(): String = Pages.html(size)
+
+  override def contentType: String = MimeTypes.HTML
+
+  override def settings: Map[String, AnyRef] = flag match {
+    case "preserveLineBreaks" => Map("play.filters.compressor.html.preserveLineBreaks" -> java.lang.Boolean.TRUE)
+    case "keepComments" => Map("play.filters.compressor.html.removeComments" -> java.lang.Boolean.FALSE)
+    case "removeIntertagSpaces" => Map("play.filters.compressor.html.removeIntertagSpaces" -> java.lang.Boolean.TRUE)
+    case "keepHttpProtocol" => Map("play.filters.compressor.html.removeHttpProtocol" -> java.lang.Boolean.FALSE)
+    case "keepHttpsProtocol" => Map("play.filters.compressor.html.removeHttpsProtocol" -> java.lang.Boolean.FALSE)
+    case "streaming" => Map("play.filters.compressor.streaming" -> java.lang.Boolean.TRUE)
+    case "singlePass" => Map("play.filters.compressor.html.engine" -> "single-pass")
+    case _ => Map()
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor.benchmarks
+
+/**
+ * Generates documents of a given size for the benchmarks.
+ */
+object Pages {
+
+  /**
+   * A fragment of an HTML page, which contains the constructs the compressor handles.
+   */
+  val HtmlFragment =
+    """
+      |      <div class = "item"  id="item">
+      |        <!-- An item of the listing -->
+      |        <h2>  A   title  </h2>
+      |        <p>
+      |          Some    text with <b>bold</b>   and <i>italic</i>   words.
+      |        </p>
+      |        <a href="http://example.com/item"  title="Item">  Link  </a>
+      |        <img src="https://example.com/image.png" alt="Image" />
+      |        <pre>  preformatted
+      |            text  </pre>
+      |        <script type="text/javascript">
+      |          var item = { id: 1 };
+      |        </script>
+      |      </div>
+      |""".stripMargin
+
+  /**
+   * A fragment of an XML document, which contains the constructs the compressor handles.
+   */
+  val XmlFragment =
+    """
+      |    <entry>
+      |      <!-- An entry of the feed -->
+      |      <title  type = "text">  A   title  </title>
+      |      <link href="http://example.com/entry" />
+      |      <content type="html"><![CDATA[  <p>  Some   text  </p>  ]]></content>
+      |      <summary>
+      |        Some    text
+      |      </summary>
+      |    </entry>
+      |""".stripMargin
+
+  /**
+   * Generates an HTML page with at least the given size.
+   *
+   * @param size The size of the page in chars.
+   * @return The page.
+   */
+  def html(size: Int): String = document(
+    "<!DOCTYPE html>\n<html>\n  <head>\n    <title>  Page  </title>\n  </head>\n  <body>\n",
+    HtmlFragment,
+    "  </body>\n</html>\n",
+    size
+  )
+
+  /**
+   * Generates an XML document with at least the given size.
+   *
+   * @param size The size of the document in chars.
+   * @return The document.
+   */
+  def xml(size: Int): String = document(
+    "<?xml version=\"1.0\"?>\n<feed xmlns=\"http://www.w3.org/2005/Atom\">\n",
+    XmlFragment,
+    "</feed>\n",
+    size
+  )
+
+  /**
+   * Generates a document by repeating a fragment until the document has at least the given size.
+   *
+   * @param header The start of the document.
+   * @param fragment The fragment to repeat.
+   * @param footer The end of the document.
+   * @param size The size of the document in chars.
+   * @return The document.
+   */
+  private def document(header: String, fragment: String, footer: String, size: Int): String = {
+    val builder = new StringBuilder(header)
+    while (builder.length + footer.length < size) {
+      builder.append(fragment)
+    }
+    builder.append(footer).toString
+  }
+}
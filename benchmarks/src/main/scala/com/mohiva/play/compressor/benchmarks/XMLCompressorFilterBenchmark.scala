@@ -0,0 +1,44 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor.benchmarks
+
+import com.mohiva.play.xmlcompressor.DefaultXMLCompressorFilter
+import org.openjdk.jmh.annotations._
+import play.api.http.MimeTypes
+import play.api.mvc.Filter
+import play.api.{ Configuration, Environment }
+
+/**
+ * Benchmarks the [[com.mohiva.play.xmlcompressor.DefaultXMLCompressorFilter]].
+ */
+class XMLCompressorFilterBenchmark extends FilterBenchmark {
+
+  /**
+   * The setting which differs from the default configuration.
+   */
+  @Param(Array("default", "keepComments", "keepIntertagSpaces", "streaming", "streamingEngine"))
+  var flag: String = _
+
+  override def createFilter(configuration: Configuration, environment: Environment): Filter =
+    new DefaultXMLCompressorFilter(configuration, environment, mat)
+
+  override def createDocument(): String = Pages.xml(size)
+
+  override def contentType: String = MimeTypes.XML
+
+  override def settings: Map[String, AnyRef] = flag match {
+    case "keepComments" => Map("play.filters.compressor.xml.removeComments" -> java.lang.Boolean.FALSE)
+    case "keepIntertagSpaces" => Map("play.filters.compressor.xml.removeIntertagSpaces" -> java.lang.Boolean.FALSE)
+    case "streaming" => Map("play.filters.compressor.streaming" -> java.lang.Boolean.TRUE)
+    case "streamingEngine" => Map("play.filters.compressor.xml.engine" -> "streaming")
+    case _ => Map()
+  }
+}
@@ -0,0 +1,171 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor.loadtest
+
+import java.io.InputStream
+import java.net.{ HttpURLConnection, URL }
+
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.duration.FiniteDuration
+import scala.util.control.NonFatal
+
+/**
+ * The outcome of a load test run.
+ *
+ * @param requests The number of completed requests.
+ * @param errors The number of failed requests, or requests which didn't answer with status 200.
+ * @param nanos The time the run took in nanoseconds.
+ * @param latencies The sorted latencies of the completed requests in nanoseconds.
+ * @param bytes The number of body bytes which were received, as they were sent over the wire.
+ */
+case class LoadTestReport(requests: Long, errors: Long, nanos: Long, latencies: Array[Long], bytes: Long) {
+
+  /**
+   * Gets the number of completed requests per second.
+   *
+   * @return The throughput.
+   */
+  def requestsPerSecond: Double = if (nanos == 0) 0 else requests * 1e9 / nanos.toDouble
+
+  /**
+   * Gets the mean number of body bytes per completed request.
+   *
+   * @return The bytes per request.
+   */
+  def bytesPerRequest: Double = if (requests == 0) 0 else bytes.toDouble / requests
+
+  /**
+   * Gets a latency percentile.
+   *
+   * @param percentile The percentile between 0 and 1.
+   * @return The latency in nanoseconds, 0 if no request completed.
+   */
+  def latency(percentile: Double): Long = {
+    if (latencies.isEmpty) 0L
+    else latencies(math.min(latencies.length - 1, math.max(0, math.ceil(latencies.length * percentile).toInt - 1)))
+  }
+}
+
+/**
+ * Drives a server with a fixed number of concurrent clients, which send their requests back to back.
+ *
+ * Every client runs on its own thread with a keep-alive connection. The bodies are read as raw bytes,
+ * so that encoded bodies get counted with the size they have on the wire.
+ *
+ * @param concurrency The number of concurrent clients.
+ * @param headers The headers to send with every request.
+ */
+class LoadGenerator(concurrency: Int, headers: Map[String, String]) {
+
+  /**
+   * Sends requests for the given URLs in turn, until the given time is over.
+   *
+   * @param urls The URLs to request.
+   * @param duration The time for which the requests get sent.
+   * @return The report of the run.
+   */
+  def run(urls: Seq[URL], duration: FiniteDuration): LoadTestReport = {
+    val start = System.nanoTime
+    val deadline = start + duration.toNanos
+    val clients = (0 until concurrency).map(i => new Client(urls, i, deadline))
+    clients.foreach(_.start())
+    clients.foreach(_.join())
+    val nanos = System.nanoTime - start
+    val latencies = clients.flatMap(_.latencies).toArray
+    java.util.Arrays.sort(latencies)
+
+    LoadTestReport(latencies.length.toLong, clients.map(_.errors).sum, nanos, latencies, clients.map(_.bytes).sum)
+  }
+
+  /**
+   * A client which sends its requests back to back.
+   *
+   * @param urls The URLs to request.
+   * @param offset The index of the first URL to request, so that the clients don't request them in lockstep.
+   * @param deadline The time after which no request gets sent anymore.
+   */
+  private class Client(urls: Seq[URL], offset: Int, deadline: Long) extends Thread {
+
+    /**
+     * The latencies of the completed requests in nanoseconds.
+     */
+    val latencies = ArrayBuffer.empty[Long]
+
+    /**
+     * The number of failed requests.
+     */
+    var errors = 0L
+
+    /**
+     * The number of received body bytes.
+     */
+    var bytes = 0L
+
+    /**
+     * The buffer into which the bodies get read.
+     */
+    private val buffer = new Array[Byte](64 * 1024)
+
+    override def run(): Unit = {
+      var i = offset
+      while (System.nanoTime - deadline < 0) {
+        val start = System.nanoTime
+        try {
+          val received = request(urls(i % urls.size))
+          latencies += System.nanoTime - start
+          bytes += received
+        } catch {
+          case NonFatal(_) => errors += 1
+        }
+        i += 1
+      }
+    }
+
+    /**
+     * Sends a request and reads its body completely.
+     *
+     * @param url The URL to request.
+     * @return The number of received body bytes.
+     */
+    private def request(url: URL): Long = {
+      val connection = url.openConnection().asInstanceOf[HttpURLConnection]
+      headers.foreach { case (name, value) => connection.setRequestProperty(name, value) }
+      val status = connection.getResponseCode
+      val received = drain(if (status >= 400) connection.getErrorStream else connection.getInputStream)
+      if (status != 200) throw new IllegalStateException(s"Unexpected status $status for $url")
+      received
+    }
+
+    /**
+     * Reads a stream completely and closes it, so that its connection can be reused.
+     *
+     * @param in The stream to read.
+     * @return The number of bytes read.
+     */
+    private def drain(in: InputStream): Long = {
+      if (in == null) {
+        0L
+      } else {
+        try {
+          var total = 0L
+          var read = in.read(buffer)
+          while (read >= 0) {
+            total += read
+            read = in.read(buffer)
+          }
+          total
+        } finally {
+          in.close()
+        }
+      }
+    }
+  }
+}
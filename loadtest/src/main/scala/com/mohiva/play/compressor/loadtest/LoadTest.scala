@@ -0,0 +1,176 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor.loadtest
+
+import java.net.URL
+import javax.inject.Inject
+
+import com.mohiva.play.htmlcompressor.fixtures.DefaultFilter
+import play.api.http.{ HttpFilters, NoHttpFilters }
+import play.api.inject._
+import play.api.inject.guice.GuiceApplicationBuilder
+import play.api.mvc.EssentialFilter
+import play.api.routing.Router
+import play.api.{ Configuration, Mode }
+import play.core.server.{ AkkaHttpServer, ServerConfig }
+import play.filters.gzip.GzipFilter
+
+import scala.concurrent.duration._
+
+/**
+ * The options of the load test.
+ *
+ * @param concurrency The number of concurrent clients.
+ * @param warmup The time for which the server gets warmed up before it gets measured.
+ * @param duration The time for which the server gets measured.
+ * @param paths The paths which get requested in turn.
+ * @param encoding True if the bodies should be gzipped, false otherwise.
+ * @param settings Additional settings of the app.
+ */
+case class LoadTestOptions(
+  concurrency: Int = 16,
+  warmup: FiniteDuration = 10.seconds,
+  duration: FiniteDuration = 30.seconds,
+  paths: Seq[String] = Seq("/action", "/pages/1024", "/pages/102400", "/pages/1048576", "/streamed/102400"),
+  encoding: Boolean = false,
+  settings: Map[String, String] = Map.empty)
+
+/**
+ * The companion object.
+ */
+object LoadTestOptions {
+
+  /**
+   * The usage of the load test.
+   */
+  val Usage =
+    """Usage: loadtest [options]
+      |  --concurrency <n>      The number of concurrent clients (default: 16)
+      |  --warmup <duration>    The warm-up time per run (default: 10s)
+      |  --duration <duration>  The measured time per run (default: 30s)
+      |  --paths <p1,p2,...>    The paths to request in turn; /pages/<size> and /streamed/<size>
+      |                         serve generated pages of the given size
+      |  --encoding             Request gzipped bodies; the compressor filter encodes them itself,
+      |                         the run without it uses Play's gzip filter
+      |  --set <key>=<value>    Sets a configuration value of the app, like
+      |                         play.filters.compressor.cache.enabled=true
+      |""".stripMargin
+
+  /**
+   * Parses the command line arguments.
+   *
+   * @param args The arguments.
+   * @param options The options parsed so far.
+   * @return The options.
+   */
+  def parse(args: List[String], options: LoadTestOptions = LoadTestOptions()): LoadTestOptions = args match {
+    case Nil => options
+    case "--concurrency" :: n :: rest => parse(rest, options.copy(concurrency = n.toInt))
+    case "--warmup" :: d :: rest => parse(rest, options.copy(warmup = duration(d)))
+    case "--duration" :: d :: rest => parse(rest, options.copy(duration = duration(d)))
+    case "--paths" :: p :: rest => parse(rest, options.copy(paths = p.split(',').map(_.trim).filter(_.nonEmpty).toSeq))
+    case "--encoding" :: rest => parse(rest, options.copy(encoding = true))
+    case "--set" :: setting :: rest if setting.contains('=') =>
+      val (key, value) = setting.splitAt(setting.indexOf('='))
+      parse(rest, options.copy(settings = options.settings + (key -> value.drop(1))))
+    case arg :: _ => throw new IllegalArgumentException(s"Unknown argument `$arg`\n$Usage")
+  }
+
+  /**
+   * Parses a duration like `30s`.
+   *
+   * @param value The duration to parse.
+   * @return The duration.
+   */
+  private def duration(value: String): FiniteDuration = Duration(value) match {
+    case d: FiniteDuration => d
+    case _ => throw new IllegalArgumentException(s"Invalid duration `$value`\n$Usage")
+  }
+}
+
+/**
+ * Provides only Play's gzip filter, for the run without the compressor filter.
+ *
+ * @param gzipFilter The gzip filter.
+ */
+class GzipOnlyFilters @Inject() (gzipFilter: GzipFilter) extends HttpFilters {
+  override def filters: Seq[EssentialFilter] = Seq(gzipFilter)
+}
+
+/**
+ * Measures the impact of the compressor filter on a real Play server.
+ *
+ * The load test boots the app with the routes of the [[LoadTestRouter]] twice on a local port, once
+ * without and once with the HTML compressor filter. Every run gets warmed up and then measured with the
+ * same number of concurrent clients. The report shows the throughput, the latency percentiles and the
+ * bytes on the wire of both runs.
+ *
+ * Run it with `sbt "loadtest/run --concurrency 32 --duration 60s"`.
+ */
+object LoadTest {
+
+  /**
+   * Runs the load test.
+   *
+   * @param args The command line arguments.
+   */
+  def main(args: Array[String]): Unit = {
+    val options = LoadTestOptions.parse(args.toList)
+    val reports = Seq("without filter" -> false, "with filter" -> true).map {
+      case (name, enabled) => name -> run(options, enabled)
+    }
+
+    println()
+    println(s"${options.concurrency} clients, ${options.duration} per run, paths: ${options.paths.mkString(", ")}")
+    println(f"${"run"}%-16s ${"req/s"}%10s ${"p50 ms"}%9s ${"p90 ms"}%9s ${"p99 ms"}%9s ${"p99.9 ms"}%9s ${"max ms"}%9s ${"bytes/req"}%12s ${"errors"}%7s")
+    reports.foreach {
+      case (name, r) =>
+        def ms(nanos: Long) = nanos / 1e6
+        println(f"$name%-16s ${r.requestsPerSecond}%10.1f ${ms(r.latency(0.5))}%9.2f ${ms(r.latency(0.9))}%9.2f " +
+          f"${ms(r.latency(0.99))}%9.2f ${ms(r.latency(0.999))}%9.2f ${ms(r.latency(1))}%9.2f ${r.bytesPerRequest}%12.0f ${r.errors}%7d")
+    }
+
+    if (reports.exists(_._2.errors > 0)) sys.exit(1)
+  }
+
+  /**
+   * Boots the app, warms it up and measures it.
+   *
+   * @param options The options of the load test.
+   * @param enabled True if the compressor filter should be enabled, false otherwise.
+   * @return The report of the measured run.
+   */
+  def run(options: LoadTestOptions, enabled: Boolean): LoadTestReport = {
+    val filters = (enabled, options.encoding) match {
+      case (true, _) => classOf[DefaultFilter].getName
+      case (false, true) => classOf[GzipOnlyFilters].getName
+      case (false, false) => classOf[NoHttpFilters].getName
+    }
+    val app = new GuiceApplicationBuilder()
+      .in(Mode.Test)
+      .configure(Configuration.from(options.settings))
+      .configure("play.http.filters" -> filters)
+      .configure("play.filters.compressor.encoding.enabled" -> options.encoding)
+      .overrides(bind[Router].to[LoadTestRouter])
+      .build()
+    val server = AkkaHttpServer.fromApplication(app, ServerConfig(port = Some(0), mode = Mode.Test))
+    try {
+      val port = server.httpPort.getOrElse(throw new IllegalStateException("The server has no HTTP port"))
+      val urls = options.paths.map(path => new URL(s"http://localhost:$port$path"))
+      val headers = if (options.encoding) Map("Accept-Encoding" -> "gzip") else Map.empty[String, String]
+      val generator = new LoadGenerator(options.concurrency, headers)
+      generator.run(urls, options.warmup)
+      generator.run(urls, options.duration)
+    } finally {
+      server.stop()
+    }
+  }
+}
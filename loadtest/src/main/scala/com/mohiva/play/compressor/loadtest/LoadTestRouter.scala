@@ -0,0 +1,87 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor.loadtest
+
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+
+import akka.stream.scaladsl.Source
+import akka.util.ByteString
+import com.mohiva.play.compressor.benchmarks.Pages
+import com.mohiva.play.htmlcompressor.fixtures.TestController
+import controllers.AssetsMetadata
+import play.api.http.HttpEntity
+import play.api.mvc._
+import play.api.routing.Router.Routes
+import play.api.routing.SimpleRouter
+import play.api.routing.sird._
+
+import scala.util.Try
+
+/**
+ * The routes of the load test app.
+ *
+ * Next to the actions of the test controller, it serves generated HTML pages of the requested size,
+ * either as strict bodies under `/pages/<size>` or as streamed bodies under `/streamed/<size>`.
+ *
+ * @param components The controller components.
+ * @param meta The metadata of the assets.
+ */
+class LoadTestRouter @Inject() (components: ControllerComponents, meta: AssetsMetadata) extends SimpleRouter {
+
+  /**
+   * The test controller.
+   */
+  val controller = new TestController(components, meta)
+
+  /**
+   * The generated pages by their size.
+   */
+  private val pages = new ConcurrentHashMap[Int, ByteString]
+
+  /**
+   * The action builder for the pages.
+   */
+  private val Action = components.actionBuilder
+
+  override def routes: Routes = {
+    case GET(p"/action") => controller.action
+    case GET(p"/asyncAction") => controller.asyncAction
+    case GET(p"/chunked") => controller.chunked
+    case GET(p"/streamed") => controller.streamed
+    case GET(p"/pages/$size") => Action {
+      Results.Ok.sendEntity(HttpEntity.Strict(page(size), Some("text/html; charset=utf-8")))
+    }
+    case GET(p"/streamed/$size") => Action {
+      val data = page(size)
+      Results.Ok.sendEntity(HttpEntity.Streamed(
+        Source(data.grouped(8192).toList),
+        Some(data.length.toLong),
+        Some("text/html; charset=utf-8")
+      ))
+    }
+  }
+
+  /**
+   * Gets the page of the given size, which gets generated on the first request for it.
+   *
+   * @param size The size of the page in chars.
+   * @return The page.
+   */
+  private def page(size: String): ByteString = {
+    val chars = Try(size.toInt).filter(_ > 0).getOrElse(1024)
+    Option(pages.get(chars)).getOrElse {
+      val page = ByteString(Pages.html(chars), "UTF-8")
+      pages.putIfAbsent(chars, page)
+      page
+    }
+  }
+}
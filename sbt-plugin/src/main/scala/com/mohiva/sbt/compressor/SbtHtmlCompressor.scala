@@ -0,0 +1,75 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.sbt.compressor
+
+import com.typesafe.sbt.web.Import.WebKeys
+import com.typesafe.sbt.web.pipeline.Pipeline
+import com.typesafe.sbt.web.{ PathMapping, SbtWeb }
+import sbt.Keys._
+import sbt._
+
+/**
+ * An sbt-web plugin which provides the `compressAssets` pipeline stage.
+ *
+ * The stage compresses the static HTML and XML assets with the `AssetPrecompressor` of the application,
+ * so with the `play.filters.compressor` settings of its configuration. The compressed assets and the
+ * manifest get written into the target directory of the stage, from where they get packaged.
+ */
+object SbtHtmlCompressor extends AutoPlugin {
+
+  override def requires = SbtWeb
+
+  override def trigger = AllRequirements
+
+  /**
+   * The keys of the plugin.
+   */
+  object autoImport {
+    val compressAssets = TaskKey[Pipeline.Stage]("compress-assets", "Compresses the static HTML and XML assets.")
+    val compressAssetsGzip = SettingKey[Boolean]("compress-assets-gzip", "Writes a gzipped sibling for every compressed asset.")
+  }
+
+  import autoImport._
+
+  /**
+   * The class which compresses the assets on the classpath of the application.
+   */
+  val MainClass = "com.mohiva.play.compressor.AssetPrecompressor"
+
+  /**
+   * The name of the manifest the `AssetPrecompressor` writes.
+   */
+  val ManifestName = "compressor-manifest.txt"
+
+  override def projectSettings: Seq[Setting[_]] = Seq(
+    compressAssetsGzip := true,
+    resourceManaged in compressAssets := WebKeys.webTarget.value / compressAssets.key.label,
+    compressAssets := {
+      val log = streams.value.log
+      val cacheDir = streams.value.cacheDirectory
+      val dir = (resourceManaged in compressAssets).value
+      val run = (runner in Compile).value
+      val classpath = (fullClasspath in Compile).value.files
+      val options = if (compressAssetsGzip.value) Seq("--gzip") else Nil
+
+      (mappings: Seq[PathMapping]) => {
+        val source = SbtWeb.syncMappings(cacheDir, mappings, dir / "source")
+        val target = dir / "target"
+        IO.delete(target)
+        run.run(MainClass, classpath, options ++ Seq(source.getAbsolutePath, target.getAbsolutePath), log).foreach(sys.error)
+
+        val compressed = IO.readLines(target / ManifestName).count(_.trim.nonEmpty)
+        log.info(s"Compressed $compressed HTML and XML assets into $target")
+        target.***.get.filter(_.isFile).pair(relativeTo(target))
+      }
+    }
+  )
+}
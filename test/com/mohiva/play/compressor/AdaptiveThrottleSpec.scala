@@ -0,0 +1,120 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.AdaptiveThrottle]] class.
+ */
+class AdaptiveThrottleSpec extends Specification {
+
+  "The throttle" should {
+    "not back off if no limit is exceeded" in new Context {
+      val throttle = newThrottle()
+      throttle.record(50)
+
+      throttle.saturated must beFalse
+    }
+
+    "back off if too many compressions are pending" in new Context {
+      val throttle = newThrottle()
+      pending = 10
+
+      throttle.saturated must beTrue
+    }
+
+    "back off if the recent compressions were too slow on average" in new Context {
+      val throttle = newThrottle()
+      throttle.record(80)
+      throttle.saturated must beFalse
+      (1 to 5).foreach(_ => throttle.record(200))
+
+      throttle.latency must be greaterThan 100
+      throttle.saturated must beTrue
+    }
+
+    "back off if the CPU load is too high" in new Context {
+      val throttle = newThrottle()
+      cpuLoad = 0.95
+
+      throttle.saturated must beTrue
+    }
+
+    "ignore an unknown CPU load" in new Context {
+      val throttle = newThrottle()
+      cpuLoad = -1.0
+
+      throttle.saturated must beFalse
+    }
+
+    "keep backing off for the cooldown period" in new Context {
+      val throttle = newThrottle()
+      pending = 10
+      throttle.saturated must beTrue
+      pending = 0
+      now += 999
+
+      throttle.saturated must beTrue
+      now += 1
+      throttle.saturated must beFalse
+    }
+
+    "forget the latency if no compression was recorded within the cooldown period" in new Context {
+      val throttle = newThrottle()
+      throttle.record(500)
+      throttle.saturated must beTrue
+      now += 1001
+
+      throttle.latency must be equalTo 0
+      throttle.saturated must beFalse
+    }
+
+    "ignore the limits which are set to zero" in new Context {
+      val throttle = new AdaptiveThrottle(0, 0, 0, 1000, () => pending, () => cpuLoad, () => now)
+      pending = 10
+      cpuLoad = 1.0
+      throttle.record(500)
+
+      throttle.saturated must beFalse
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * The number of pending compressions.
+     */
+    var pending = 0
+
+    /**
+     * The CPU load of the process.
+     */
+    var cpuLoad = 0.5
+
+    /**
+     * The current time in nanoseconds.
+     */
+    var now = 0L
+
+    /**
+     * Creates a throttle which allows 5 pending compressions, an average latency of 100ns, a CPU load
+     * of 90% and backs off for 1000ns.
+     *
+     * @return The throttle.
+     */
+    def newThrottle() = new AdaptiveThrottle(5, 100, 0.9, 1000, () => pending, () => cpuLoad, () => now)
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.Files
+
+import akka.util.ByteString
+import org.specs2.mutable._
+import play.api.{ Configuration, Environment, Mode }
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.AssetPrecompressor]] class.
+ */
+class AssetPrecompressorSpec extends Specification {
+
+  "The precompressor" should {
+    "compress the HTML and XML assets into the target directory and write the manifest" in {
+      val source = Files.createTempDirectory("assets")
+      val dir = Files.createTempDirectory("stage")
+      Files.createDirectories(source.resolve("pages"))
+      Files.write(source.resolve("pages/index.html"), "<html>  <body>  <!-- c --> </body> </html>".getBytes(UTF_8))
+      Files.write(source.resolve("feed.xml"), "<feed>\n  <entry/>\n</feed>".getBytes(UTF_8))
+      Files.write(source.resolve("app.js"), "var  a = 1;".getBytes(UTF_8))
+
+      val environment = Environment.simple(mode = Mode.Test)
+      val precompressor = AssetPrecompressor.fromConfiguration(Configuration.load(environment), environment, gzip = true)
+      val paths = precompressor.process(source.toFile, dir.toFile)
+
+      paths must be equalTo Seq("feed.xml", "pages/index.html")
+      new String(Files.readAllBytes(dir.resolve("pages/index.html")), UTF_8) must be equalTo "<html> <body> </body> </html>"
+      new String(Files.readAllBytes(dir.resolve("feed.xml")), UTF_8) must be equalTo "<feed><entry/></feed>"
+      new String(Files.readAllBytes(dir.resolve("app.js")), UTF_8) must be equalTo "var  a = 1;"
+      Helper.gunzip(ByteString(Files.readAllBytes(dir.resolve("feed.xml.gz")))).utf8String must be equalTo "<feed><entry/></feed>"
+      new String(Files.readAllBytes(dir.resolve(AssetPrecompressor.ManifestName)), UTF_8) must be equalTo "feed.xml\npages/index.html\n"
+      new String(Files.readAllBytes(source.resolve("pages/index.html")), UTF_8) must be equalTo "<html>  <body>  <!-- c --> </body> </html>"
+      Files.exists(source.resolve(AssetPrecompressor.ManifestName)) must beFalse
+    }
+  }
+
+  "The precompressed assets" should {
+    "match only the paths under the assets route" in {
+      val assets = new PrecompressedAssets(Set("pages/index.html"), "/assets/")
+
+      assets.contains("/assets/pages/index.html") must beTrue
+      assets.contains("/pages/index.html") must beFalse
+      assets.contains("/blog/pages/index.html") must beFalse
+      assets.contains("/assets/index.html") must beFalse
+      assets.contains("/assets/other/index.html") must beFalse
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.googlecode.htmlcompressor.compressor.{ Compressor, HtmlCompressor }
+import com.mohiva.play.htmlcompressor.HTMLCompressorFilter
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.CachingCompressor]] class.
+ */
+class CachingCompressorSpec extends Specification {
+
+  "The caching compressor" should {
+    "compress identical inputs only once" in new Context {
+      val compressor = new CachingCompressor(delegate, new CompressionCache(1024), "settings", metrics)
+
+      compressor.compress("var a = 1;") must be equalTo "var a=1;"
+      compressor.compress("var a = 1;") must be equalTo "var a=1;"
+      calls.get must be equalTo 1
+      metrics.inlineHits must be equalTo 1
+      metrics.inlineMisses must be equalTo 1
+      metrics.inlineHitRate must be equalTo 0.5
+    }
+
+    "record the evicted outputs" in new Context {
+      val compressor = new CachingCompressor(delegate, new CompressionCache(10), "settings", metrics)
+
+      compressor.compress("var a = 1;")
+      compressor.compress("var b = 2;")
+
+      metrics.inlineEvictions must be equalTo 1
+    }
+  }
+
+  "The inline cache of the HTML compressor" should {
+    "compress the inline scripts of identical pages only once" in new Context {
+      val template = new HtmlCompressor()
+      template.setCompressJavaScript(true)
+      template.setJavaScriptCompressor(delegate)
+      val compressor = HTMLCompressorFilter.withInlineCache(template, new CompressionCache(1024), metrics)
+      val page = "<html> <script> var a = 1; </script> </html>"
+
+      compressor.compress(page) must be equalTo "<html> <script>var a=1;</script> </html>"
+      compressor.compress(page) must be equalTo "<html> <script>var a=1;</script> </html>"
+      calls.get must be equalTo 1
+    }
+
+    "cache the output of the YUI compressors" in new Context {
+      val template = new HtmlCompressor()
+      template.setCompressJavaScript(true)
+      template.setCompressCss(true)
+      val uncached = new HtmlCompressor()
+      uncached.setCompressJavaScript(true)
+      uncached.setCompressCss(true)
+      val compressor = HTMLCompressorFilter.withInlineCache(template, new CompressionCache(1024), metrics)
+      val page = "<html> <style> p  { color : red ; } </style> <script> var a = 1 ; function f ( ) { return a ; } </script> </html>"
+      val expected = "<html> <style>p{color:red}</style> <script>var a=1;function f(){return a};</script> </html>"
+
+      uncached.compress(page) must be equalTo expected
+      compressor.compress(page) must be equalTo expected
+      compressor.compress(page) must be equalTo expected
+      compressor.getJavaScriptCompressor must beAnInstanceOf[CachingCompressor]
+      compressor.getCssCompressor must beAnInstanceOf[CachingCompressor]
+      metrics.inlineMisses must be equalTo 2
+      metrics.inlineHits must be equalTo 2
+    }
+
+    "wrap the inline compressors only once" in new Context {
+      val template = new HtmlCompressor()
+      template.setCompressJavaScript(true)
+      template.setJavaScriptCompressor(delegate)
+      val cache = new CompressionCache(1024)
+      val compressor = HTMLCompressorFilter.withInlineCache(HTMLCompressorFilter.withInlineCache(template, cache, metrics), cache, metrics)
+
+      compressor.getJavaScriptCompressor must beLike {
+        case c: CachingCompressor => c.delegate must be(delegate)
+      }
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * The number of inputs the delegate has compressed.
+     */
+    val calls = new AtomicInteger(0)
+
+    /**
+     * A compressor which removes all spaces and counts its calls.
+     */
+    val delegate = new Compressor {
+      override def compress(source: String): String = {
+        calls.incrementAndGet()
+        source.replaceAll("\\s+", "").replace("var", "var ")
+      }
+    }
+
+    /**
+     * The metrics.
+     */
+    val metrics = new InMemoryCompressorMetrics
+  }
+}
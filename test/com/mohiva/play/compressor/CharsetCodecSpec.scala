@@ -0,0 +1,57 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import akka.util.ByteString
+import org.specs2.mutable._
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.CharsetCodec]] class.
+ */
+class CharsetCodecSpec extends Specification {
+
+  "The codec" should {
+    "decode and trim bytes" in {
+      val codec = CharsetCodec("utf-8")
+
+      codec.decode(ByteString("\n  <p>äöü €</p>  \n", "utf-8")) must be equalTo "<p>äöü €</p>"
+    }
+
+    "decode bytes which consist of multiple buffers" in {
+      val codec = CharsetCodec("utf-8")
+      val bytes = ByteString("<p>äöü €</p>", "utf-8").grouped(1).reduce(_ ++ _)
+
+      codec.decode(bytes) must be equalTo "<p>äöü €</p>"
+    }
+
+    "encode a string" in {
+      val codec = CharsetCodec("utf-8")
+
+      codec.encode("<p>äöü €</p>") must be equalTo ByteString("<p>äöü €</p>", "utf-8")
+    }
+
+    "reuse its buffers for subsequent calls" in {
+      val codec = CharsetCodec("iso-8859-1")
+
+      codec.encode("<p>long paragraph</p>") must be equalTo ByteString("<p>long paragraph</p>", "iso-8859-1")
+      codec.encode("<p>a</p>") must be equalTo ByteString("<p>a</p>", "iso-8859-1")
+      codec.decode(ByteString("<p>long paragraph</p>", "iso-8859-1")) must be equalTo "<p>long paragraph</p>"
+      codec.decode(ByteString("<p>a</p>", "iso-8859-1")) must be equalTo "<p>a</p>"
+    }
+
+    "handle bodies which are larger than the pooled buffers" in {
+      val codec = CharsetCodec("utf-8")
+      val string = "a" * (CharsetCodec.MaxPooledSize + 1)
+
+      codec.decode(codec.encode(string)) must be equalTo string
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import akka.util.ByteString
+import org.specs2.mutable._
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.CompressionCache]] class.
+ */
+class CompressionCacheSpec extends Specification {
+
+  "The cache" should {
+    "count hits and misses" in {
+      val cache = new CompressionCache(100)
+      val key = CacheKey("settings", ByteString("<p> a </p>"))
+
+      cache.get(key) must beNone
+      cache.put(key, ByteString("<p>a</p>"))
+      cache.get(key) must beSome(ByteString("<p>a</p>"))
+      cache.hits must be equalTo 1
+      cache.misses must be equalTo 1
+    }
+
+    "distinguish between compressor settings" in {
+      val cache = new CompressionCache(100)
+      cache.put(CacheKey("a", ByteString("<p> a </p>")), ByteString("<p>a</p>"))
+
+      cache.get(CacheKey("b", ByteString("<p> a </p>"))) must beNone
+    }
+
+    "distinguish between inputs by their SHA-256 digest" in {
+      val cache = new CompressionCache(100)
+      val key = CacheKey("settings", ByteString("ab") ++ ByteString("c"))
+      cache.put(key, ByteString("abc"))
+
+      CacheKey.hex(key.digest) must be equalTo "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"
+      cache.get(CacheKey("settings", ByteString("abc"))) must beSome(ByteString("abc"))
+      cache.get(CacheKey("settings", ByteString("abd"))) must beNone
+    }
+
+    "evict the least recently used outputs if it gets too large" in {
+      val cache = new CompressionCache(10)
+      val keys = (1 to 3).map(i => CacheKey("settings", ByteString(i.toString)))
+      cache.put(keys(0), ByteString("1111"))
+      cache.put(keys(1), ByteString("2222"))
+      cache.get(keys(0))
+      cache.put(keys(2), ByteString("3333"))
+
+      cache.get(keys(0)) must beSome
+      cache.get(keys(1)) must beNone
+      cache.get(keys(2)) must beSome
+      cache.bytes must be equalTo 8
+      cache.evictions must be equalTo 1
+    }
+
+    "derive distinct entity tags for distinct representations" in {
+      val key = CacheKey("settings", ByteString("<p> a </p>"))
+
+      key.entityTag(None) must be equalTo CacheKey("settings", ByteString("<p> a </p>")).entityTag(None)
+      key.entityTag(None) must not be equalTo(CacheKey("other", ByteString("<p> a </p>")).entityTag(None))
+      key.entityTag(None) must not be equalTo(key.entityTag(Some("gzip")))
+      key.entityTag(None) must beMatching("\"[0-9a-f]{64}\"")
+      key.entityTag(Some("gzip")) must beMatching("\"[0-9a-f]{64}-gzip\"")
+    }
+
+    "not cache outputs which are larger than the cache" in {
+      val cache = new CompressionCache(2)
+      cache.put(CacheKey("settings", ByteString("a")), ByteString("aaa"))
+
+      cache.size must be equalTo 0
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import akka.actor.ActorSystem
+import akka.stream.{ ActorMaterializer, Materializer }
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+import scala.concurrent.duration._
+import scala.concurrent.{ Await, Promise }
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.CompressionExecutor]] class.
+ */
+class CompressionExecutorSpec extends Specification {
+
+  "The executor" should {
+    "skip the compressions which exceed the maximum if the overload policy is skip" in new Context {
+      val executor = new CompressionExecutor(Dispatcher, 1, OverloadPolicy.Skip, 1)
+      val first = executor.execute(Await.result(blocker.future, 5.seconds), "skipped")
+
+      Await.result(executor.execute("compressed", "skipped"), 5.seconds) must be equalTo "skipped"
+      blocker.success("compressed")
+      Await.result(first, 5.seconds) must be equalTo "compressed"
+    }
+
+    "let the compressions which exceed the maximum wait if the overload policy is backpressure" in new Context {
+      val executor = new CompressionExecutor(Dispatcher, 1, OverloadPolicy.Backpressure, 1)
+      val caller = Thread.currentThread
+      val first = executor.execute(Await.result(blocker.future, 5.seconds), "skipped")
+      val second = executor.execute(if (Thread.currentThread == caller) "caller" else "dispatcher", "skipped")
+
+      second.isCompleted must beFalse
+      executor.waitingCompressions must be equalTo 1
+      blocker.success("compressed")
+      Await.result(first, 5.seconds) must be equalTo "compressed"
+      Await.result(second, 5.seconds) must be equalTo "dispatcher"
+      executor.waitingCompressions must be equalTo 0
+    }
+
+    "skip the compressions which exceed the maximum number of waiting compressions" in new Context {
+      val executor = new CompressionExecutor(Dispatcher, 1, OverloadPolicy.Backpressure, 1)
+      val first = executor.execute(Await.result(blocker.future, 5.seconds), "skipped")
+      val second = executor.execute("compressed", "skipped")
+
+      Await.result(executor.execute("compressed", "skipped"), 5.seconds) must be equalTo "skipped"
+      blocker.success("compressed")
+      Await.result(second, 5.seconds) must be equalTo "compressed"
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope with After {
+
+    /**
+     * The dispatcher to run the compressions on.
+     */
+    val Dispatcher = "akka.actor.default-dispatcher"
+
+    /**
+     * The actor system.
+     */
+    val system = ActorSystem("compression-executor")
+
+    /**
+     * The materializer.
+     */
+    implicit val mat: Materializer = ActorMaterializer()(system)
+
+    /**
+     * Completes the compression which blocks the only slot of the executor.
+     */
+    val blocker = Promise[String]()
+
+    /**
+     * Terminates the actor system.
+     */
+    def after = system.terminate()
+  }
+}
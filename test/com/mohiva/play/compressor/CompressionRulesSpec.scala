@@ -0,0 +1,123 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+import play.api.Configuration
+import play.api.mvc.{ Result, Results }
+import play.api.routing.{ HandlerDef, Router }
+import play.api.test.FakeRequest
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.CompressionRules]] class.
+ */
+class CompressionRulesSpec extends Specification {
+
+  "The rules" should {
+    "match literal paths" in new Context {
+      val rules = new CompressionRules(Seq(CompressionRule(RuleAction.Exclude, paths = Seq("/api"))))
+
+      rules.excludes(FakeRequest("GET", "/api"), html) must beTrue
+      rules.excludes(FakeRequest("GET", "/api/users"), html) must beFalse
+      rules.excludes(FakeRequest("GET", "/ap"), html) must beFalse
+    }
+
+    "match path prefixes" in new Context {
+      val rules = new CompressionRules(Seq(CompressionRule(RuleAction.Exclude, paths = Seq("/api/*"))))
+
+      rules.excludes(FakeRequest("GET", "/api/"), html) must beTrue
+      rules.excludes(FakeRequest("GET", "/api/users/1"), html) must beTrue
+      rules.excludes(FakeRequest("GET", "/apis"), html) must beFalse
+    }
+
+    "match paths with inner wildcards" in new Context {
+      val rules = new CompressionRules(Seq(CompressionRule(RuleAction.Exclude, paths = Seq("/users/*/fragment"))))
+
+      rules.excludes(FakeRequest("GET", "/users/1/fragment"), html) must beTrue
+      rules.excludes(FakeRequest("GET", "/users/1/fragment/2"), html) must beFalse
+      rules.excludes(FakeRequest("GET", "/users/1.2"), html) must beFalse
+    }
+
+    "match methods, content types and route modifiers" in new Context {
+      val rules = new CompressionRules(Seq(
+        CompressionRule(RuleAction.Exclude, methods = Seq("post")),
+        CompressionRule(RuleAction.Exclude, contentTypes = Seq("application/*")),
+        CompressionRule(RuleAction.Exclude, tags = Seq("nocompress"))
+      ))
+
+      rules.excludes(FakeRequest("POST", "/"), html) must beTrue
+      rules.excludes(FakeRequest("GET", "/"), Results.Ok("").as("application/json; charset=utf-8")) must beTrue
+      rules.excludes(FakeRequest("GET", "/").addAttr(Router.Attrs.HandlerDef, handlerDef("nocompress")), html) must beTrue
+      rules.excludes(FakeRequest("GET", "/").addAttr(Router.Attrs.HandlerDef, handlerDef("nocsrf")), html) must beFalse
+      rules.excludes(FakeRequest("GET", "/"), html) must beFalse
+    }
+
+    "require all conditions of a rule to match" in new Context {
+      val rules = new CompressionRules(Seq(CompressionRule(RuleAction.Exclude, paths = Seq("/api/*"), methods = Seq("POST"))))
+
+      rules.excludes(FakeRequest("POST", "/api/users"), html) must beTrue
+      rules.excludes(FakeRequest("GET", "/api/users"), html) must beFalse
+      rules.excludes(FakeRequest("POST", "/users"), html) must beFalse
+    }
+
+    "let the first matching rule decide" in new Context {
+      val rules = new CompressionRules(Seq(
+        CompressionRule(RuleAction.Include, paths = Seq("/api/pages/*")),
+        CompressionRule(RuleAction.Exclude, paths = Seq("/api/*"))
+      ))
+
+      rules.action(FakeRequest("GET", "/api/pages/1"), html) must beSome(RuleAction.Include)
+      rules.action(FakeRequest("GET", "/api/users"), html) must beSome(RuleAction.Exclude)
+      rules.action(FakeRequest("GET", "/users"), html) must beNone
+    }
+
+    "be read from the configuration" in new Context {
+      val rules = CompressionRules.fromConfiguration(Configuration(
+        "play.filters.compressor.rules" -> Seq(
+          Map("action" -> "include", "paths" -> Seq("/api/pages/*")),
+          Map("paths" -> Seq("/api/*"), "methods" -> Seq("GET"))
+        )
+      ))
+
+      rules.rules must be equalTo Seq(
+        CompressionRule(RuleAction.Include, paths = Seq("/api/pages/*")),
+        CompressionRule(RuleAction.Exclude, paths = Seq("/api/*"), methods = Seq("GET"))
+      )
+    }
+
+    "report an unknown action" in new Context {
+      CompressionRules.fromConfiguration(Configuration(
+        "play.filters.compressor.rules" -> Seq(Map("action" -> "skip"))
+      )) must throwA[play.api.PlayException]
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * An HTML result.
+     */
+    val html: Result = Results.Ok("<p> a </p>").as("text/html; charset=utf-8")
+
+    /**
+     * Creates the definition of a route with the given modifiers.
+     *
+     * @param modifiers The route modifiers.
+     * @return The route definition.
+     */
+    def handlerDef(modifiers: String*) = HandlerDef(
+      getClass.getClassLoader, "router", "Controller", "action", Nil, "GET", "/", "", modifiers)
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import org.specs2.mutable._
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.InMemoryCompressorMetrics]] class.
+ */
+class CompressorMetricsSpec extends Specification {
+
+  "The histogram" should {
+    "record the count, the sum and the maximum" in {
+      val histogram = new Histogram
+      Seq(1L, 10L, 100L).foreach(histogram.record)
+
+      histogram.count must be equalTo 3
+      histogram.sum must be equalTo 111
+      histogram.max must be equalTo 100
+      histogram.mean must be equalTo 37.0
+    }
+
+    "estimate the percentiles within a factor of two" in {
+      val histogram = new Histogram
+      (1L to 1000L).foreach(histogram.record)
+
+      histogram.percentile(0.5) must beBetween(500L, 1000L)
+      histogram.percentile(1.0) must be equalTo 1000
+    }
+
+    "return 0 for the percentiles if nothing was recorded" in {
+      new Histogram().percentile(0.99) must be equalTo 0
+    }
+  }
+
+  "The in-memory metrics" should {
+    "record the compressions" in {
+      val metrics = new InMemoryCompressorMetrics
+      metrics.compressed(1000, 100, 60)
+      metrics.compressed(3000, 200, 150)
+
+      metrics.latency.count must be equalTo 2
+      metrics.inputSize.sum must be equalTo 300
+      metrics.outputSize.sum must be equalTo 210
+      metrics.bytesSaved must be equalTo 90
+    }
+
+    "count the skipped results per reason" in {
+      val metrics = new InMemoryCompressorMetrics
+      metrics.skipped(SkipReason.Encoded)
+      metrics.skipped(SkipReason.Encoded)
+      metrics.skipped(SkipReason.ContentType)
+
+      metrics.skips(SkipReason.Encoded) must be equalTo 2
+      metrics.skips(SkipReason.ContentType) must be equalTo 1
+      metrics.skips(SkipReason.Chunked) must be equalTo 0
+    }
+
+    "count the failures" in {
+      val metrics = new InMemoryCompressorMetrics
+      metrics.failed(new RuntimeException)
+
+      metrics.failures must be equalTo 1
+    }
+  }
+}
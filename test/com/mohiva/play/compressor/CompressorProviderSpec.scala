@@ -0,0 +1,159 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import com.googlecode.htmlcompressor.compressor.{ Compressor, HtmlCompressor }
+import com.mohiva.play.htmlcompressor.DefaultHTMLCompressorFilter
+import org.specs2.mutable._
+import play.api.{ Configuration, Environment }
+
+import scala.concurrent.duration._
+import scala.concurrent.{ Await, Future, Promise }
+import scala.concurrent.ExecutionContext.Implicits.global
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.CompressorProvider]] class.
+ */
+class CompressorProviderSpec extends Specification {
+
+  /**
+   * The configuration of the compressors.
+   */
+  val configuration = Configuration("play.filters.compressor.html.removeIntertagSpaces" -> true)
+
+  /**
+   * The settings of the compressors.
+   */
+  val settings = DefaultHTMLCompressorFilter.settings(configuration, Environment.simple())
+
+  /**
+   * Creates the template compressor.
+   *
+   * @return The template compressor.
+   */
+  def template = {
+    val c = new HtmlCompressor()
+    c.setRemoveIntertagSpaces(true)
+    c.setRemoveQuotes(true)
+    c
+  }
+
+  /**
+   * Creates a pooled provider with a single compressor.
+   *
+   * @param timeout How long to wait for the compressor if it's in use.
+   * @param shared The compressor which gets used if the compressor isn't returned in time.
+   * @return The provider.
+   */
+  def pool(timeout: FiniteDuration, shared: Compressor) = {
+    new PooledCompressorProvider[Compressor](() => template, 1, timeout, new SharedCompressorProvider(shared))
+  }
+
+  /**
+   * Holds the compressor of a provider until the returned promise gets completed.
+   *
+   * @param provider The provider.
+   * @return The held compressor and the promise which releases it.
+   */
+  def hold(provider: CompressorProvider[Compressor]) = {
+    val borrowed = Promise[Compressor]()
+    val release = Promise[Unit]()
+    Future(provider.withCompressor { c =>
+      borrowed.success(c)
+      Await.result(release.future, 10.seconds)
+    })
+    (Await.result(borrowed.future, 10.seconds), release)
+  }
+
+  "The settings" should {
+    "create complete compressors" in {
+      val first = settings.create()
+      val second = settings.create()
+
+      second must not be first
+      CompressorSettings.fingerprint(second) must be equalTo CompressorSettings.fingerprint(first)
+      first must beLike { case c: HtmlCompressor => c.isRemoveIntertagSpaces must beTrue }
+    }
+  }
+
+  "The thread-local provider" should {
+    "provide an own compressor for every thread" in {
+      val provider = CompressorProvider.fromConfiguration(Configuration.empty, settings.create(), Some(() => settings.create()))
+      val compressors = Await.result(Future.sequence((1 to 4).map { _ =>
+        Future(provider.withCompressor(c => (Thread.currentThread, c)))
+      }), 10.seconds)
+
+      provider must beAnInstanceOf[ThreadLocalCompressorProvider[_]]
+      compressors.groupBy(_._1).values.forall(_.map(_._2).distinct.size == 1) must beTrue
+      provider.compress("<div> <p class=\"a\"> a </p> </div>") must be equalTo "<div><p class=\"a\"> a </p></div>"
+    }
+  }
+
+  "The pooled provider" should {
+    "reuse the returned compressors" in {
+      val config = configuration ++ Configuration("play.filters.compressor.provider.type" -> "pool")
+      val provider = CompressorProvider.fromConfiguration(config, settings.create(), Some(() => settings.create()))
+      val first = provider.withCompressor(identity)
+      val second = provider.withCompressor(identity)
+
+      provider must beAnInstanceOf[PooledCompressorProvider[_]]
+      second must be(first)
+    }
+
+    "create no more compressors than the pool size and use the shared compressor instead" in {
+      val shared = template
+      val provider = pool(10.millis, shared)
+      val (held, release) = hold(provider)
+
+      provider.withCompressor(identity) must be(shared)
+      provider.compressorCount must be equalTo 1
+      release.success(())
+      Await.result(Future(provider.withCompressor(identity)), 10.seconds) must be(held)
+    }
+
+    "wait for a compressor which gets returned in time" in {
+      val shared = template
+      val provider = pool(10.seconds, shared)
+      val (held, release) = hold(provider)
+      Future {
+        Thread.sleep(100)
+        release.success(())
+      }
+
+      provider.withCompressor(identity) must be(held)
+      provider.compressorCount must be equalTo 1
+    }
+  }
+
+  "The provider" should {
+    "share the compressor if its settings aren't known" in {
+      val compressor = template
+      val provider = CompressorProvider.fromConfiguration(Configuration.empty, compressor, None)
+
+      provider must beAnInstanceOf[SharedCompressorProvider[_]]
+      provider.withCompressor(identity) must be(compressor)
+    }
+
+    "reject unknown provider types" in {
+      CompressorProvider.fromConfiguration(
+        Configuration("play.filters.compressor.provider.type" -> "unknown"), template, None
+      ) must throwA[Exception]
+    }
+
+    "reject a pool without compressors" in {
+      CompressorProvider.fromConfiguration(
+        Configuration("play.filters.compressor.provider.type" -> "pool", "play.filters.compressor.provider.poolSize" -> 0),
+        template,
+        None
+      ) must throwA[Exception]("Invalid pool size")
+    }
+  }
+}
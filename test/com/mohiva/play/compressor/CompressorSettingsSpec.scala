@@ -0,0 +1,99 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.regex.Pattern
+
+import com.googlecode.htmlcompressor.compressor.{ Compressor, HtmlCompressor }
+import org.specs2.mutable._
+
+import scala.beans.BeanProperty
+import scala.collection.JavaConverters._
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.CompressorSettings]] object.
+ */
+class CompressorSettingsSpec extends Specification {
+
+  /**
+   * Creates a compressor with the given script compressor.
+   *
+   * @param prefix The `prefix` setting of the script compressor.
+   * @return The compressor.
+   */
+  def withScriptCompressor(prefix: String) = {
+    val js = new PrefixCompressor()
+    js.setPrefix(prefix)
+    val c = new HtmlCompressor()
+    c.setJavaScriptCompressor(js)
+    c
+  }
+
+  /**
+   * Creates a compressor with the given preserve patterns.
+   *
+   * @param patterns The preserve patterns.
+   * @return The compressor.
+   */
+  def withPreservePatterns(patterns: String*) = {
+    val c = new HtmlCompressor()
+    c.setPreservePatterns(patterns.map(Pattern.compile).asJava)
+    c
+  }
+
+  "The fingerprint" should {
+    "distinguish between the settings of the nested compressors" in {
+      val fingerprint = CompressorSettings.fingerprint(withScriptCompressor("a"))
+
+      fingerprint must be equalTo CompressorSettings.fingerprint(withScriptCompressor("a"))
+      fingerprint must not be equalTo(CompressorSettings.fingerprint(withScriptCompressor("b")))
+      fingerprint must not be equalTo(CompressorSettings.fingerprint(new HtmlCompressor()))
+    }
+
+    "distinguish between the preserve patterns" in {
+      val fingerprint = CompressorSettings.fingerprint(withPreservePatterns("<\\?php.*?\\?>"))
+
+      fingerprint must be equalTo CompressorSettings.fingerprint(withPreservePatterns("<\\?php.*?\\?>"))
+      fingerprint must not be equalTo(CompressorSettings.fingerprint(withPreservePatterns("<%.*?%>")))
+      fingerprint must not be equalTo(CompressorSettings.fingerprint(new HtmlCompressor()))
+    }
+
+    "fingerprint a caching compressor by its underlying compressor" in {
+      val css = new PrefixCompressor()
+      css.setPrefix("a")
+      val cached = new CachingCompressor(css, new CompressionCache(100), "style", new InMemoryCompressorMetrics)
+
+      CompressorSettings.fingerprint(cached) must be equalTo CompressorSettings.fingerprint(css)
+    }
+
+    "not depend on the statistics of the last compression" in {
+      val c = new HtmlCompressor()
+      c.setGenerateStatistics(true)
+      val fingerprint = CompressorSettings.fingerprint(c)
+      c.compress("<p> a </p>")
+
+      CompressorSettings.fingerprint(c) must be equalTo fingerprint
+    }
+  }
+}
+
+/**
+ * A compressor with a setting, which prepends its prefix to the input.
+ */
+class PrefixCompressor extends Compressor {
+
+  /**
+   * The prefix to prepend.
+   */
+  @BeanProperty var prefix: String = ""
+
+  override def compress(source: String): String = prefix + source
+}
@@ -0,0 +1,89 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+import play.api.{ Configuration, PlayException }
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.CompressorWarmup]] class.
+ */
+class CompressorWarmupSpec extends Specification {
+
+  "The warm-up" should {
+    "compress every document the given number of times" in new Context {
+      val documents = ArrayBuffer[String]()
+      new CompressorWarmup(3, Seq("a", "b")).run(documents += _)
+
+      documents.toList must be equalTo List("a", "b", "a", "b", "a", "b")
+    }
+
+    "not be created if it isn't enabled" in new Context {
+      CompressorWarmup.fromConfiguration(Configuration.empty, "html", "sample", classLoader) must beNone
+    }
+
+    "compress the sample if no documents are configured" in new Context {
+      val warmup = CompressorWarmup.fromConfiguration(configuration(), "html", "sample", classLoader)
+
+      warmup.map(_.iterations) must beSome(50)
+      warmup.map(_.documents) must beSome(Seq("sample"))
+    }
+
+    "load the documents from files and classpath resources" in new Context {
+      val file = Files.createTempFile("warmup", ".html")
+      Files.write(file, "<p> file </p>".getBytes(StandardCharsets.UTF_8))
+      val warmup = CompressorWarmup.fromConfiguration(
+        configuration("html" -> Seq(file.toString, "static.html"), "iterations" -> 2), "html", "sample", classLoader)
+
+      warmup.map(_.iterations) must beSome(2)
+      warmup.map(_.documents.head) must beSome("<p> file </p>")
+      warmup.map(_.documents.last) must beSome(contain("<!DOCTYPE html>"))
+    }
+
+    "report an unknown document" in new Context {
+      CompressorWarmup.fromConfiguration(configuration("xml" -> Seq("unknown.xml")), "xml", "sample", classLoader) must
+        throwA[PlayException]("Unknown warm-up document `unknown.xml`")
+    }
+
+    "report invalid iterations" in new Context {
+      CompressorWarmup.fromConfiguration(configuration("iterations" -> 0), "html", "sample", classLoader) must
+        throwA[PlayException]("Invalid iterations `0`")
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * The class loader which loads the test resources.
+     */
+    val classLoader = getClass.getClassLoader
+
+    /**
+     * Creates a configuration which enables the warm-up.
+     *
+     * @param settings The settings of the warm-up.
+     * @return The configuration.
+     */
+    def configuration(settings: (String, Any)*): Configuration = Configuration(
+      ("play.filters.compressor.warmup.enabled" -> true) +:
+        settings.map { case (key, value) => s"play.filters.compressor.warmup.$key" -> value }: _*
+    )
+  }
+}
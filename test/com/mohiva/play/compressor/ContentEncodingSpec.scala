@@ -0,0 +1,60 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import akka.util.ByteString
+import com.mohiva.play.compressor.ContentEncoding.{ Deflate, Gzip, negotiate }
+import org.specs2.mutable._
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.ContentEncoding]] class.
+ */
+class ContentEncodingSpec extends Specification {
+
+  "The negotiation" should {
+    "select the preferred encoding if the client accepts several with the same quality" in {
+      negotiate(Seq("deflate, gzip"), ContentEncoding.values) must beSome[ContentEncoding](Gzip)
+    }
+
+    "select the encoding with the highest quality" in {
+      negotiate(Seq("gzip;q=0.2, deflate;q=0.8"), ContentEncoding.values) must beSome[ContentEncoding](Deflate)
+    }
+
+    "respect the wildcard and encodings which aren't acceptable" in {
+      negotiate(Seq("gzip;q=0, *"), ContentEncoding.values) must beSome[ContentEncoding](Deflate)
+    }
+
+    "select nothing if the client doesn't accept an offered encoding" in {
+      negotiate(Seq("br"), ContentEncoding.values) must beNone
+      negotiate(Seq(), ContentEncoding.values) must beNone
+    }
+  }
+
+  "The encoders" should {
+    val input = ByteString("<p>" + ("text " * 10000) + "</p>")
+
+    "write the gzip format" in {
+      Helper.gunzip(Gzip.encoder(6).encodeAll(input)) must be equalTo input
+    }
+
+    "write the zlib format" in {
+      Helper.inflate(Deflate.encoder(6).encodeAll(input)) must be equalTo input
+    }
+
+    "flush every part of a stream" in {
+      val encoder = Gzip.encoder(6)
+      val parts = input.grouped(1000).map(encoder.encode(_, flush = true)).toList :+ encoder.finish()
+
+      parts.forall(_.nonEmpty) must beTrue
+      Helper.gunzip(parts.reduce(_ ++ _)) must be equalTo input
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.io.RandomAccessFile
+import java.nio.file.Files
+
+import akka.util.ByteString
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.DiskCompressionCache]] class.
+ */
+class DiskCompressionCacheSpec extends Specification {
+
+  "The disk cache" should {
+    "count hits and misses" in new Context {
+      val cache = new DiskCompressionCache(file, 4096)
+
+      cache.get(keys(0)) must beNone
+      cache.put(keys(0), output(0))
+      cache.get(keys(0)) must beSome(output(0))
+      cache.hits must be equalTo 1
+      cache.misses must be equalTo 1
+      cache.close()
+    }
+
+    "keep the outputs when it gets reopened" in new Context {
+      val cache = new DiskCompressionCache(file, 4096)
+      (0 until 3).foreach(i => cache.put(keys(i), output(i)))
+      cache.close()
+      val reopened = new DiskCompressionCache(file, 4096)
+
+      (0 until 3).map(i => reopened.get(keys(i))) must be equalTo (0 until 3).map(i => Some(output(i)))
+      reopened.bytes must be equalTo cache.bytes
+      reopened.close()
+    }
+
+    "evict the oldest outputs when it wraps around" in new Context {
+      val cache = new DiskCompressionCache(file, 4096)
+      (0 until 12).foreach(i => cache.put(keys(i), output(i)))
+      val cached = (0 until 12).map(i => cache.get(keys(i)).isDefined)
+      cache.close()
+      val reopened = new DiskCompressionCache(file, 4096)
+
+      cache.evictions must be equalTo 1
+      cache.bytes must be lessThanOrEqualTo 4096L - DiskCompressionCache.DataStart
+      (0 until 12).map(i => reopened.get(keys(i)).isDefined) must be equalTo cached
+      reopened.get(keys(11)) must beSome(output(11))
+      reopened.get(keys(0)) must beNone
+      reopened.close()
+    }
+
+    "discard an output which was only partially written" in new Context {
+      val cache = new DiskCompressionCache(file, 4096)
+      (0 until 2).foreach(i => cache.put(keys(i), output(i)))
+      cache.close()
+      val second = DiskCompressionCache.DataStart + DiskCompressionCache.RecordHeaderSize + "settings".length + 276
+      val raf = new RandomAccessFile(file.toFile, "rw")
+      raf.seek(second + 100L)
+      raf.write('x')
+      raf.close()
+      val reopened = new DiskCompressionCache(file, 4096)
+
+      reopened.get(keys(0)) must beSome(output(0))
+      reopened.get(keys(1)) must beNone
+      reopened.put(keys(2), output(2))
+      reopened.get(keys(2)) must beSome(output(2))
+      reopened.close()
+    }
+
+    "start empty if it gets reopened with another size" in new Context {
+      val cache = new DiskCompressionCache(file, 4096)
+      cache.put(keys(0), output(0))
+      cache.close()
+      val reopened = new DiskCompressionCache(file, 8192)
+
+      reopened.size must be equalTo 0
+      reopened.close()
+    }
+
+    "not be opened twice" in new Context {
+      val cache = new DiskCompressionCache(file, 4096)
+
+      new DiskCompressionCache(file, 4096) must throwA[java.io.IOException]
+      cache.close()
+    }
+
+    "be shared by the users which open the same file" in new Context {
+      val cache = DiskCompressionCache.open(file, 4096)
+      DiskCompressionCache.open(file.getParent.resolve("./cache"), 4096) must be(cache)
+      DiskCompressionCache.open(file, 8192) must throwA[java.io.IOException]("already open")
+      DiskCompressionCache.release(cache)
+      cache.put(keys(0), output(0))
+      DiskCompressionCache.release(cache)
+
+      val reopened = new DiskCompressionCache(file, 4096)
+      reopened.get(keys(0)) must beSome(output(0))
+      reopened.close()
+    }
+
+    "not cache outputs which are larger than the cache" in new Context {
+      val cache = new DiskCompressionCache(file, 4096)
+      cache.put(keys(0), ByteString("a" * 4096))
+
+      cache.size must be equalTo 0
+      cache.close()
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * The cache file.
+     */
+    val file = Files.createTempDirectory("cache").resolve("cache")
+
+    /**
+     * The keys of the outputs.
+     */
+    val keys = (0 until 12).map(i => CacheKey("settings", ByteString(s"<p> $i </p>")))
+
+    /**
+     * Gets an output of 276 bytes.
+     *
+     * @param i The number of the output.
+     * @return The output.
+     */
+    def output(i: Int) = ByteString(s"<p>$i</p>".padTo(276, ' '))
+  }
+}
@@ -11,7 +11,7 @@
 package com.mohiva.play.compressor
 
 import java.io.ByteArrayInputStream
-import java.util.zip.GZIPInputStream
+import java.util.zip.{ GZIPInputStream, InflaterInputStream }
 
 import akka.util.ByteString
 import org.apache.commons.io.IOUtils
@@ -30,4 +30,14 @@ object Helper {
   def gunzip(data: ByteString): ByteString = {
     ByteString(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(data.toArray))))
   }
+
+  /**
+   * A helper function which inflates a deflated byte array.
+   *
+   * @param data The data to inflate.
+   * @return The inflated data.
+   */
+  def inflate(data: ByteString): ByteString = {
+    ByteString(IOUtils.toByteArray(new InflaterInputStream(new ByteArrayInputStream(data.toArray))))
+  }
 }
@@ -0,0 +1,113 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import java.util.concurrent.atomic.AtomicLong
+
+import akka.actor.ActorSystem
+import akka.stream.{ ActorMaterializer, Materializer }
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+import scala.concurrent.Await
+import scala.concurrent.duration._
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.MemoryBudget]] class.
+ */
+class MemoryBudgetSpec extends Specification {
+
+  "The memory budget" should {
+    "reserve bytes as long as they fit into the budget" in new Context {
+      budget.tryAcquire(60) must beTrue
+      budget.tryAcquire(40) must beTrue
+      budget.tryAcquire(1) must beFalse
+
+      budget.used must be equalTo 100
+    }
+
+    "release bytes" in new Context {
+      budget.tryAcquire(100) must beTrue
+      budget.release(30)
+
+      budget.used must be equalTo 70
+      budget.tryAcquire(30) must beTrue
+    }
+
+    "not reserve bytes which never fit into the budget" in new Context {
+      budget.tryAcquire(101) must beFalse
+
+      budget.used must be equalTo 0
+    }
+
+    "share the counter of the bytes in flight" in new Context {
+      val other = new MemoryBudget(200, 0, inFlight)
+      other.tryAcquire(150) must beTrue
+
+      budget.tryAcquire(1) must beFalse
+    }
+
+    "wait until other bodies release their bytes" in new WithMaterializer {
+      val waiting = new MemoryBudget(100, 1.second.toNanos, inFlight)
+      waiting.tryAcquire(80) must beTrue
+      val acquired = waiting.acquire(40, waiting.deadline)
+      waiting.release(80)
+
+      Await.result(acquired, 5.seconds) must beTrue
+      waiting.used must be equalTo 40
+    }
+
+    "give up waiting at the deadline" in new WithMaterializer {
+      val waiting = new MemoryBudget(100, 50.millis.toNanos, inFlight)
+      waiting.tryAcquire(80) must beTrue
+
+      Await.result(waiting.acquire(40, waiting.deadline), 5.seconds) must beFalse
+      waiting.used must be equalTo 80
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * The counter of the bytes in flight.
+     */
+    val inFlight = new AtomicLong(0)
+
+    /**
+     * A budget of 100 bytes, which doesn't wait.
+     */
+    val budget = new MemoryBudget(100, 0, inFlight)
+  }
+
+  /**
+   * A context which provides a materializer.
+   */
+  trait WithMaterializer extends Context with After {
+
+    /**
+     * The actor system.
+     */
+    val system = ActorSystem("memory-budget")
+
+    /**
+     * The materializer.
+     */
+    implicit val mat: Materializer = ActorMaterializer()(system)
+
+    /**
+     * Terminates the actor system.
+     */
+    def after = system.terminate()
+  }
+}
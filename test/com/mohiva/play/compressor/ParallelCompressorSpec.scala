@@ -0,0 +1,139 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import com.googlecode.htmlcompressor.compressor.{ Compressor, HtmlCompressor, XmlCompressor }
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Await
+import scala.concurrent.duration._
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.ParallelCompressor]] class.
+ */
+class ParallelCompressorSpec extends Specification {
+
+  "The parallel compressor" should {
+    "compress an HTML document in segments like the whole document" in new Context {
+      val compressor = new HtmlCompressor()
+
+      forall(1 to 40) { size =>
+        compressInParallel(html, size, compressor) must be equalTo compressor.compress(html)
+      }
+    }
+
+    "compress an HTML document in segments like the whole document if inter-tag spaces get removed" in new Context {
+      val compressor = new HtmlCompressor()
+      compressor.setRemoveIntertagSpaces(true)
+
+      forall(1 to 40) { size =>
+        compressInParallel(html, size, compressor) must be equalTo compressor.compress(html)
+      }
+    }
+
+    "compress an XML document in segments like the whole document" in new Context {
+      val compressor = new XmlCompressor()
+
+      forall(1 to 40) { size =>
+        compressInParallel(xml, size, compressor) must be equalTo compressor.compress(xml)
+      }
+    }
+
+    "compress a document as a whole if the compressor rewrites a tag depending on what follows it" in new Context {
+      val document = "<div> <p>a</p> <br/> <i>b</i> <br/> <p>c</p> <br/></div>"
+      val rewriting: String => String = _.replaceAll("\\s+", " ").replaceAll("/>(?=.)", ">")
+
+      forall(1 to 20) { size =>
+        Await.result(new ParallelCompressor(rewriting, 0, size).apply(document), 10.seconds) must be equalTo rewriting(document)
+      }
+    }
+
+    "cut a document only into segments of the minimum size" in new Context {
+      val segments = ParallelCompressor.split(html, 100)
+
+      segments.map(_._2).mkString must be equalTo html
+      segments.init.map(_._2.length) must contain(be_>=(100)).forall
+    }
+
+    "not cut a document inside preserved blocks" in new Context {
+      val segments = ParallelCompressor.split("<div> <pre> a  <b> b </b> </pre> <p>", 1)
+
+      segments must be equalTo List(
+        None -> "<div>",
+        Some("<div>") -> " <pre> a  <b> b </b> </pre>",
+        Some("</pre>") -> " <p>"
+      )
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * An HTML document which contains all kinds of blocks the compressor treats specially.
+     */
+    val html = """
+      <!DOCTYPE html>
+      <html>
+        <head>
+          <title>  Title  </title>
+          <!--[if IE]> <link rel="stylesheet"   href="http://example.com/ie.css"> <![endif]-->
+          <style>  p  { color: red; }  </style>
+          <script type="text/javascript">
+            var a = "<p>  </p>";
+          </script>
+        </head>
+        <body class = "main" >
+          <!-- A comment with <b> tags </b> -->
+          <p>Some   <b>bold</b>   text</p>
+          <pre>  preformatted
+              text  </pre>
+          <textarea>  some
+            text </textarea>
+          <a href="https://example.com/">  Link </a><br/><br />
+          <![CDATA[  cdata  <b>  ]]>
+        </body>
+      </html>
+    """
+
+    /**
+     * An XML document.
+     */
+    val xml = """
+      <?xml version="1.0"?>
+      <feed   xmlns="http://www.w3.org/2005/Atom">
+        <!-- A comment -->
+        <title>  Title  </title>
+        <entry><content type = "html"><![CDATA[  <p>  text  </p>  ]]></content></entry>
+        <entry>
+          <content>  text  </content>
+        </entry>
+      </feed>
+    """
+
+    /**
+     * Compresses a document in segments of the given size in parallel.
+     *
+     * @param document The document to compress.
+     * @param size The minimum size of the segments.
+     * @param compressor The compressor, which gets shared by the segments.
+     * @return The compressed document.
+     */
+    def compressInParallel(document: String, size: Int, compressor: Compressor): String = {
+      val provider = new SharedCompressorProvider(compressor)
+      Await.result(new ParallelCompressor(provider.compress, 0, size).apply(document), 10.seconds)
+    }
+  }
+}
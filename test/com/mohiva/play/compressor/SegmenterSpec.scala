@@ -0,0 +1,176 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import akka.util.ByteString
+import com.googlecode.htmlcompressor.compressor.{ HtmlCompressor, XmlCompressor }
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.Segmenter]] class.
+ */
+class SegmenterSpec extends Specification {
+
+  "The segmenter" should {
+    "compress an HTML document in pieces like the whole document" in new Context {
+      val compressor = new HtmlCompressor()
+
+      forall(1 to 40) { size =>
+        compressInPieces(html, size, compressor.compress) must be equalTo compressor.compress(html)
+      }
+    }
+
+    "compress an HTML document in pieces like the whole document if inter-tag spaces get removed" in new Context {
+      val compressor = new HtmlCompressor()
+      compressor.setRemoveIntertagSpaces(true)
+
+      forall(1 to 40) { size =>
+        compressInPieces(html, size, compressor.compress) must be equalTo compressor.compress(html)
+      }
+    }
+
+    "compress an HTML document in pieces like the whole document if line breaks get preserved" in new Context {
+      val compressor = new HtmlCompressor()
+      compressor.setPreserveLineBreaks(true)
+
+      forall(1 to 40) { size =>
+        compressInPieces(html, size, compressor.compress) must be equalTo compressor.compress(html)
+      }
+    }
+
+    "compress an HTML document in pieces like the whole document if the compressor rewrites the tags" in new Context {
+      val compressor = new HtmlCompressor()
+      compressor.setRemoveQuotes(true)
+      compressor.setRemoveHttpProtocol(true)
+      compressor.setRemoveHttpsProtocol(true)
+      compressor.setSimpleDoctype(true)
+
+      forall(1 to 40) { size =>
+        compressInPieces(html, size, compressor.compress) must be equalTo compressor.compress(html)
+      }
+    }
+
+    "compress the remainder as a whole if the compressor rewrites a tag depending on what follows it" in new Context {
+      val document = "<div> <p>a</p> <br/> <i>b</i> <br/> <p>c</p> <br/></div>"
+
+      forall(1 to 20) { size =>
+        compressInPieces(document, size, rewriting) must be equalTo rewriting(document)
+      }
+    }
+
+    "compress an XML document in pieces like the whole document" in new Context {
+      val compressor = new XmlCompressor()
+
+      forall(1 to 40) { size =>
+        compressInPieces(xml, size, compressor.compress) must be equalTo compressor.compress(xml)
+      }
+    }
+
+    "not cut a document inside preserved blocks" in new Context {
+      val compressor = new HtmlCompressor()
+      val segmenter = new Segmenter(compressor.compress)
+
+      segmenter.feed("<div> <pre> a  <b> b </b>") must be equalTo ""
+      segmenter.feed(" </pre> <p>") must be equalTo "<div>"
+      segmenter.finish() must be equalTo " <pre> a  <b> b </b> </pre> <p>"
+    }
+
+    "pass the rest of the document through once it holds back too much markup" in new Context {
+      val compressor = new HtmlCompressor()
+      val segmenter = new Segmenter(compressor.compress, 10)
+
+      segmenter.feed("<div>  <p>") must be equalTo ""
+      segmenter.feed("  a  </p>  <pre> a  <b> b") must be equalTo "<div>  <p>  a  </p>  <pre> a  <b> b"
+      segmenter.feed(" </pre>  <p>") must be equalTo " </pre>  <p>"
+      segmenter.finish() must be equalTo ""
+    }
+  }
+
+  "The stream decoder" should {
+    "decode multi-byte chars which are split across elements" in {
+      val decoder = new StreamDecoder("utf-8")
+      val bytes = ByteString("<p>äöü €</p>", "utf-8")
+
+      val decoded = bytes.grouped(1).map(decoder.decode).mkString + decoder.finish()
+
+      decoded must be equalTo "<p>äöü €</p>"
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * An HTML document which contains all kinds of blocks the compressor treats specially.
+     */
+    val html = """
+      <!DOCTYPE html>
+      <html>
+        <head>
+          <title>  Title  </title>
+          <!--[if IE]> <link rel="stylesheet"   href="http://example.com/ie.css"> <![endif]-->
+          <style>  p  { color: red; }  </style>
+          <script type="text/javascript">
+            var a = "<p>  </p>";
+          </script>
+        </head>
+        <body class = "main" >
+          <!-- A comment with <b> tags </b> -->
+          <p>Some   <b>bold</b>   text</p>
+          <pre>  preformatted
+              text  </pre>
+          <textarea>  some
+            text </textarea>
+          <!-- {{{ -->   <i>  skipped  </i>   <!-- }}} -->
+          <a href="https://example.com/">  Link </a><br/><br />
+          <![CDATA[  cdata  <b>  ]]>
+        </body>
+      </html>
+    """
+
+    /**
+     * An XML document.
+     */
+    val xml = """
+      <?xml version="1.0"?>
+      <feed   xmlns="http://www.w3.org/2005/Atom">
+        <!-- A comment -->
+        <title>  Title  </title>
+        <entry><content type = "html"><![CDATA[  <p>  text  </p>  ]]></content></entry>
+        <entry>
+          <content>  text  </content>
+        </entry>
+      </feed>
+    """
+
+    /**
+     * A compressor which collapses whitespace, and closes empty elements without a slash if anything
+     * follows them, so that it rewrites a tag depending on what follows it.
+     */
+    val rewriting: String => String = _.replaceAll("\\s+", " ").replaceAll("/>(?=.)", ">")
+
+    /**
+     * Compresses a document by feeding it in pieces of the given size to a segmenter.
+     *
+     * @param document The document to compress.
+     * @param size The size of the pieces.
+     * @param compress The function which compresses a piece of markup.
+     * @return The compressed document.
+     */
+    def compressInPieces(document: String, size: Int, compress: String => String): String = {
+      val segmenter = new Segmenter(compress)
+      document.grouped(size).map(segmenter.feed).mkString + segmenter.finish()
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.compressor
+
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+import play.api.Configuration
+import play.api.test.FakeRequest
+
+/**
+ * Test case for the [[com.mohiva.play.compressor.ServerTiming]] class.
+ */
+class ServerTimingSpec extends Specification {
+
+  "The server timing" should {
+    "time the requests which carry the request header" in new Context {
+      val timing = new ServerTiming(false, false, Some("X-Compressor-Timing"))
+      val request = FakeRequest().withHeaders("X-Compressor-Timing" -> "1")
+
+      timing.start(FakeRequest(), tracing = false) must beNone
+      timing.start(request, tracing = false) must beSome
+      timing.sendsHeader(request) must beTrue
+    }
+
+    "time all requests if it's enabled, without sending the header" in new Context {
+      val timing = new ServerTiming(true, false, None)
+
+      timing.start(FakeRequest(), tracing = false) must beSome
+      timing.sendsHeader(FakeRequest()) must beFalse
+    }
+
+    "time all requests if the metrics trace them, without sending the header" in new Context {
+      val timing = new ServerTiming(false, false, Some("X-Compressor-Timing"))
+
+      timing.start(FakeRequest(), tracing = true) must beSome
+      timing.sendsHeader(FakeRequest()) must beFalse
+    }
+
+    "send the header to all requests if it's enabled" in new Context {
+      val timing = new ServerTiming(false, true, None)
+
+      timing.start(FakeRequest(), tracing = false) must beSome
+      timing.sendsHeader(FakeRequest()) must beTrue
+    }
+
+    "be read from the configuration" in new Context {
+      val timing = ServerTiming.fromConfiguration(Configuration("play.filters.compressor.timing.requestHeader" -> "X-Debug"))
+      val disabled = ServerTiming.fromConfiguration(Configuration.empty)
+
+      disabled.start(FakeRequest(), tracing = false) must beNone
+      timing.enabled must beFalse
+      timing.header must beFalse
+      timing.requestHeader must beSome("X-Debug")
+    }
+  }
+
+  "The compression timing" should {
+    "record the phases in their order" in new Context {
+      val timing = new CompressionTiming(FakeRequest())
+      timing.record(CompressionTiming.Decode, 1000)
+      timing.time(CompressionTiming.Compress)("compressed") must be equalTo "compressed"
+
+      timing.spans.map(_.name) must be equalTo Seq(CompressionTiming.Decode, CompressionTiming.Compress)
+    }
+
+    "format the phases as a Server-Timing header in milliseconds" in new Context {
+      val timing = new CompressionTiming(FakeRequest())
+      timing.record(CompressionTiming.Buffer, 120000)
+      timing.record(CompressionTiming.Compress, 2310000)
+
+      timing.headerValue must be equalTo "compressor-buffer;dur=0.120, compressor-compress;dur=2.310"
+    }
+
+    "count the cache lookup, the decoding and the encoding as compression in the header" in new Context {
+      val timing = new CompressionTiming(FakeRequest())
+      timing.record(CompressionTiming.Cache, 100000)
+      timing.record(CompressionTiming.Decode, 200000)
+      timing.record(CompressionTiming.Compress, 2000000)
+      timing.record(CompressionTiming.Encode, 300000)
+      timing.record(CompressionTiming.ContentEncoding, 400000)
+
+      timing.headerValue must be equalTo "compressor-compress;dur=2.600, compressor-content-encoding;dur=0.400"
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope
+}
@@ -10,9 +10,11 @@
  */
 package com.mohiva.play.htmlcompressor
 
+import _root_.java.nio.file.Files
+
 import akka.util.ByteString
-import com.mohiva.play.compressor.Helper
-import com.mohiva.play.htmlcompressor.fixtures.{ CustomHTMLCompressorFilter, DefaultFilter, RequestHandler, WithGzipFilter }
+import com.mohiva.play.compressor.{ CompressionTiming, CompressorFilter, CompressorMetrics, CompressorProfile, Helper, DiskCompressionCache, InMemoryCompressorMetrics, ServerTiming, SkipReason }
+import com.mohiva.play.htmlcompressor.fixtures.{ CustomHTMLCompressorFilter, DefaultFilter, RequestHandler, WhitespaceEngine, WithGzipFilter }
 import org.apache.commons.io.IOUtils
 import org.specs2.mutable._
 import org.specs2.specification.Scope
@@ -71,16 +73,68 @@ class HTMLCompressorFilterSpec extends Specification {
       }
     }
 
-    "not compress result with chunked HTML result" in new Context {
+    "not compress an HTML page which is marked as already compressed" in new Context {
+      new WithApplication(defaultApp) {
+        val Some(result) = route(defaultApp, FakeRequest(GET, "/precompressed"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must startWith("\n\n    <!DOCTYPE html>")
+        header(CompressorFilter.PrecompressedHeader, result) must beNone
+      }
+    }
+
+    "not compress an HTML page which was rendered with the minified format" in new Context {
+      new WithApplication(defaultApp) {
+        val Some(result) = route(defaultApp, FakeRequest(GET, "/minified"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must startWith(" <!DOCTYPE html> <html> <head>")
+        contentAsString(result) must not endWith CompressorFilter.PrecompressedMarker
+      }
+    }
+
+    "compress a chunked HTML result" in new Context {
       new WithApplication(defaultApp) {
         val Some(result) = route(defaultApp, FakeRequest(GET, "/chunked"))
         status(result) must beEqualTo(OK)
         contentType(result) must beSome("text/html")
+        contentAsString(result) must be equalTo "<html> <body> <h1> Title </h1> </body> </html>"
         header(CONTENT_LENGTH, result) must beNone
       }
     }
   }
 
+  "The filter with profiles" should {
+    "compress an HTML page with the profile selected by the request" in new Context {
+      new WithApplication(profilesApp) {
+        val Some(result) = route(profilesApp, FakeRequest(GET, "/action").addAttr(CompressorProfile.Attr, "tight"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must startWith("<!DOCTYPE html><html><head>")
+      }
+    }
+
+    "compress an HTML page with the default settings if no profile is selected" in new Context {
+      new WithApplication(profilesApp) {
+        val Some(result) = route(profilesApp, FakeRequest(GET, "/action"))
+        val Some(unknown) = route(profilesApp, FakeRequest(GET, "/action").addAttr(CompressorProfile.Attr, "unknown"))
+
+        contentAsString(result) must startWith("<!DOCTYPE html> <html> <head>")
+        contentAsString(unknown) must startWith("<!DOCTYPE html> <html> <head>")
+      }
+    }
+
+    "cache the outputs of the profiles separately" in new Context {
+      new WithApplication(profilesApp) {
+        val Some(default) = route(profilesApp, FakeRequest(GET, "/action"))
+        contentAsString(default) must startWith("<!DOCTYPE html> <html> <head>")
+        val Some(tight) = route(profilesApp, FakeRequest(GET, "/action").addAttr(CompressorProfile.Attr, "tight"))
+
+        contentAsString(tight) must startWith("<!DOCTYPE html><html><head>")
+      }
+    }
+  }
+
   "The custom filter" should {
     "compress an HTML page" in new Context {
       new WithApplication(customApp) {
@@ -125,6 +179,443 @@ class HTMLCompressorFilterSpec extends Specification {
     }
   }
 
+  "The streaming filter" should {
+    "compress static assets while they stream through the filter" in new Context {
+      new WithApplication(streamingApp) {
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/static"))
+        val Some(result) = route(streamingApp, FakeRequest(GET, "/static"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("text/html")
+        contentAsString(result) must be equalTo contentAsString(original)
+        header(CONTENT_LENGTH, result) must beNone
+      }
+    }
+  }
+
+  "The single pass filter" should {
+    "compress an HTML page like the regex engine" in new Context {
+      new WithApplication(singlePassApp) {
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/action"))
+        val Some(result) = route(singlePassApp, FakeRequest(GET, "/action"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("text/html")
+        contentAsString(result) must be equalTo contentAsString(original)
+      }
+    }
+
+    "fail for an unknown engine" in new Context {
+      new GuiceApplicationBuilder()
+        .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+        .configure("play.filters.compressor.html.engine" -> "unknown")
+        .build() must throwA[Exception]("Unknown engine `unknown`")
+    }
+  }
+
+  "The filter with a plugged-in engine" should {
+    "compress an HTML page with a minifier which isn't an HtmlCompressor" in new Context {
+      new WithApplication(engineApp) {
+        val Some(result) = route(engineApp, FakeRequest(GET, "/action"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("text/html")
+        contentAsString(result) must startWith("<!DOCTYPE html> <html> <head> <title>")
+      }
+    }
+  }
+
+  "The parallel filter" should {
+    "compress an HTML page in segments like the sequential filter" in new Context {
+      new WithApplication(parallelApp) {
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/action"))
+        val Some(result) = route(parallelApp, FakeRequest(GET, "/action"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("text/html")
+        contentAsString(result) must be equalTo contentAsString(original)
+      }
+    }
+  }
+
+  "The caching filter" should {
+    "compress an HTML page only once" in new Context {
+      new WithApplication(cachingApp) {
+        val filter = cachingApp.injector.instanceOf[HTMLCompressorFilter]
+        val Some(first) = route(cachingApp, FakeRequest(GET, "/action"))
+        contentAsString(first) must startWith("<!DOCTYPE html> <html> <head>")
+
+        val Some(second) = route(cachingApp, FakeRequest(GET, "/action"))
+        contentAsString(second) must be equalTo contentAsString(first)
+        filter.cache.map(_.misses) must beSome(1L)
+        filter.cache.map(_.hits) must beSome(1L)
+      }
+    }
+  }
+
+  "The overloaded filter" should {
+    "not compress an HTML page if the overload policy is skip" in new Context {
+      new WithApplication(overloadedApp) {
+        val Some(result) = route(overloadedApp, FakeRequest(GET, "/action"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("text/html")
+        contentAsString(result) must startWith("\n\n    <!DOCTYPE html>")
+      }
+    }
+
+    "not compress static assets if the overload policy is skip" in new Context {
+      new WithApplication(overloadedApp) {
+        val file = scala.io.Source.fromInputStream(environment.resourceAsStream("static.html").get).mkString
+        val Some(result) = route(overloadedApp, FakeRequest(GET, "/static"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("text/html")
+        contentAsString(result) must be equalTo file
+      }
+    }
+
+    "compress an HTML page if the overload policy is backpressure" in new Context {
+      new WithApplication(backpressureApp) {
+        val Some(result) = route(backpressureApp, FakeRequest(GET, "/action"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("text/html")
+        contentAsString(result) must startWith("<!DOCTYPE html> <html> <head>")
+      }
+    }
+  }
+
+  "The size limited filter" should {
+    "compress a streamed HTML result of unknown length" in new Context {
+      new WithApplication(defaultApp) {
+        val Some(result) = route(defaultApp, FakeRequest(GET, "/streamed"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must be equalTo "<html> <body> <h1> Title </h1> </body> </html>"
+      }
+    }
+
+    "not compress an HTML page which is smaller than the minimum size" in new Context {
+      new WithApplication(minSizeApp) {
+        val metrics = minSizeApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(result) = route(minSizeApp, FakeRequest(GET, "/action"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must startWith("\n\n    <!DOCTYPE html>")
+        metrics.skips(SkipReason.TooSmall) must be equalTo 1
+      }
+    }
+
+    "not compress static assets which are larger than the maximum size" in new Context {
+      new WithApplication(maxSizeApp) {
+        val file = scala.io.Source.fromInputStream(environment.resourceAsStream("static.html").get).mkString
+        val Some(result) = route(maxSizeApp, FakeRequest(GET, "/static"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must be equalTo file
+      }
+    }
+
+    "stop buffering a streamed HTML result once it exceeds the maximum size" in new Context {
+      new WithApplication(maxSizeApp) {
+        val metrics = maxSizeApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(result) = route(maxSizeApp, FakeRequest(GET, "/streamed"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must be equalTo " <html>  <body>  <h1> Title </h1> </body>  </html> "
+        metrics.skips(SkipReason.TooLarge) must be equalTo 1
+      }
+    }
+  }
+
+  "The filter with precompressed assets" should {
+    "not compress an asset which was compressed at build time" in new Context {
+      new WithApplication(precompressedApp) {
+        val metrics = precompressedApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val file = scala.io.Source.fromInputStream(environment.resourceAsStream("static.html").get).mkString
+        val Some(result) = route(precompressedApp, FakeRequest(GET, "/assets/static.html"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must be equalTo file
+        metrics.skips(SkipReason.Precompressed) must be equalTo 1
+      }
+    }
+
+    "compress a route outside of the assets route, which shares the end of its path with an asset" in new Context {
+      new WithApplication(precompressedApp) {
+        val metrics = precompressedApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val file = scala.io.Source.fromInputStream(environment.resourceAsStream("static.html").get).mkString
+        val Some(result) = route(precompressedApp, FakeRequest(GET, "/blog/static.html"))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must not be equalTo(file)
+        metrics.skips(SkipReason.Precompressed) must be equalTo 0
+      }
+    }
+  }
+
+  "The tagging filter" should {
+    "answer a matching If-None-Match header without compressing the page" in new Context {
+      new WithApplication(etagApp) {
+        val metrics = etagApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(first) = route(etagApp, FakeRequest(GET, "/action"))
+        contentAsString(first) must startWith("<!DOCTYPE html> <html> <head>")
+        val Some(tag) = header(ETAG, first)
+
+        val Some(second) = route(etagApp, FakeRequest(GET, "/action").withHeaders(IF_NONE_MATCH -> tag))
+        status(second) must equalTo(NOT_MODIFIED)
+        header(ETAG, second) must beSome(tag)
+        contentAsBytes(second) must beEmpty
+        metrics.latency.count must be equalTo 1
+        metrics.skips(SkipReason.NotModified) must be equalTo 1
+      }
+    }
+
+    "compress the page if the If-None-Match header doesn't match" in new Context {
+      new WithApplication(etagApp) {
+        val Some(result) = route(etagApp, FakeRequest(GET, "/action").withHeaders(IF_NONE_MATCH -> "\"other\""))
+
+        status(result) must equalTo(OK)
+        contentAsString(result) must startWith("<!DOCTYPE html> <html> <head>")
+      }
+    }
+  }
+
+  "The warm-up filter" should {
+    "not record the compressions of the warm-up" in new Context {
+      new WithApplication(warmupApp) {
+        val metrics = warmupApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/action"))
+        val Some(result) = route(warmupApp, FakeRequest(GET, "/action"))
+        contentAsString(result) must be equalTo contentAsString(original)
+
+        metrics.latency.count must be equalTo 1
+      }
+    }
+
+    "fail for an unknown warm-up document" in new Context {
+      new GuiceApplicationBuilder()
+        .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+        .configure("play.filters.compressor.warmup.enabled" -> true)
+        .configure("play.filters.compressor.warmup.html" -> Seq("unknown.html"))
+        .build() must throwA[Exception]("Unknown warm-up document `unknown.html`")
+    }
+  }
+
+  "The filter metrics" should {
+    "record the compressions" in new Context {
+      new WithApplication(defaultApp) {
+        val metrics = defaultApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(result) = route(defaultApp, FakeRequest(GET, "/action"))
+        val compressed = contentAsBytes(result)
+
+        metrics.latency.count must be equalTo 1
+        metrics.outputSize.sum must be equalTo compressed.length.toLong
+        metrics.bytesSaved must be greaterThan 0
+      }
+    }
+
+    "record the reason why a result was skipped" in new Context {
+      new WithApplication(gzipApp) {
+        val metrics = gzipApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(nonHTML) = route(gzipApp, FakeRequest(GET, "/nonHTML"))
+        contentAsString(nonHTML) must startWith("  <html/>")
+        val Some(gzipped) = route(gzipApp, FakeRequest(GET, "/gzipped").withHeaders(ACCEPT_ENCODING -> "gzip"))
+        contentAsBytes(gzipped)
+
+        metrics.skips(SkipReason.ContentType) must be equalTo 1
+        metrics.skips(SkipReason.Encoded) must be equalTo 1
+        metrics.latency.count must be equalTo 0
+      }
+    }
+
+    "record the results which were skipped because of an overload" in new Context {
+      new WithApplication(overloadedApp) {
+        val metrics = overloadedApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(result) = route(overloadedApp, FakeRequest(GET, "/action"))
+        contentAsString(result) must startWith("\n\n    <!DOCTYPE html>")
+
+        metrics.skips(SkipReason.Overloaded) must be equalTo 1
+      }
+    }
+
+    "record the results which were excluded by a rule" in new Context {
+      new WithApplication(rulesApp) {
+        val metrics = rulesApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(excluded) = route(rulesApp, FakeRequest(GET, "/action"))
+        contentAsString(excluded) must startWith("\n\n    <!DOCTYPE html>")
+        val Some(compressed) = route(rulesApp, FakeRequest(GET, "/asyncAction"))
+        contentAsString(compressed) must startWith("<!DOCTYPE html>")
+
+        metrics.skips(SkipReason.Excluded) must be equalTo 1
+      }
+    }
+
+    "back off from compressing while the recent compressions were too slow" in new Context {
+      new WithApplication(adaptiveApp) {
+        val metrics = adaptiveApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(first) = route(adaptiveApp, FakeRequest(GET, "/action"))
+        contentAsString(first) must startWith("<!DOCTYPE html>")
+        val Some(second) = route(adaptiveApp, FakeRequest(GET, "/action"))
+        contentAsString(second) must startWith("\n\n    <!DOCTYPE html>")
+
+        metrics.latency.count must be equalTo 1
+        metrics.skips(SkipReason.Saturated) must be equalTo 1
+      }
+    }
+
+    "serve the outputs from the disk cache" in new Context {
+      new WithApplication(diskCacheApp) {
+        val metrics = diskCacheApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(first) = route(diskCacheApp, FakeRequest(GET, "/action"))
+        contentAsString(first) must startWith("<!DOCTYPE html>")
+        val Some(second) = route(diskCacheApp, FakeRequest(GET, "/action"))
+        contentAsString(second) must be equalTo contentAsString(first)
+
+        metrics.latency.count must be equalTo 1
+      }
+    }
+
+    "release the disk cache when the application stops" in new Context {
+      new WithApplication(diskCacheApp) {
+        val Some(result) = route(diskCacheApp, FakeRequest(GET, "/action"))
+        contentAsString(result) must startWith("<!DOCTYPE html>")
+      }
+
+      val cache = new DiskCompressionCache(diskCachePath, 64 * 1024 * 1024)
+      cache.size must be equalTo 1
+      cache.close()
+    }
+
+    "fail at startup if the disk cache has no path" in new Context {
+      new GuiceApplicationBuilder()
+        .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+        .configure("play.filters.compressor.diskCache.enabled" -> true)
+        .build() must throwA[Exception]("The path of the cache file must be set")
+    }
+
+    "add the compression phases as a Server-Timing header to the requests which ask for it" in new Context {
+      new WithApplication(timingApp) {
+        val metrics = timingApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(plain) = route(timingApp, FakeRequest(GET, "/action"))
+        header(ServerTiming.Header, plain) must beNone
+        val Some(timed) = route(timingApp, FakeRequest(GET, "/action").withHeaders("X-Compressor-Timing" -> "1"))
+        val Some(streamed) = route(timingApp, FakeRequest(GET, "/streamed").withHeaders("X-Compressor-Timing" -> "1"))
+
+        contentAsString(timed) must be equalTo contentAsString(plain)
+        header(ServerTiming.Header, timed).map(_.split(", ").map(_.takeWhile(_ != ';')).toSeq) must beSome(
+          Seq("compressor-compress")
+        )
+        header(ServerTiming.Header, streamed) must beSome(startWith("compressor-buffer;dur="))
+        metrics.phaseLatency(CompressionTiming.Decode).count must be equalTo 2
+        metrics.phaseLatency(CompressionTiming.Compress).count must be equalTo 2
+        metrics.phaseLatency(CompressionTiming.Buffer).count must be equalTo 1
+      }
+    }
+
+    "pass the compression phases to tracing metrics without a Server-Timing header" in new Context {
+      new WithApplication(tracingApp) {
+        val metrics = tracingApp.injector.instanceOf[CompressorMetrics]
+        val Some(result) = route(tracingApp, FakeRequest(GET, "/action"))
+
+        status(result) must be equalTo OK
+        header(ServerTiming.Header, result) must beNone
+        metrics.asInstanceOf[InMemoryCompressorMetrics].phaseLatency(CompressionTiming.Compress).count must be equalTo 1
+      }
+    }
+
+    "record the results which didn't fit into the memory budget" in new Context {
+      new WithApplication(budgetApp) {
+        val metrics = budgetApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(page) = route(budgetApp, FakeRequest(GET, "/action"))
+        contentAsString(page) must startWith("\n\n    <!DOCTYPE html>")
+        val Some(streamed) = route(budgetApp, FakeRequest(GET, "/streamed"))
+        contentAsString(streamed) must be equalTo " <html>  <body>  <h1> Title </h1> </body>  </html> "
+
+        metrics.skips(SkipReason.OverBudget) must be equalTo 2
+        metrics.peakBytesInFlight must be equalTo 16
+        metrics.bytesInFlight must be equalTo 0
+      }
+    }
+
+    "release the memory budget if a streamed body fails" in new Context {
+      new WithApplication(budgetApp) {
+        val metrics = budgetApp.injector.instanceOf[CompressorMetrics].asInstanceOf[InMemoryCompressorMetrics]
+        val Some(result) = route(budgetApp, FakeRequest(GET, "/failedStream"))
+        contentAsString(result) must throwA[RuntimeException]("Stream failed")
+
+        metrics.peakBytesInFlight must be equalTo 8
+        metrics.bytesInFlight must be equalTo 0
+      }
+    }
+  }
+
+  "The encoding filter" should {
+    "gzip a compressed HTML page" in new Context {
+      new WithApplication(encodingApp) {
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/action"))
+        val Some(result) = route(encodingApp, FakeRequest(GET, "/action").withHeaders(ACCEPT_ENCODING -> "gzip, deflate"))
+
+        status(result) must equalTo(OK)
+        header(CONTENT_ENCODING, result) must beSome("gzip")
+        header(VARY, result) must beSome(ACCEPT_ENCODING)
+        Helper.gunzip(contentAsBytes(result)) must_== contentAsBytes(original)
+      }
+    }
+
+    "deflate a compressed HTML page if the client prefers it" in new Context {
+      new WithApplication(encodingApp) {
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/action"))
+        val Some(result) = route(encodingApp, FakeRequest(GET, "/action").withHeaders(ACCEPT_ENCODING -> "gzip;q=0.5, deflate"))
+
+        header(CONTENT_ENCODING, result) must beSome("deflate")
+        Helper.inflate(contentAsBytes(result)) must_== contentAsBytes(original)
+      }
+    }
+
+    "not encode a compressed HTML page if the client doesn't accept an encoding" in new Context {
+      new WithApplication(encodingApp) {
+        val Some(result) = route(encodingApp, FakeRequest(GET, "/action"))
+
+        header(CONTENT_ENCODING, result) must beNone
+        header(VARY, result) must beSome(ACCEPT_ENCODING)
+        contentAsString(result) must startWith("<!DOCTYPE html> <html> <head>")
+      }
+    }
+
+    "vary a page by the accepted encoding if it gets passed through uncompressed" in new Context {
+      new WithApplication(overloadedEncodingApp) {
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/action"))
+        val Some(result) = route(overloadedEncodingApp, FakeRequest(GET, "/action").withHeaders(ACCEPT_ENCODING -> "gzip"))
+
+        header(CONTENT_ENCODING, result) must beNone
+        header(VARY, result) must beSome(ACCEPT_ENCODING)
+        contentAsString(result) must not be equalTo(contentAsString(original))
+      }
+    }
+
+    "deflate compressed static assets" in new Context {
+      new WithApplication(encodingApp) {
+        // the Assets controller would serve the precompressed static.html.gz for gzip
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/static"))
+        val Some(result) = route(encodingApp, FakeRequest(GET, "/static").withHeaders(ACCEPT_ENCODING -> "deflate"))
+
+        header(CONTENT_ENCODING, result) must beSome("deflate")
+        Helper.inflate(contentAsBytes(result)) must_== contentAsBytes(original)
+      }
+    }
+
+    "gzip a compressed chunked HTML result" in new Context {
+      new WithApplication(encodingApp) {
+        val Some(result) = route(encodingApp, FakeRequest(GET, "/chunked").withHeaders(ACCEPT_ENCODING -> "gzip"))
+
+        header(CONTENT_ENCODING, result) must beSome("gzip")
+        Helper.gunzip(contentAsBytes(result)).utf8String must be equalTo "<html> <body> <h1> Title </h1> </body> </html>"
+      }
+    }
+  }
+
   "The default filter with Gzip Filter" should {
     "first compress then gzip result" in new Context {
       new WithApplication(gzipApp) {
@@ -178,6 +669,214 @@ class HTMLCompressorFilterSpec extends Specification {
       .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
       .build()
 
+    /**
+     * An app with the default HTML compressor filter, which compresses streamed bodies while they stream.
+     */
+    lazy val streamingApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.streaming" -> true)
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which uses the single pass engine.
+     */
+    lazy val singlePassApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.html.engine" -> "single-pass")
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which uses an engine with an independent minifier.
+     */
+    lazy val engineApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.html.engine" -> classOf[WhitespaceEngine].getName)
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which compresses the pages in small segments.
+     */
+    lazy val parallelApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.parallel.enabled" -> true)
+      .configure("play.filters.compressor.parallel.minSize" -> "0")
+      .configure("play.filters.compressor.parallel.segmentSize" -> "16")
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which caches the compressed outputs.
+     */
+    lazy val cachingApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.cache.enabled" -> true)
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which doesn't allow any pending compression.
+     */
+    lazy val overloadedApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.maxPending" -> 0)
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter and a profile which removes the intertag spaces.
+     */
+    lazy val profilesApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.html.profiles.tight.removeIntertagSpaces" -> true)
+      .configure("play.filters.compressor.cache.enabled" -> true)
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which excludes the synchronous action.
+     */
+    lazy val rulesApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.rules" -> Seq(Map("paths" -> Seq("/act*"), "methods" -> Seq("GET", "POST"))))
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which backs off after every compression.
+     */
+    lazy val adaptiveApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.adaptive.enabled" -> true)
+      .configure("play.filters.compressor.adaptive.maxPending" -> 0)
+      .configure("play.filters.compressor.adaptive.maxLatency" -> "1ns")
+      .configure("play.filters.compressor.adaptive.maxCpuLoad" -> 0)
+      .configure("play.filters.compressor.adaptive.cooldown" -> "1m")
+      .build()
+
+    /**
+     * The file of the disk cache.
+     */
+    lazy val diskCachePath = Files.createTempDirectory("cache").resolve("cache")
+
+    /**
+     * An app with the default HTML compressor filter, which caches the compressed outputs on the disk.
+     */
+    lazy val diskCacheApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.diskCache.enabled" -> true)
+      .configure("play.filters.compressor.diskCache.path" -> diskCachePath.toString)
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which warms up with a page before it gets started.
+     */
+    lazy val warmupApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.warmup.enabled" -> true)
+      .configure("play.filters.compressor.warmup.iterations" -> 2)
+      .configure("play.filters.compressor.warmup.html" -> Seq("static.html"))
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which times the requests with a debug header.
+     */
+    lazy val timingApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.timing.requestHeader" -> "X-Compressor-Timing")
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, whose metrics trace the compression phases.
+     */
+    lazy val tracingApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .overrides(bind[CompressorMetrics].toInstance(new InMemoryCompressorMetrics { override def tracing = true }))
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which buffers at most 20 bytes at once.
+     */
+    lazy val budgetApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.budget.enabled" -> true)
+      .configure("play.filters.compressor.budget.maxBytes" -> "20")
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which lets the results wait if overloaded.
+     */
+    lazy val backpressureApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.maxPending" -> 1)
+      .configure("play.filters.compressor.overloadPolicy" -> "backpressure")
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which doesn't compress bodies smaller than 1 MB.
+     */
+    lazy val minSizeApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.minSize" -> "1m")
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which doesn't compress bodies larger than 20 bytes.
+     */
+    lazy val maxSizeApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.maxSize" -> "20")
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which also encodes the compressed bodies.
+     */
+    lazy val encodingApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.encoding.enabled" -> true)
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which encodes the compressed bodies but skips all
+     * compressions because of overload.
+     */
+    lazy val overloadedEncodingApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.encoding.enabled" -> true)
+      .configure("play.filters.compressor.maxPending" -> 0)
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter and a manifest of precompressed assets.
+     */
+    lazy val precompressedApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.precompressed.manifest" -> "precompressed-manifest.txt")
+      .build()
+
+    /**
+     * An app with the default HTML compressor filter, which tags the compressed results.
+     */
+    lazy val etagApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.etag" -> true)
+      .build()
+
     /**
      * An app with the gzip filter in place.
      */
@@ -0,0 +1,158 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.htmlcompressor
+
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor
+import com.mohiva.play.compressor.CompressorFilter.PrecompressedMarker
+import com.mohiva.play.compressor.SharedCompressorProvider
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+import play.api.{ Configuration, Environment, PlayException }
+import play.twirl.api.{ BaseScalaTemplate, Format, Html }
+
+/**
+ * Test case for the [[com.mohiva.play.htmlcompressor.MinifiedHtmlFormat]] class.
+ */
+class MinifiedHtmlFormatSpec extends Specification {
+
+  /**
+   * Templates which get rendered like compiled Twirl templates.
+   *
+   * @param format The format.
+   */
+  class Templates(format: MinifiedHtmlFormat) extends BaseScalaTemplate[Html, Format[Html]](format) {
+
+    /**
+     * Renders a page.
+     *
+     * @param title The interpolated title.
+     * @param content The interpolated content.
+     * @return The rendered page.
+     */
+    def page(title: String, content: Html): Html = _display_ {
+      Seq[Any](
+        format.raw("\n<html>\n  <head>\n    <title>"),
+        _display_(title),
+        format.raw("</title>\n  </head>\n  <body>\n    <pre>\n  "),
+        _display_(content),
+        format.raw("\n    </pre>\n    <p>\n      "),
+        _display_(content),
+        format.raw("\n    </p>\n  </body>\n</html>\n")
+      )
+    }
+
+    /**
+     * Renders a nested template.
+     *
+     * @param text The interpolated text.
+     * @return The rendered template.
+     */
+    def partial(text: String): Html = _display_ {
+      Seq[Any](format.raw("<b>\n  "), _display_(text), format.raw("\n</b>"))
+    }
+
+    /**
+     * Renders a loop, with a nested template body for every item.
+     *
+     * @param items The items of the loop.
+     * @return The rendered loop.
+     */
+    def loop(items: List[String]): Html = _display_ {
+      for (item <- items) yield {
+        _display_(Seq[Any](format.raw("<i>\n  "), _display_(item), format.raw("\n</i>\n")))
+      }
+    }
+
+    /**
+     * Renders a template whose value is inside a comment.
+     *
+     * @param text The interpolated text.
+     * @return The rendered template.
+     */
+    def comment(text: String): Html = _display_ {
+      Seq[Any](format.raw("<p>  <!-- "), _display_(text), format.raw(" -->  </p>"))
+    }
+
+    /**
+     * Renders a template with an attribute value.
+     *
+     * @param value The interpolated value.
+     * @return The rendered template.
+     */
+    def attribute(value: String): Html = _display_ {
+      Seq[Any](format.raw("<a  href=\""), _display_(value), format.raw("\">  link  </a>"))
+    }
+  }
+
+  "The format" should {
+    "minify the static markup of a template" in new Context {
+      templates.page("A & B", Html("text")).body must be equalTo
+        " <html> <head> <title>A &amp; B</title> </head> <body> <pre>\n  text\n    </pre> <p> text </p> </body> </html> " + PrecompressedMarker
+    }
+
+    "render nested templates without minification inside preserved blocks" in new Context {
+      templates.page("T", templates.partial("x")).body must be equalTo
+        " <html> <head> <title>T</title> </head> <body> <pre>\n  <b>\n  x\n</b>\n    </pre> <p> <b> x </b> </p> </body> </html> " + PrecompressedMarker
+    }
+
+    "render loops without minification inside preserved blocks" in new Context {
+      val html = templates.page("T", templates.loop(List("a", "b")))
+
+      html.body must contain("<pre>\n  <i>\n  a\n</i>\n<i>\n  b\n</i>\n\n    </pre>")
+      html.body must contain("<p> <i> a </i>")
+      html.body must not contain PrecompressedMarker + "<"
+    }
+
+    "compress the static markup of a template only once" in new Context {
+      templates.page("A", Html("a"))
+      templates.page("B", Html("b")).body must contain("<title>B</title>")
+
+      format.size must be equalTo 1
+    }
+
+    "not minify a template whose values are removed by the compressor" in new Context {
+      templates.comment("x").body must be equalTo "<p>  <!-- x -->  </p>"
+    }
+
+    "keep the quotes of attributes with interpolated values" in new Context {
+      templates.attribute("a b").body must be equalTo "<a href=\"a b\"> link </a>" + PrecompressedMarker
+    }
+
+    "compress with the settings it was configured with" in new Context {
+      format.configure(Configuration("play.filters.compressor.html.removeComments" -> false), Environment.simple())
+
+      templates.comment("x").body must be equalTo "<p> <!-- x --> </p>" + PrecompressedMarker
+    }
+
+    "reject settings which remove the quotes of attributes" in new Context {
+      format.configure(Configuration("play.filters.compressor.html.removeQuotes" -> true), Environment.simple()) must
+        throwA[PlayException].like {
+          case e => e.getMessage must contain("remove the quotes of attributes")
+        }
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * The format to test.
+     */
+    val format = new MinifiedHtmlFormat(new SharedCompressorProvider(new HtmlCompressor()))
+
+    /**
+     * The templates which get rendered with the format.
+     */
+    val templates = new Templates(format)
+  }
+}
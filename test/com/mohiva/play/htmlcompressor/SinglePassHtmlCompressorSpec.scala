@@ -0,0 +1,232 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.htmlcompressor
+
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+import scala.util.Random
+
+/**
+ * Test case for the [[com.mohiva.play.htmlcompressor.SinglePassHtmlCompressor]] class.
+ */
+class SinglePassHtmlCompressorSpec extends Specification {
+
+  "The single pass compressor" should {
+    "compress the HTML documents of the corpus like the regex compressor" in new Context {
+      forall(settings) { s =>
+        val (regex, singlePass) = compressors(s)
+
+        forall(corpus) { document =>
+          singlePass.compress(document) must be equalTo regex.compress(document)
+        }
+      }
+    }
+
+    "compress generated HTML documents like the regex compressor" in new Context {
+      val random = new Random(42)
+      val documents = Seq.fill(300)(generate(random))
+
+      forall(settings) { s =>
+        val (regex, singlePass) = compressors(s)
+
+        forall(documents) { document =>
+          singlePass.compress(document) must be equalTo regex.compress(document)
+        }
+      }
+    }
+
+    "compress the documents in a single pass" in new Context {
+      forall(corpus.take(8)) { document =>
+        new SinglePassHtmlMinifier(document, true, false, false, true, true).minify() must beSome
+      }
+    }
+
+    "delegate the constructs which depend on the order of the regex passes" in new Context {
+      val documents = Seq(
+        "<p> a </p> <!--[if IE]> <p>  b  </p> <![endif]-->",
+        "<p> a </p> <!-- {{{ --> <p>  b  </p> <!-- }}} -->",
+        "<p> a <!-- <script> --> b </script> -->",
+        "<script> a <pre> b </script> c </pre>"
+      )
+
+      forall(documents) { document =>
+        val (regex, singlePass) = compressors(Seq(true, false, false, true, true))
+
+        SinglePassHtmlMinifier.isSupported(document) &&
+          new SinglePassHtmlMinifier(document, true, false, false, true, true).minify().isDefined must beFalse
+        singlePass.compress(document) must be equalTo regex.compress(document)
+      }
+    }
+
+    "delegate the settings which it doesn't support" in new Context {
+      val (regex, singlePass) = compressors(Seq(true, false, false, true, true))
+      Seq(regex, singlePass).foreach { c =>
+        c.setRemoveQuotes(true)
+        c.setSimpleBooleanAttributes(true)
+      }
+
+      singlePass.isSinglePass must beFalse
+      forall(corpus) { document =>
+        singlePass.compress(document) must be equalTo regex.compress(document)
+      }
+    }
+
+    "pass the document through if it's disabled" in new Context {
+      val compressor = new SinglePassHtmlCompressor()
+      compressor.setEnabled(false)
+
+      compressor.compress(corpus.head) must be equalTo corpus.head
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * All combinations of the removeComments, removeIntertagSpaces, preserveLineBreaks, removeHttpProtocol
+     * and removeHttpsProtocol settings.
+     */
+    val settings = (0 until 32).map(i => (0 until 5).map(bit => (i & (1 << bit)) != 0))
+
+    /**
+     * HTML documents with all kinds of constructs the compressor treats specially.
+     */
+    val corpus = Seq(
+      """
+
+    <!DOCTYPE html>
+      <html>
+        <head>
+          <title>@title</title>
+        </head>
+        <body>
+          I'm a play app
+        </body>
+      </html>
+    """,
+      """<!DOCTYPE html>
+        |<html>
+        |  <head>
+        |    <title>  Page  </title>
+        |    <link rel="stylesheet"  href="https://example.com/style.css" type="text/css" />
+        |    <style type="text/css">
+        |      body  {  color :  red; }
+        |    </style>
+        |  </head>
+        |  <body  class = "page" >
+        |    <!-- An item of the listing -->
+        |    <div class = "item"  id="item">
+        |      <h2>  A   title  </h2>
+        |      <p>
+        |        Some    text with <b>bold</b>   and <i>italic</i>   words.
+        |      </p>
+        |      <a href="http://example.com/item"  title="Item">  Link  </a>
+        |      <a href = 'http://example.com/external' rel="external">External</a>
+        |      <img src="https://example.com/image.png" alt="Image" />
+        |      <form action="https://example.com/form" method="post"><input type="text" name="q"  /></form>
+        |      <blockquote cite="http://example.com/quote">  Quote  </blockquote>
+        |      <pre>  preformatted
+        |          text  </pre>
+        |      <textarea name="text">  some
+        |        text  </textarea>
+        |      <button onclick="alert( 'a   b' );  return  false;"  onmouseover = 'x  =  1'>  Click  </button>
+        |      <script type="text/javascript">
+        |        var item = { id: 1 }; // <!-- not a comment -->
+        |        document.write("<div>  </div>");
+        |      </script>
+        |    </div>
+        |  </body>
+        |</html>
+        |""".stripMargin,
+      "<p>a</p>\r\n  \r\n<p>  b  </p>\r\n",
+      "\n\n<p>\n  a  \n</p>\n\n",
+      "  \t<p>\t\ta\f\u000B b\r c</p>  \n\t ",
+      "<p> <!-- a --> <!----> <!--> --> <!---> --> b </p>",
+      "<p> a <!-- unterminated <b  > </p>",
+      "<p> a <!-- x --> b <!-- unterminated <b  > </p>",
+      "<p> <!-- onclick=\"-->\" still a comment --> b </p>",
+      "<p onclick=\"a > b\"  title=\"x > y\" > c </p>",
+      "<p onclick=\"a\\\"  \\\"b\"  class = \"c\" >  d  </p>",
+      "<p onclick=\"a\n b\" class = c >  d  </p>",
+      "<p  title = x  onclick = \"  \"  > a = b > c = d < e = f</p>",
+      "<a href=\"http://a\" src=\"https://b\" cite = \"http://c\">x</a><a href=\"HTTP://A\" data-src=\"http://b\">y</a>",
+      "<a href=\"http:/\">x</a><a href=\"http://\">y</a><a href=\"http://a\" rel=\"alternate  external\">z</a>",
+      "<a rel=external href=\"http://a\">x</a><a rel=\"nofollow external\" href=\"https://a\">y</a>",
+      "<a\n  href\n  =\n  \"http://a\"\n  rel\n=\n\"external\"\n>x</a>",
+      "<pre>   </pre> <pre>  a  </pre>  <PRE class = \"x\" >  b  </PRE> <prefix>  c  </prefix>",
+      "<pre> a <pre> b </pre> c </pre>",
+      "<script> a </script> <script>   </script> <script src = \"http://a\" ></script>",
+      "<script type=\"text/x-jquery-tmpl\">  <p>  a  </p>  </script>",
+      "<style>  a  </style> <textarea>  b  </textarea> <textarea>  </textarea>",
+      "<pre> unterminated <p>  a  </p>",
+      "<script> unterminated <p>  a  </p>",
+      "<div> <pre> a </pre> </div>\n<div>\n<textarea>\n b \n</textarea>\n</div>",
+      "<p>a</p> <p>b</p>\n<p>c</p> \n <p>d</p>",
+      "<br  /> <br / > <br/> < br > <  /> <a b= > <a = b>",
+      "a < b > c < d",
+      "  <  ",
+      "<p>\u0001 a \u0001</p>\u0001 ",
+      "x = y > z",
+      "  x = /> y",
+      "<p  a = 1 b= 2 c =3 d=4 data-e = 5 f_g = 6 >",
+      "<p onclick=\"x\"onmouseover=\"y\" ontouch = '' onfocus=\"\">a</p>",
+      "<p title=\"<!-- a -->\"> b </p>",
+      "<p> a  onclick=\"text  outside  of  a  tag\"  b </p>",
+      "<a href=\"http://example.com\"\n>x</a>\n<a href='https://example.com'>y</a>",
+      "<img\tsrc\t=\t\"http://a\"\t/>",
+      "<!DOCTYPE html>\r\n<html>\r\n<body>\r\n\r\n  <p>  text  </p>\r\n\r\n</body>\r\n</html>\r\n"
+    )
+
+    /**
+     * The pieces from which documents get generated.
+     */
+    val pieces = Seq(
+      " ", "  ", "\n", " \n ", "\r\n", "\t", "\f", "<p>", "</p>", "<a ", ">", "<", "/>", " />", "=", " = ", "\"", "'",
+      "href=\"http://a\"", "src='https://b'", " rel=\"external\"", "action = \"http://c\"", "text", "a b",
+      "<!-- c -->", "<!--", "-->", "<!---->", " onclick=\"x > y\"", " onload='z'", " onclick=\"\"", "<pre>", "</pre>",
+      "<script>", "</script>", "<style>", "</style>", "<textarea>", "</textarea>", "\\\"", "x=", " y ", "_z"
+    )
+
+    /**
+     * Creates a regex and a single pass compressor with the given settings.
+     *
+     * @param s The removeComments, removeIntertagSpaces, preserveLineBreaks, removeHttpProtocol and
+     *          removeHttpsProtocol settings.
+     * @return The regex and the single pass compressor.
+     */
+    def compressors(s: Seq[Boolean]): (HtmlCompressor, SinglePassHtmlCompressor) = {
+      val regex = new HtmlCompressor()
+      val singlePass = new SinglePassHtmlCompressor()
+      Seq(regex, singlePass).foreach { c =>
+        c.setRemoveComments(s(0))
+        c.setRemoveIntertagSpaces(s(1))
+        c.setPreserveLineBreaks(s(2))
+        c.setRemoveHttpProtocol(s(3))
+        c.setRemoveHttpsProtocol(s(4))
+      }
+      (regex, singlePass)
+    }
+
+    /**
+     * Generates a document from random pieces.
+     *
+     * @param random The random generator.
+     * @return The document.
+     */
+    def generate(random: Random): String = {
+      Seq.fill(random.nextInt(40) + 1)(pieces(random.nextInt(pieces.length))).mkString
+    }
+  }
+}
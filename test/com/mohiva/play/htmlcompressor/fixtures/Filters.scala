@@ -13,7 +13,8 @@ package com.mohiva.play.htmlcompressor.fixtures
 import javax.inject.Inject
 
 import akka.stream.Materializer
-import com.googlecode.htmlcompressor.compressor.HtmlCompressor
+import com.googlecode.htmlcompressor.compressor.{ Compressor, HtmlCompressor }
+import com.mohiva.play.compressor.CompressorEngine
 import com.mohiva.play.htmlcompressor.HTMLCompressorFilter
 import play.api.{ Environment, Mode, Configuration }
 import play.api.http.HttpFilters
@@ -53,3 +54,12 @@ class DefaultFilter @Inject() (htmlCompressorFilter: HTMLCompressorFilter) exten
 class WithGzipFilter @Inject() (htmlCompressorFilter: HTMLCompressorFilter, gzipFilter: GzipFilter) extends HttpFilters {
   override def filters: Seq[EssentialFilter] = Seq(gzipFilter, htmlCompressorFilter)
 }
+
+/**
+ * An engine with an independent minifier, which collapses all whitespace.
+ */
+class WhitespaceEngine extends CompressorEngine[Compressor] {
+  override def create(settings: Configuration, environment: Environment): Compressor = new Compressor {
+    override def compress(source: String): String = source.replaceAll("\\s+", " ").trim
+  }
+}
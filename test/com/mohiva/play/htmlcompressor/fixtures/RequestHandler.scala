@@ -42,7 +42,13 @@ class RequestHandler @Inject() (
       case ("GET", "/asyncAction") => Some(controller.asyncAction)
       case ("GET", "/nonHTML") => Some(controller.nonHTML)
       case ("GET", "/static") => Some(controller.staticAsset)
+      case ("GET", "/assets/static.html") => Some(controller.staticAsset)
+      case ("GET", "/blog/static.html") => Some(controller.staticAsset)
       case ("GET", "/chunked") => Some(controller.chunked)
+      case ("GET", "/streamed") => Some(controller.streamed)
+      case ("GET", "/failedStream") => Some(controller.failedStream)
+      case ("GET", "/precompressed") => Some(controller.precompressed)
+      case ("GET", "/minified") => Some(controller.minified)
       case ("GET", "/gzipped") => Some(controller.gzipped)
       case _ => None
     }
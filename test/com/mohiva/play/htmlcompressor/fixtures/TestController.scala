@@ -12,7 +12,10 @@ package com.mohiva.play.htmlcompressor.fixtures
 
 import akka.stream.scaladsl.Source
 import akka.util.ByteString
-import play.api.http.{ DefaultHttpErrorHandler }
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor
+import com.mohiva.play.compressor.{ CompressorFilter, SharedCompressorProvider }
+import com.mohiva.play.htmlcompressor.MinifiedHtmlFormat
+import play.api.http.{ DefaultHttpErrorHandler, HttpEntity }
 import play.api.mvc._
 import play.twirl.api.Html
 import scala.concurrent.Future
@@ -76,6 +79,37 @@ class TestController(components: ControllerComponents, meta: AssetsMetadata) ext
     Ok.chunked(Source(parts)).as("text/html")
   }
 
+  /**
+   * Action with a streamed body of unknown length.
+   */
+  def streamed = Action {
+    val parts = List(" <html> ", " <body> ", " <h1> Title </h1>", " </body> ", " </html> ").map(html => ByteString(html))
+    Ok.sendEntity(HttpEntity.Streamed(Source(parts), None, Some("text/html")))
+  }
+
+  /**
+   * Action with a streamed body which fails after its first part.
+   */
+  def failedStream = Action {
+    val parts = Source.single(ByteString(" <html> ")).concat(Source.failed(new RuntimeException("Stream failed")))
+    Ok.sendEntity(HttpEntity.Streamed(parts, None, Some("text/html")))
+  }
+
+  /**
+   * Action with an HTML page which is marked as already compressed.
+   */
+  def precompressed = Action {
+    Ok(template).as("text/html").withHeaders(CompressorFilter.PrecompressedHeader -> "true")
+  }
+
+  /**
+   * Action with an HTML page which was rendered with the minified format.
+   */
+  def minified = Action {
+    val format = new MinifiedHtmlFormat(new SharedCompressorProvider(new HtmlCompressor()))
+    Ok(format.fill(List(format.raw(template.body))))
+  }
+
   /**
    * Action with gzipped asset.
    */
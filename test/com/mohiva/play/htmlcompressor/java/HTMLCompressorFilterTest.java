@@ -107,15 +107,16 @@ public class HTMLCompressorFilterTest {
 
 
     /**
-     * Test if result is not compressed when transfer encoding is set to chunked
+     * Test if result is compressed chunk by chunk when transfer encoding is set to chunked
      */
     @Test
-    public void defaultFilterNotCompressChunkedResult() {
+    public void defaultFilterCompressChunkedResult() {
         running(defaultApp(), () -> {
             Result result = route(defaultApp(), fakeRequest(GET, "/chunked"));
 
             assertThat(result.status()).isEqualTo(OK);
             assertThat(result.contentType().get()).isEqualTo("text/html");
+            assertThat(contentAsString(result, defaultApp().injector().instanceOf(Materializer.class))).isEqualTo("<html> <body> <h1> Title </h1> </body> </html>");
             assertThat(result.header(CONTENT_LENGTH)).isEqualTo(Optional.empty());
         });
     }
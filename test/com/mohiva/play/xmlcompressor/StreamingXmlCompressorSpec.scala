@@ -0,0 +1,144 @@
+/**
+ * Play HTML Compressor
+ *
+ * LICENSE
+ *
+ * This source file is subject to the new BSD license that is bundled
+ * with this package in the file LICENSE.md.
+ * It is also available through the world-wide-web at this URL:
+ * https://github.com/mohiva/play-html-compressor/blob/master/LICENSE.md
+ */
+package com.mohiva.play.xmlcompressor
+
+import com.googlecode.htmlcompressor.compressor.XmlCompressor
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+/**
+ * Test case for the [[com.mohiva.play.xmlcompressor.StreamingXmlCompressor]] class.
+ */
+class StreamingXmlCompressorSpec extends Specification {
+
+  "The streaming compressor" should {
+    "compress XML documents like the regex compressor" in new Context {
+      forall(settings) {
+        case (removeComments, removeIntertagSpaces) =>
+          val (regex, streaming) = compressors(removeComments, removeIntertagSpaces)
+
+          forall(documents) { document =>
+            streaming.compress(document) must be equalTo regex.compress(document)
+          }
+      }
+    }
+
+    "compress XML documents in pieces like the whole document" in new Context {
+      forall(settings) {
+        case (removeComments, removeIntertagSpaces) =>
+          val (regex, streaming) = compressors(removeComments, removeIntertagSpaces)
+
+          forall(documents) { document =>
+            forall(1 to 20) { size =>
+              compressInPieces(streaming, document, size) must be equalTo regex.compress(document)
+            }
+          }
+      }
+    }
+
+    "pass the document through if it's disabled" in new Context {
+      val compressor = new StreamingXmlCompressor()
+      compressor.setEnabled(false)
+
+      compressInPieces(compressor, documents.head, 3) must be equalTo documents.head
+    }
+
+    "emit the compressed markup before the document ends" in new Context {
+      val compressor = new StreamingXmlCompressor().incremental()
+
+      compressor.feed("<feed>  <entry>  <title>  A  </title>") must be equalTo "<feed><entry><title>  A"
+      compressor.feed("  </entry>") must be equalTo "  </title>"
+      compressor.finish() must be equalTo "</entry>"
+    }
+
+    "pass the rest of the document through once it holds back too much markup" in new Context {
+      val compressor = new StreamingXmlCompressor().incremental(30)
+
+      compressor.feed("<feed>  <entry>  <![CDATA[  a  ") must be equalTo "<feed>"
+      compressor.feed("b  c  d  e  ") must be equalTo "<entry>  <![CDATA[  a  b  c  d  e  "
+      compressor.feed("]]>  </entry>  ") must be equalTo "]]>  </entry>  "
+      compressor.finish() must be equalTo ""
+    }
+  }
+
+  /**
+   * The context.
+   */
+  trait Context extends Scope {
+
+    /**
+     * All combinations of the removeComments and removeIntertagSpaces settings.
+     */
+    val settings = for (c <- Seq(true, false); s <- Seq(true, false)) yield (c, s)
+
+    /**
+     * XML documents with all kinds of constructs the compressor treats specially.
+     */
+    val documents = Seq(
+      """
+        <?xml version="1.0"?>
+        <feed   xmlns="http://www.w3.org/2005/Atom">
+          <!-- A comment -->
+          <title>  Title  </title>
+          <entry><content type = "html"><![CDATA[  <p>  text  </p>  ]]></content></entry>
+          <entry>
+            <content>  text  </content>
+            <link  href = "http://example.com/"  rel="alternate"   />
+          </entry>
+        </feed>
+      """,
+      "<a> <!-- x --> <b/> <!-- y --> </a>",
+      "<a> <!-- <![CDATA[ --> ]]> --> <b/> </a>",
+      "<a> <![CDATA[ <!-- ]]> --> <b/> </a>",
+      "<a>  <![cdata[  x  ]]>  </a>",
+      "<a> <!-- unterminated <b  > </a>",
+      "<a> <![CDATA[ unterminated <b  > </a>",
+      "<a> <!-- <![CDATA[ unterminated --> <b  > </a>",
+      "<a>  x  >  y  </a>",
+      "<a>  b = c  d  > e</a>",
+      "<!-- only a comment -->",
+      "  text  ",
+      "<a b='1'\n\t c = \"2\" >\n\t</a  >",
+      "<a>\u0000  <b  /></a>",
+      "<a><!----> <!---->  <b/></a>"
+    )
+
+    /**
+     * Creates a regex and a streaming compressor with the given settings.
+     *
+     * @param removeComments True if comments should be removed, false otherwise.
+     * @param removeIntertagSpaces True if the spaces between tags should be removed, false otherwise.
+     * @return The regex and the streaming compressor.
+     */
+    def compressors(removeComments: Boolean, removeIntertagSpaces: Boolean): (XmlCompressor, StreamingXmlCompressor) = {
+      val regex = new XmlCompressor()
+      val streaming = new StreamingXmlCompressor()
+      Seq(regex, streaming).foreach { c =>
+        c.setRemoveComments(removeComments)
+        c.setRemoveIntertagSpaces(removeIntertagSpaces)
+      }
+      (regex, streaming)
+    }
+
+    /**
+     * Compresses a document by feeding it in pieces of the given size to an incremental compressor.
+     *
+     * @param compressor The compressor.
+     * @param document The document to compress.
+     * @param size The size of the pieces.
+     * @return The compressed document.
+     */
+    def compressInPieces(compressor: StreamingXmlCompressor, document: String, size: Int): String = {
+      val c = compressor.incremental()
+      document.grouped(size).map(c.feed).mkString + c.finish()
+    }
+  }
+}
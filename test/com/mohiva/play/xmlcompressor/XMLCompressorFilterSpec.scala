@@ -12,7 +12,7 @@ package com.mohiva.play.xmlcompressor
 
 import akka.util.ByteString
 import com.mohiva.play.compressor.Helper
-import com.mohiva.play.xmlcompressor.fixtures.{ CustomXMLCompressorFilter, DefaultFilter, RequestHandler, WithGzipFilter }
+import com.mohiva.play.xmlcompressor.fixtures.{ CustomXMLCompressorFilter, DefaultFilter, RequestHandler, WhitespaceEngine, WithGzipFilter }
 import org.apache.commons.io.IOUtils
 import org.specs2.mutable._
 import org.specs2.specification.Scope
@@ -59,12 +59,13 @@ class XMLCompressorFilterSpec extends Specification {
       }
     }
 
-    "not compress chunked XML result" in new Context {
+    "compress a chunked XML result" in new Context {
       new WithApplication(defaultApp) {
         val Some(result) = route(gzipApp, FakeRequest(GET, "/chunked"))
 
         status(result) must equalTo(OK)
         contentType(result) must beSome("application/xml")
+        contentAsString(result) must be equalTo "<node><subnode>  text </subnode></node>"
         header(CONTENT_LENGTH, result) must beNone
       }
     }
@@ -126,6 +127,50 @@ class XMLCompressorFilterSpec extends Specification {
     }
   }
 
+  "The filter with the streaming engine" should {
+    "compress an XML document like the regex engine" in new Context {
+      new WithApplication(streamingApp) {
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/action"))
+        val Some(result) = route(streamingApp, FakeRequest(GET, "/action"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("application/xml")
+        contentAsString(result) must be equalTo contentAsString(original)
+      }
+    }
+
+    "compress static XML assets while they stream through the filter" in new Context {
+      new WithApplication(streamingApp) {
+        val Some(original) = route(defaultApp, FakeRequest(GET, "/static"))
+        val Some(result) = route(streamingApp, FakeRequest(GET, "/static"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("application/xml")
+        contentAsString(result) must be equalTo contentAsString(original)
+        header(CONTENT_LENGTH, result) must beNone
+      }
+    }
+  }
+
+  "The filter with a plugged-in engine" should {
+    "compress an XML document with a minifier which isn't an XmlCompressor" in new Context {
+      new WithApplication(engineApp) {
+        val Some(result) = route(engineApp, FakeRequest(GET, "/action"))
+
+        status(result) must equalTo(OK)
+        contentType(result) must beSome("application/xml")
+        contentAsString(result) must be equalTo "<?xml version=\"1.0\"?> <node> <subnode> Some text </subnode> </node>"
+      }
+    }
+
+    "fail for an unknown engine" in new Context {
+      new GuiceApplicationBuilder()
+        .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+        .configure("play.filters.compressor.xml.engine" -> "unknown")
+        .build() must throwA[Exception]("Unknown engine `unknown`")
+    }
+  }
+
   "The default filter with Gzip Filter" should {
     "first compress then gzip result" in new Context {
       new WithApplication(gzipApp) {
@@ -179,6 +224,24 @@ class XMLCompressorFilterSpec extends Specification {
       .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
       .build()
 
+    /**
+     * An app with the default XML compressor filter, which uses the streaming engine.
+     */
+    val streamingApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.xml.engine" -> "streaming")
+      .build()
+
+    /**
+     * An app with the default XML compressor filter, which uses an engine with an independent minifier.
+     */
+    val engineApp = new GuiceApplicationBuilder()
+      .configure("play.http.filters" -> classOf[DefaultFilter].getCanonicalName)
+      .configure("play.http.requestHandler" -> classOf[RequestHandler].getCanonicalName)
+      .configure("play.filters.compressor.xml.engine" -> classOf[WhitespaceEngine].getName)
+      .build()
+
     /**
      * An app with the gzip filter in place.
      */
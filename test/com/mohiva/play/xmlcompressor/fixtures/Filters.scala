@@ -13,9 +13,10 @@ package com.mohiva.play.xmlcompressor.fixtures
 import javax.inject.Inject
 
 import akka.stream.Materializer
-import com.googlecode.htmlcompressor.compressor.XmlCompressor
+import com.googlecode.htmlcompressor.compressor.{ Compressor, XmlCompressor }
+import com.mohiva.play.compressor.CompressorEngine
 import com.mohiva.play.xmlcompressor.XMLCompressorFilter
-import play.api.Configuration
+import play.api.{ Configuration, Environment }
 import play.api.http.HttpFilters
 import play.api.mvc.EssentialFilter
 import play.filters.gzip.GzipFilter
@@ -44,3 +45,12 @@ class DefaultFilter @Inject() (xmlCompressorFilter: XMLCompressorFilter) extends
 class WithGzipFilter @Inject() (xmlCompressorFilter: XMLCompressorFilter, gzipFilter: GzipFilter) extends HttpFilters {
   override def filters: Seq[EssentialFilter] = Seq(gzipFilter, xmlCompressorFilter)
 }
+
+/**
+ * An engine with an independent minifier, which collapses all whitespace.
+ */
+class WhitespaceEngine extends CompressorEngine[Compressor] {
+  override def create(settings: Configuration, environment: Environment): Compressor = new Compressor {
+    override def compress(source: String): String = source.replaceAll("\\s+", " ").trim
+  }
+}
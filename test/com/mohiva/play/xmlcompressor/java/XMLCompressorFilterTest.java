@@ -104,15 +104,16 @@ public class XMLCompressorFilterTest {
     }
 
     /**
-     * Test if the default filter does not compress chunked XML result.
+     * Test if the default filter compress chunked XML result.
      */
     @Test
-    public void defaultFilterNotCompressChunkedXMLPage() {
+    public void defaultFilterCompressChunkedXMLPage() {
         running(defaultApp(), () -> {
             Result result = route(defaultApp(), fakeRequest(GET, "/chunked"));
 
             assertThat(result.status()).isEqualTo(OK);
             assertThat(result.contentType()).isEqualTo(Optional.of("application/xml"));
+            assertThat(contentAsString(result, defaultApp().injector().instanceOf(Materializer.class))).isEqualTo("<node><subnode>  text </subnode></node>");
             assertThat(result.header(CONTENT_LENGTH)).isEqualTo(Optional.empty());
         });
     }